@@ -0,0 +1,63 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.benchmarks;
+
+import java.net.URI;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.vecna.maven.db.AbstractDbMojo;
+import com.vecna.maven.db.DbContext;
+import com.vecna.maven.db.DbStrategy;
+
+/**
+ * Exposes the url handling, strategy lookup and contexts of {@link AbstractDbMojo} to the benchmarks. Connections are
+ * not shared between executions, as there is no build session.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class BenchmarkMojo extends AbstractDbMojo {
+  @Override
+  protected void executeIfEnabled() {
+  }
+
+  /**
+   * @param jdbcUrl jdbc url
+   * @return the url as a URI
+   * @throws MojoFailureException if the url is invalid
+   */
+  public URI uri(String jdbcUrl) throws MojoFailureException {
+    return toURI(jdbcUrl);
+  }
+
+  /**
+   * @param protocol db type
+   * @return the strategy for the db type
+   * @throws MojoFailureException if the db type is not supported
+   */
+  public DbStrategy strategy(String protocol) throws MojoFailureException {
+    return lookupStrategy(protocol);
+  }
+
+  /**
+   * @return a new execution context; must be closed
+   */
+  public DbContext context() {
+    return createContext();
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.vecna.maven.db.Compressor;
+import com.vecna.maven.db.io.DumpInput;
+import com.vecna.maven.db.io.DumpSink;
+
+/**
+ * Throughput of the client side of dumps and restores: writing a dump through the compressor and checksum, and
+ * reading it back. The dump is generated from a fixed seed, so results are comparable across commits.
+ *
+ * @author ogolberg@vecna.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(2)
+public class DumpSinkBenchmark {
+  private static final int DUMP_SIZE = 16 * 1024 * 1024;
+
+  @Param({"NONE", "GZIP", "ZSTD", "LZ4"})
+  private Compressor compressor;
+
+  private byte[] dump;
+  private File file;
+
+  /**
+   * Generate a plain SQL dump and write it once, for the read benchmark.
+   * @throws IOException on failure
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder("copy public.bench (id, name, amount) from stdin;\n");
+    for (int i = 0; sb.length() < DUMP_SIZE; i++) {
+      sb.append(i).append("\tname-").append(random.nextInt(100000)).append('\t').append(random.nextDouble())
+        .append('\n');
+    }
+    dump = sb.toString().getBytes(Charsets.UTF_8);
+    file = File.createTempFile("bench", ".sql" + compressor.getExtension());
+    write();
+  }
+
+  /**
+   * Delete the dump.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    file.delete();
+    new File(file.getPath() + ".sha256").delete();
+  }
+
+  /**
+   * @throws IOException on failure
+   */
+  @Benchmark
+  public void write() throws IOException {
+    try (DumpSink sink = new DumpSink(file, compressor, null, true)) {
+      sink.getStream().write(dump);
+      sink.finish();
+    }
+  }
+
+  /**
+   * @return number of bytes read
+   * @throws IOException on failure
+   */
+  @Benchmark
+  public long read() throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long total = 0;
+    try (InputStream in = DumpInput.open(file)) {
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        total += read;
+      }
+    }
+    return total;
+  }
+}
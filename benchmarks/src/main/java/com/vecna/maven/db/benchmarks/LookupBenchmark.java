@@ -0,0 +1,116 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.benchmarks;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vecna.maven.db.DbStrategy;
+import com.vecna.maven.db.mysql.MysqlStrategy;
+import com.vecna.maven.db.pg.PostgresStrategy;
+
+/**
+ * Url parsing and strategy lookup, i.e. the fixed cost every goal pays before talking to the database.
+ *
+ * @author ogolberg@vecna.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LookupBenchmark {
+  /**
+   * Exposes {@link PostgresStrategy#parse(URI)}.
+   */
+  public static class ParsingPostgresStrategy extends PostgresStrategy {
+    /**
+     * @param uri db uri
+     * @return parsed db info
+     * @throws Exception if the uri cannot be parsed
+     */
+    public Object parseUri(URI uri) throws Exception {
+      return parse(uri);
+    }
+  }
+
+  /**
+   * Exposes {@link MysqlStrategy#parse(URI)}.
+   */
+  public static class ParsingMysqlStrategy extends MysqlStrategy {
+    /**
+     * @param uri db uri
+     * @return parsed db info
+     * @throws Exception if the uri cannot be parsed
+     */
+    public Object parseUri(URI uri) throws Exception {
+      return parse(uri);
+    }
+  }
+
+  @Param({"jdbc:postgresql://localhost:5432/test?ssl=false", "jdbc:mysql://localhost:3306/test"})
+  private String url;
+
+  private BenchmarkMojo mojo;
+  private ParsingPostgresStrategy postgres;
+  private ParsingMysqlStrategy mysql;
+
+  /**
+   * Load the strategies, so that the benchmarks measure cached lookups.
+   * @throws Exception if a strategy cannot be loaded
+   */
+  @Setup
+  public void setUp() throws Exception {
+    mojo = new BenchmarkMojo();
+    mojo.strategy(mojo.uri(url).getScheme());
+    postgres = new ParsingPostgresStrategy();
+    mysql = new ParsingMysqlStrategy();
+  }
+
+  /**
+   * @return the strategy for the url
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public DbStrategy lookup() throws Exception {
+    return mojo.strategy(mojo.uri(url).getScheme());
+  }
+
+  /**
+   * @return db info parsed out of the url
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public Object parse() throws Exception {
+    URI uri = mojo.uri(url);
+    return "postgresql".equals(uri.getScheme()) ? postgres.parseUri(uri) : mysql.parseUri(uri);
+  }
+}
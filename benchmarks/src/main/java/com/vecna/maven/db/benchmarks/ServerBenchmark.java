@@ -0,0 +1,177 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.benchmarks;
+
+import java.io.File;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vecna.maven.db.DbContext;
+import com.vecna.maven.db.DbStrategy;
+import com.vecna.maven.db.DumpOptions;
+import com.vecna.maven.db.RestoreOptions;
+
+/**
+ * Create/drop cycles, template clones and dump/restore round trips against a real, throwaway server (a local
+ * postgres or mysqld; the dump benchmarks also need pg_dump/psql or mysqldump/mysql on the path). Point it at the
+ * server with {@code -p url=... -p username=... -p password=...}; the url names a database to connect to, and the
+ * benchmark databases are created next to it.
+ *
+ * @author ogolberg@vecna.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ServerBenchmark {
+  private static final int ROWS = 10000;
+
+  @Param("jdbc:postgresql://localhost/postgres")
+  private String url;
+
+  @Param("postgres")
+  private String username;
+
+  @Param("")
+  private String password;
+
+  private DbStrategy strategy;
+  private DbContext context;
+  private URI template;
+  private URI target;
+  private File dump;
+
+  /**
+   * @param server uri of any database on the server
+   * @param name database name
+   * @return uri of the named database on the same server
+   * @throws Exception on failure
+   */
+  private static URI sibling(URI server, String name) throws Exception {
+    return new URI(server.getScheme(), server.getUserInfo(), server.getHost(), server.getPort(), "/" + name,
+                   server.getQuery(), server.getFragment());
+  }
+
+  /**
+   * Create and populate the template database and dump it once, for the restore benchmark.
+   * @throws Exception on failure
+   */
+  @Setup
+  public void setUp() throws Exception {
+    BenchmarkMojo mojo = new BenchmarkMojo();
+    URI server = mojo.uri(url);
+    strategy = mojo.strategy(server.getScheme());
+    context = mojo.context();
+    template = sibling(server, "bench_template");
+    target = sibling(server, "bench_target");
+
+    strategy.createDb(context, template, username, password);
+    Random random = new Random(42);
+    try (Connection conn = DriverManager.getConnection("jdbc:" + template, username, password);
+         Statement statement = conn.createStatement()) {
+      statement.execute("create table bench (id int primary key, name varchar(100), amount double precision)");
+      conn.setAutoCommit(false);
+      try (PreparedStatement insert = conn.prepareStatement("insert into bench values (?, ?, ?)")) {
+        for (int i = 0; i < ROWS; i++) {
+          insert.setInt(1, i);
+          insert.setString(2, "name-" + random.nextInt(100000));
+          insert.setDouble(3, random.nextDouble());
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+      conn.commit();
+    }
+
+    dump = File.createTempFile("bench", ".sql");
+    dump();
+  }
+
+  /**
+   * Drop the benchmark databases.
+   * @throws Exception on failure
+   */
+  @TearDown
+  public void tearDown() throws Exception {
+    try {
+      strategy.dropDb(context, template, username, password);
+    } finally {
+      context.close();
+      dump.delete();
+    }
+  }
+
+  /**
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public void createDrop() throws Exception {
+    strategy.createDb(context, target, username, password);
+    strategy.dropDb(context, target, username, password);
+  }
+
+  /**
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public void cloneDrop() throws Exception {
+    strategy.cloneDb(context, target, username, password, "bench_template");
+    strategy.dropDb(context, target, username, password);
+  }
+
+  /**
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public void dump() throws Exception {
+    strategy.dumpDb(context, template, username, password, dump, new DumpOptions());
+  }
+
+  /**
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public void restore() throws Exception {
+    strategy.createDb(context, target, username, password);
+    try {
+      strategy.restoreDb(context, target, username, password, dump, new RestoreOptions());
+    } finally {
+      strategy.dropDb(context, target, username, password);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A JDBC driver that accepts PostgreSQL and MySQL urls and returns connections on which every statement succeeds
+ * and every query comes back empty. Lets the benchmarks measure the plugin's own overhead without a server.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class StubDriver implements Driver {
+  private static final InvocationHandler HANDLER = new InvocationHandler() {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      Class<?> type = method.getReturnType();
+      if ("equals".equals(method.getName())) {
+        return proxy == args[0];
+      } else if ("hashCode".equals(method.getName())) {
+        return System.identityHashCode(proxy);
+      } else if ("toString".equals(method.getName())) {
+        return "stub " + method.getDeclaringClass().getSimpleName();
+      } else if ("isValid".equals(method.getName())) {
+        return true;
+      } else if (type.isInterface() && type.getName().startsWith("java.sql.")) {
+        return stub(type);
+      } else if (type == boolean.class) {
+        return false;
+      } else if (type == int.class) {
+        return 0;
+      } else if (type == long.class) {
+        return 0L;
+      } else {
+        return null;
+      }
+    }
+  };
+
+  /**
+   * Replace the registered JDBC drivers with the stub. The real drivers must have been loaded (by instantiating the
+   * strategies) beforehand, otherwise they would register themselves again when first used.
+   * @throws SQLException if the drivers cannot be replaced
+   */
+  public static void install() throws SQLException {
+    for (Driver driver : Collections.list(DriverManager.getDrivers())) {
+      DriverManager.deregisterDriver(driver);
+    }
+    DriverManager.registerDriver(new StubDriver());
+  }
+
+  /**
+   * @param type a java.sql interface
+   * @param <T> the interface
+   * @return a stub implementation of the interface
+   */
+  static <T> T stub(Class<T> type) {
+    return type.cast(Proxy.newProxyInstance(StubDriver.class.getClassLoader(), new Class<?>[] {type}, HANDLER));
+  }
+
+  @Override
+  public Connection connect(String url, Properties info) {
+    return acceptsURL(url) ? stub(Connection.class) : null;
+  }
+
+  @Override
+  public boolean acceptsURL(String url) {
+    return url.startsWith("jdbc:postgresql:") || url.startsWith("jdbc:mysql:");
+  }
+
+  @Override
+  public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+    return new DriverPropertyInfo[0];
+  }
+
+  @Override
+  public int getMajorVersion() {
+    return 1;
+  }
+
+  @Override
+  public int getMinorVersion() {
+    return 0;
+  }
+
+  @Override
+  public boolean jdbcCompliant() {
+    return false;
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    throw new SQLFeatureNotSupportedException();
+  }
+}
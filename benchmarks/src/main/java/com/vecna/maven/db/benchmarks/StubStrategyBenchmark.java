@@ -0,0 +1,97 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.benchmarks;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vecna.maven.db.DbContext;
+import com.vecna.maven.db.DbStrategy;
+
+/**
+ * Create/drop cycles and template clones against {@link StubDriver}: measures what the strategies do around the
+ * statements (connection pooling, statement construction), not the server.
+ *
+ * @author ogolberg@vecna.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StubStrategyBenchmark {
+  @Param({"postgresql", "mysql"})
+  private String protocol;
+
+  private DbStrategy strategy;
+  private DbContext context;
+  private URI uri;
+
+  /**
+   * Load the strategy and its driver, then swap the drivers for the stub.
+   * @throws Exception on failure
+   */
+  @Setup
+  public void setUp() throws Exception {
+    BenchmarkMojo mojo = new BenchmarkMojo();
+    uri = mojo.uri("jdbc:" + protocol + "://localhost/bench");
+    strategy = mojo.strategy(protocol);
+    StubDriver.install();
+    context = mojo.context();
+  }
+
+  /**
+   * Close the stub connections.
+   */
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  /**
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public void createDrop() throws Exception {
+    strategy.createDb(context, uri, "bench", "bench");
+    strategy.dropDb(context, uri, "bench", "bench");
+  }
+
+  /**
+   * @throws Exception on failure
+   */
+  @Benchmark
+  public void cloneDrop() throws Exception {
+    strategy.cloneDb(context, uri, "bench", "bench", "bench_template");
+    strategy.dropDb(context, uri, "bench", "bench");
+  }
+}
@@ -0,0 +1,406 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.vecna.maven.db.metrics.Timing;
+
+/**
+ * Base plugin for goals that can operate on a batch of databases. All databases on the same server share a small
+ * pool of admin connections.
+ *
+ * @author ogolberg@vecna.com
+ */
+public abstract class AbstractBatchDbMojo extends AbstractDbMojo {
+  /**
+   * How long to wait for the operations that are cancelled after a failure to stop.
+   */
+  private static final long CANCEL_TIMEOUT_SECONDS = 30;
+
+  /**
+   * Databases to operate on instead of the one identified by url. Each entry is either a JDBC url or the name of a
+   * database on the server identified by url.
+   */
+  @Parameter
+  protected List<String> databases;
+
+  /**
+   * Number of databases to operate on concurrently. This is also the maximum number of admin connections the
+   * execution opens to each server. Defaults to 1, unless the goal says otherwise.
+   */
+  @Parameter
+  protected Integer parallelism;
+
+  /**
+   * Start the operation on a background thread and let the build go on. The await goal waits for the operation to
+   * complete and fails the build if it failed.
+   */
+  @Parameter
+  protected boolean async;
+
+  /**
+   * Group of background operations the operation belongs to when async, so that an await execution can wait for
+   * some of the operations only.
+   */
+  @Parameter(defaultValue = AwaitMojo.DEFAULT_GROUP)
+  protected String asyncGroup;
+
+  /**
+   * An operation on a single database.
+   */
+  protected interface DbOperation {
+    /**
+     * Run the operation.
+     * @param strategy strategy for the database
+     * @param context execution context
+     * @param uri database URI
+     * @throws MojoExecutionException on unexpected build failure
+     * @throws MojoFailureException on expected build failure
+     */
+    void run(DbStrategy strategy, DbContext context, URI uri) throws MojoExecutionException, MojoFailureException;
+  }
+
+  /**
+   * @return URIs of the databases to operate on
+   * @throws MojoFailureException if the URLs are invalid
+   */
+  protected List<URI> getURIs() throws MojoFailureException {
+    if (databases == null || databases.isEmpty()) {
+      return Lists.newArrayList(getURI());
+    }
+
+    List<URI> uris = Lists.newArrayList();
+    for (String database : databases) {
+      if (database.startsWith(JDBC_PREFIX)) {
+        uris.add(toURI(database));
+      } else {
+        uris.add(getDatabaseURI(database));
+      }
+    }
+    return uris;
+  }
+
+  /**
+   * @param database name of a database
+   * @return URI of the database on the server identified by url
+   * @throws MojoFailureException if the url or the name is invalid
+   */
+  protected URI getDatabaseURI(String database) throws MojoFailureException {
+    try {
+      return withDatabase(getURI(), database);
+    } catch (URISyntaxException uriSyntaxException) {
+      throw new MojoFailureException("Invalid database name: " + database);
+    }
+  }
+
+  /**
+   * @param server URI of any database on a server
+   * @param database name of a database
+   * @return URI of the database on the same server
+   * @throws URISyntaxException if the name is invalid
+   */
+  static URI withDatabase(URI server, String database) throws URISyntaxException {
+    return new URI(server.getScheme(), server.getUserInfo(), server.getHost(), server.getPort(), "/" + database,
+                   server.getQuery(), server.getFragment());
+  }
+
+  /**
+   * Create a database, empty or as a copy of a template. If a {@link WarmPool} of such databases was started earlier
+   * in the build, a ready database is claimed from it and renamed instead.
+   * @param strategy strategy for the database
+   * @param context execution context
+   * @param uri database URI
+   * @param template name of the database to copy, or null to create an empty database
+   * @param durability durability of the database
+   * @param unlogged whether to make the tables copied from the template unlogged, if durability is relaxed
+   * @throws MojoExecutionException on unexpected build failure
+   * @throws MojoFailureException on expected build failure
+   */
+  protected void createDb(DbStrategy strategy, DbContext context, URI uri, String template, Durability durability,
+                          boolean unlogged) throws MojoExecutionException, MojoFailureException {
+    createDb(strategy, context, uri, template);
+    if (durability == Durability.RELAXED) {
+      strategy.relaxDurability(context, uri, username, password, unlogged);
+    }
+  }
+
+  /**
+   * Create a database, empty or as a copy of a template, claiming a pre-created one if possible.
+   * @param strategy strategy for the database
+   * @param context execution context
+   * @param uri database URI
+   * @param template name of the database to copy, or null to create an empty database
+   * @throws MojoExecutionException on unexpected build failure
+   * @throws MojoFailureException on expected build failure
+   */
+  private void createDb(DbStrategy strategy, DbContext context, URI uri, String template)
+      throws MojoExecutionException, MojoFailureException {
+    String key = WarmPool.key(uri, username, template);
+    WarmPool pool = session == null ? null : SessionCache.getWarmPool(getBuild(), key);
+    URI ready = pool == null ? null : pool.claim();
+    if (ready != null) {
+      String dbName = uri.getPath().replaceAll("^/", "");
+      try {
+        strategy.renameDb(context, ready, username, password, dbName);
+        getLog().info("claimed a pre-created database as " + dbName);
+        return;
+      } catch (MojoExecutionException mojoExecutionException) {
+        getLog().warn("cannot claim a pre-created database, creating " + dbName, mojoExecutionException);
+        try {
+          strategy.dropDb(context, ready, username, password);
+        } catch (MojoExecutionException | MojoFailureException dropException) {
+          getLog().warn("cannot drop the pre-created database " + ready, dropException);
+        }
+      }
+    }
+
+    if (template == null) {
+      strategy.createDb(context, uri, username, password);
+    } else {
+      strategy.cloneDb(context, uri, username, password, template);
+    }
+  }
+
+  /**
+   * @param durability name of a {@link Durability}, case insensitive
+   * @return the durability
+   * @throws MojoFailureException if the name is unknown
+   */
+  protected Durability parseDurability(String durability) throws MojoFailureException {
+    try {
+      return Durability.valueOf(durability.toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException illegalArgumentException) {
+      throw new MojoFailureException("unknown durability: " + durability);
+    }
+  }
+
+  /**
+   * @return number of databases to operate on concurrently when the parallelism isn't configured
+   * @throws MojoFailureException if the configuration is invalid
+   */
+  protected int getDefaultParallelism() throws MojoFailureException {
+    return 1;
+  }
+
+  /**
+   * @return whether a batch should stop at the first failure, interrupting the operations that are still running,
+   *         rather than attempt every database
+   */
+  protected boolean isFailFast() {
+    return false;
+  }
+
+  /**
+   * Prepare a batch before any of its databases is operated on, e.g. to set up state the operations share. Does
+   * nothing by default.
+   * @param context execution context of the batch
+   * @param uris URIs of the databases
+   * @param strategies strategies for the protocols of the databases
+   * @return resource to close once the batch is done, or null
+   * @throws MojoExecutionException on unexpected build failure
+   * @throws MojoFailureException on expected build failure
+   */
+  protected Closeable prepareBatch(DbContext context, List<URI> uris, Map<String, DbStrategy> strategies)
+      throws MojoExecutionException, MojoFailureException {
+    return null;
+  }
+
+  /**
+   * Run an operation on every database. A single database is processed on the calling thread and its failure is
+   * propagated as is. Batches are processed by {@link #parallelism} threads; every database is attempted and the
+   * failures are reported together at the end, unless the goal {@link #isFailFast() fails fast}.
+   * @param description description of the operation (e.g. "create") for reporting
+   * @param operation operation to run
+   * @throws MojoExecutionException if the operation fails for any of the databases
+   * @throws MojoFailureException if the operation fails for the only database
+   */
+  protected void forEachDatabase(final String description, final DbOperation operation)
+      throws MojoExecutionException, MojoFailureException {
+    final List<URI> uris = getURIs();
+    final int parallelism = this.parallelism == null ? getDefaultParallelism() : this.parallelism;
+    if (parallelism < 1) {
+      throw new MojoFailureException("parallelism must be positive, got " + parallelism);
+    }
+
+    final Map<String, DbStrategy> strategies = Maps.newHashMap();
+    for (URI uri : uris) {
+      if (!strategies.containsKey(uri.getScheme())) {
+        strategies.put(uri.getScheme(), lookupStrategy(uri.getScheme()));
+      }
+    }
+
+    if (async) {
+      if (session == null) {
+        getLog().warn("no build session to track background operations in, running " + description + " now");
+      } else {
+        FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            // the execution has returned, so the failures and timings are reported here
+            try (Timing timing = getMetrics().start("background")) {
+              forEachDatabase(description, operation, uris, strategies, parallelism);
+              getLog().info("background " + description + " completed");
+              return null;
+            } catch (MojoExecutionException | MojoFailureException | RuntimeException exception) {
+              getLog().error("background " + description + " failed", exception);
+              throw exception;
+            } finally {
+              reportMetrics();
+            }
+          }
+        });
+        deferMetrics();
+        SessionCache.addPendingOperation(getBuild(), new SessionCache.PendingOperation(getProjectId(), asyncGroup,
+                                                                                       description, getLog(), task));
+        // a daemon, so that a hung operation can't keep the JVM alive; the shutdown hook of the session cache
+        // waits for the operations that nobody waited for
+        Thread thread = new Thread(task, "db-async-" + description);
+        thread.setDaemon(true);
+        thread.start();
+        getLog().info(description + " continues in the background, the await goal waits for it to complete");
+        return;
+      }
+    }
+    forEachDatabase(description, operation, uris, strategies, parallelism);
+  }
+
+  /**
+   * Run an operation on every database.
+   * @param description description of the operation (e.g. "create") for reporting
+   * @param operation operation to run
+   * @param uris URIs of the databases
+   * @param strategies strategies for the protocols of the databases
+   * @param parallelism number of databases to operate on concurrently
+   * @throws MojoExecutionException if the operation fails for any of the databases
+   * @throws MojoFailureException if the operation fails for the only database
+   */
+  private void forEachDatabase(String description, final DbOperation operation, List<URI> uris,
+                               Map<String, DbStrategy> strategies, int parallelism)
+      throws MojoExecutionException, MojoFailureException {
+    try (final DbContext context = createContext(parallelism)) {
+      Set<String> servers = Sets.newHashSet();
+      for (URI uri : uris) {
+        if (servers.add(uri.getScheme() + "://" + uri.getAuthority())) {
+          awaitServer(strategies.get(uri.getScheme()), context, uri);
+        }
+      }
+      Closeable prepared = prepareBatch(context, uris, strategies);
+      try {
+        if (uris.size() == 1) {
+          URI uri = uris.get(0);
+          operation.run(strategies.get(uri.getScheme()), context, uri);
+        } else {
+          runBatch(description, operation, uris, strategies, parallelism, context);
+        }
+      } finally {
+        Closeables.closeQuietly(prepared);
+      }
+    }
+  }
+
+  /**
+   * Run an operation on a batch of databases concurrently.
+   * @param description description of the operation (e.g. "create") for reporting
+   * @param operation operation to run
+   * @param uris URIs of the databases
+   * @param strategies strategies for the protocols of the databases
+   * @param parallelism number of databases to operate on concurrently
+   * @param context execution context
+   * @throws MojoExecutionException if the operation fails for any of the databases
+   */
+  private void runBatch(String description, final DbOperation operation, List<URI> uris,
+                        Map<String, DbStrategy> strategies, int parallelism, final DbContext context)
+      throws MojoExecutionException {
+    boolean failFast = isFailFast();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, uris.size()),
+                                                            new ThreadFactoryBuilder().setNameFormat("db-batch-%d")
+                                                                                      .setDaemon(true).build());
+    try {
+      CompletionService<Long> completion = new ExecutorCompletionService<Long>(executor);
+      Map<Future<Long>, String> dbs = Maps.newHashMap();
+      for (final URI uri : uris) {
+        final DbStrategy strategy = strategies.get(uri.getScheme());
+        dbs.put(completion.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            long start = System.currentTimeMillis();
+            operation.run(strategy, context, uri);
+            return System.currentTimeMillis() - start;
+          }
+        }), uri.getPath().replaceAll("^/", ""));
+      }
+
+      List<String> failures = Lists.newArrayList();
+      int completed = 0;
+      while (completed < uris.size() && (failures.isEmpty() || !failFast)) {
+        Future<Long> result = completion.take();
+        completed++;
+        String db = dbs.get(result);
+        try {
+          getLog().info(description + " " + db + ": done in " + result.get() + " ms");
+        } catch (ExecutionException executionException) {
+          getLog().error(description + " " + db + ": failed", executionException.getCause());
+          failures.add(db + " (" + executionException.getCause().getMessage() + ")");
+        }
+      }
+
+      if (!failures.isEmpty()) {
+        String message = "failed to " + description + " " + failures.size() + " of " + uris.size() + " databases: "
+                         + failures;
+        if (completed < uris.size()) {
+          executor.shutdownNow();
+          if (!executor.awaitTermination(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            getLog().warn("some of the cancelled operations are still running");
+          }
+          message += ", cancelled the other " + (uris.size() - completed);
+        }
+        throw new MojoExecutionException(message);
+      }
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("interrupted while waiting for the databases", interruptedException);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -16,15 +16,29 @@
 
 package com.vecna.maven.db;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 
 import com.google.common.collect.ImmutableMap;
+import com.vecna.maven.db.jdbc.ConnectionPool;
+import com.vecna.maven.db.jdbc.RetryPolicy;
+import com.vecna.maven.db.jdbc.Timeouts;
+import com.vecna.maven.db.metrics.Metrics;
+import com.vecna.maven.db.metrics.MetricsReport;
+import com.vecna.maven.db.metrics.Timing;
 
 /**
  * Base DB management plugin.
@@ -33,11 +47,19 @@ import com.google.common.collect.ImmutableMap;
  */
 public abstract class AbstractDbMojo extends AbstractMojo {
   /**
-   * Map of protocol - strategy class. We load strategies via reflection so that JDBC drivers
-   * can be added by the projects that use this plugin.
+   * Prefix of JDBC urls.
    */
-  private final Map<String, String> strategies = ImmutableMap.of("postgresql", "com.vecna.maven.db.pg.PostgresStrategy",
-                                                                 "mysql", "com.vecna.maven.db.mysql.MysqlStrategy");
+  protected static final String JDBC_PREFIX = "jdbc:";
+
+  private static final Pattern DURATION = Pattern.compile("(\\d+)\\s*([smhd])");
+  /**
+   * How much longer than statements the socket timeout is by default, so that the server cancels a slow statement
+   * (leaving the connection usable) before the driver gives up on the connection.
+   */
+  private static final long SOCKET_TIMEOUT_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private static final Map<String, TimeUnit> UNITS = ImmutableMap.of("s", TimeUnit.SECONDS, "m", TimeUnit.MINUTES,
+                                                                     "h", TimeUnit.HOURS, "d", TimeUnit.DAYS);
 
   /**
    * JDBC url
@@ -63,18 +85,214 @@ public abstract class AbstractDbMojo extends AbstractMojo {
   @Parameter
   protected boolean skip;
 
+  /**
+   * Keep admin connections open for the rest of the build and share them with the other executions of the plugin,
+   * instead of connecting for every execution.
+   */
+  @Parameter(defaultValue = "true")
+  protected boolean reuseConnections;
+
+  /**
+   * The current build session, used to scope the shared admin connections.
+   */
+  @Parameter(defaultValue = "${session}", readonly = true)
+  protected MavenSession session;
+
+  /**
+   * The current project, which background operations are tracked for and some goals publish properties to.
+   */
+  @Parameter(defaultValue = "${project}", readonly = true)
+  protected MavenProject project;
+
+  /**
+   * The current mojo execution, used to label the metrics report.
+   */
+  @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+  protected MojoExecution mojoExecution;
+
+  /**
+   * File to append the timings of the execution to, e.g. ${project.build.directory}/db-metrics.json. Files with a
+   * .csv extension are written as CSV, anything else as JSON (one object per execution per line).
+   */
+  @Parameter
+  protected File metricsFile;
+
+  /**
+   * Wait up to this long (e.g. 30s or 2m) for the server to accept connections before running the goal; useful
+   * right after starting a database container. By default the goal fails on the first refused connection.
+   */
+  @Parameter
+  protected String waitForServer;
+
+  /**
+   * Number of attempts to open a connection when the server refuses it, drops it or has too many clients.
+   */
+  @Parameter(defaultValue = "1")
+  protected int connectAttempts;
+
+  /**
+   * Number of attempts to run a statement that fails on a transient conflict, such as a deadlock, a lock timeout or
+   * a database that is still in use by another session.
+   */
+  @Parameter(defaultValue = "3")
+  protected int conflictAttempts;
+
+  /**
+   * Delay before the first retry, in milliseconds; the delay doubles (with jitter) on every further retry.
+   */
+  @Parameter(defaultValue = "200")
+  protected long retryDelay;
+
+  /**
+   * Upper bound of the delay between retries, in milliseconds.
+   */
+  @Parameter(defaultValue = "10000")
+  protected long maxRetryDelay;
+
+  /**
+   * Stop retrying an operation once this much time (e.g. 30s or 2m) has passed since its first attempt.
+   */
+  @Parameter(defaultValue = "2m")
+  protected String retryTimeout;
+
+  /**
+   * How long to wait for a connection to be established (e.g. 10s); 0s for no limit.
+   */
+  @Parameter(defaultValue = "30s")
+  protected String connectTimeout;
+
+  /**
+   * How long to wait for the server to respond on an established connection before giving up on the connection;
+   * 0s for no limit. Defaults to a minute more than the statement timeout.
+   */
+  @Parameter
+  protected String socketTimeout;
+
+  /**
+   * How long a statement may run before it is cancelled; 0s for no limit.
+   */
+  @Parameter(defaultValue = "1h")
+  protected String statementTimeout;
+
+  /**
+   * How long a statement may wait for a lock (e.g. a drop blocked by another session) before it fails; 0s for no
+   * limit. Rounded up to whole seconds on MySQL.
+   */
+  @Parameter(defaultValue = "1m")
+  protected String lockTimeout;
+
+  /**
+   * How long a command line tool (pg_dump, mysqldump, psql, pg_restore, mysql) may run before it is killed; 0s for
+   * no limit.
+   */
+  @Parameter(defaultValue = "12h")
+  protected String toolTimeout;
+
+  /**
+   * Timings and counters of the current execution.
+   */
+  protected Metrics metrics;
+
+  /**
+   * Whether the metrics are reported by the background work of the execution rather than when it returns.
+   */
+  private boolean metricsDeferred;
+
+  /**
+   * How to retry transient failures in the current execution.
+   */
+  private RetryPolicy retryPolicy;
+
+  /**
+   * Bounds on how long the connections, statements and tools of the current execution may take.
+   */
+  private Timeouts timeouts;
+
   /**
    * {@inheritDoc}
    */
   @Override
   public final void execute() throws MojoExecutionException, MojoFailureException {
     if (!skip) {
-      executeIfEnabled();
+      metrics = new Metrics();
+      retryPolicy = createRetryPolicy();
+      timeouts = createTimeouts();
+      metricsDeferred = false;
+      try (Timing timing = metrics.start("total")) {
+        executeIfEnabled();
+      } finally {
+        if (!metricsDeferred) {
+          reportMetrics();
+        }
+      }
     } else {
       getLog().info("skipping execution");
     }
   }
 
+  /**
+   * @return the retry policy configured by the plugin parameters
+   * @throws MojoFailureException if the parameters are invalid
+   */
+  private RetryPolicy createRetryPolicy() throws MojoFailureException {
+    if (connectAttempts < 0 || conflictAttempts < 0 || retryDelay < 0 || maxRetryDelay < 0) {
+      throw new MojoFailureException("connectAttempts, conflictAttempts, retryDelay and maxRetryDelay must not be "
+                                     + "negative");
+    }
+    return new RetryPolicy(connectAttempts, conflictAttempts, retryDelay, maxRetryDelay, toMillis(retryTimeout));
+  }
+
+  /**
+   * @return the timeouts configured by the plugin parameters
+   * @throws MojoFailureException if the parameters are invalid
+   */
+  private Timeouts createTimeouts() throws MojoFailureException {
+    long statementMillis = toMillis(statementTimeout);
+    long socketMillis;
+    if (socketTimeout != null) {
+      socketMillis = parseDuration(socketTimeout);
+    } else {
+      socketMillis = statementMillis == 0 ? 0 : statementMillis + SOCKET_TIMEOUT_GRACE_MILLIS;
+    }
+    return new Timeouts(toMillis(connectTimeout), socketMillis, statementMillis, toMillis(lockTimeout),
+                        toMillis(toolTimeout));
+  }
+
+  /**
+   * @param duration a duration, or null
+   * @return the duration in milliseconds, or 0 if it's null
+   * @throws MojoFailureException if the duration is invalid
+   */
+  private static long toMillis(String duration) throws MojoFailureException {
+    return duration == null ? 0 : parseDuration(duration);
+  }
+
+  /**
+   * Don't report the metrics when the execution returns, because it continues in the background; the background
+   * work must call {@link #reportMetrics()} when it's done.
+   */
+  protected void deferMetrics() {
+    metricsDeferred = true;
+  }
+
+  /**
+   * Log the metrics of the execution and append them to the metrics file, if one is configured.
+   */
+  protected void reportMetrics() {
+    getLog().info("timings: " + MetricsReport.summarize(metrics));
+    if (metricsFile != null) {
+      String execution = getClass().getSimpleName();
+      if (mojoExecution != null && mojoExecution.getExecutionId() != null) {
+        execution += ":" + mojoExecution.getExecutionId();
+      }
+      try {
+        MetricsReport.append(metricsFile, execution, metrics);
+      } catch (IOException ioException) {
+        getLog().warn("cannot write the metrics to " + metricsFile, ioException);
+      }
+    }
+  }
+
   /**
    * Main plugin execution logic.
    * @throws MojoExecutionException on unexpected build failure
@@ -87,29 +305,123 @@ public abstract class AbstractDbMojo extends AbstractMojo {
    * @throws MojoFailureException if the url does't look like a valid JDBC url
    */
   protected URI getURI() throws MojoFailureException {
-    if (url.startsWith("jdbc:")) {
-      return URI.create(url.substring(5));
+    return toURI(url);
+  }
+
+  /**
+   * @param jdbcUrl a jdbc connection url
+   * @return a URI representation of the url
+   * @throws MojoFailureException if the url does't look like a valid JDBC url
+   */
+  protected URI toURI(String jdbcUrl) throws MojoFailureException {
+    if (jdbcUrl != null && jdbcUrl.startsWith(JDBC_PREFIX)) {
+      try (Timing timing = getMetrics().start("parse")) {
+        return URI.create(jdbcUrl.substring(JDBC_PREFIX.length()));
+      }
     } else {
-      throw new MojoFailureException("Invalid JDBC url: " + url);
+      throw new MojoFailureException("Invalid JDBC url: " + jdbcUrl);
     }
   }
 
   /**
-   * Lookup the DB-specific strategy for performing DB management operations.
+   * @return a context for running strategy operations on behalf of this execution; must be closed when done
+   */
+  protected DbContext createContext() {
+    return createContext(1);
+  }
+
+  /**
+   * @param maxIdleConnections number of idle admin connections to keep open per server, unless connections are
+   *                           shared between executions
+   * @return a context for running strategy operations on behalf of this execution; must be closed when done
+   */
+  protected DbContext createContext(int maxIdleConnections) {
+    if (reuseConnections && session != null) {
+      return new DbContext(getLog(), SessionCache.getConnections(getBuild()), false, getMetrics(), getRetryPolicy(),
+                           getTimeouts());
+    } else {
+      return new DbContext(getLog(), new ConnectionPool(maxIdleConnections), true, getMetrics(), getRetryPolicy(),
+                           getTimeouts());
+    }
+  }
+
+  /**
+   * @return how to retry transient failures in the current execution
+   */
+  protected RetryPolicy getRetryPolicy() {
+    return retryPolicy == null ? RetryPolicy.NONE : retryPolicy;
+  }
+
+  /**
+   * @return bounds on how long the connections, statements and tools of the current execution may take
+   */
+  protected Timeouts getTimeouts() {
+    return timeouts == null ? Timeouts.NONE : timeouts;
+  }
+
+  /**
+   * Wait for the server to accept connections, if {@link #waitForServer} is configured.
+   * @param strategy db-specific strategy
+   * @param context context of the execution
+   * @param uri the database (or server) uri
+   * @throws MojoExecutionException if the server does not accept connections in time
+   * @throws MojoFailureException if the wait duration is invalid
+   */
+  protected void awaitServer(DbStrategy strategy, DbContext context, URI uri)
+      throws MojoExecutionException, MojoFailureException {
+    if (waitForServer != null) {
+      strategy.awaitServer(context, uri, username, password, parseDuration(waitForServer));
+    }
+  }
+
+  /**
+   * @param duration a number followed by a unit (s, m, h or d)
+   * @return the duration in milliseconds
+   * @throws MojoFailureException if the duration is invalid
+   */
+  static long parseDuration(String duration) throws MojoFailureException {
+    Matcher matcher = DURATION.matcher(duration.trim());
+    if (!matcher.matches()) {
+      throw new MojoFailureException("Invalid duration: " + duration + " (expected e.g. 30m, 12h or 7d)");
+    }
+    return UNITS.get(matcher.group(2)).toMillis(Long.parseLong(matcher.group(1)));
+  }
+
+  /**
+   * @return a key that identifies the current build, shared by all its executions; null if there is no session. The
+   *         session itself can't serve as the key, since Maven clones it for every project of a parallel build, but
+   *         the clones share the start time of the build request.
+   */
+  protected Object getBuild() {
+    return session == null ? null : session.getStartTime();
+  }
+
+  /**
+   * @return id of the current project, or null if there is none
+   */
+  protected String getProjectId() {
+    return project == null ? null : project.getId();
+  }
+
+  /**
+   * @return timings and counters of the current execution
+   */
+  protected Metrics getMetrics() {
+    if (metrics == null) {
+      metrics = new Metrics();
+    }
+    return metrics;
+  }
+
+  /**
+   * Lookup the DB-specific strategy for performing DB management operations. Strategies are found through the
+   * {@link DbStrategyProvider}s on the plugin's class path, so that other databases can be supported by adding
+   * dependencies to the plugin.
    * @param protocol identifies the type of the db (jdbc:type://...)
    * @return db-specific strategy
-   * @throws MojoFailureException if the protocol is not supported
+   * @throws MojoFailureException if the protocol is not supported or its JDBC driver is missing
    */
   protected DbStrategy lookupStrategy(String protocol) throws MojoFailureException {
-    String type = strategies.get(protocol);
-    if (type == null) {
-      throw new MojoFailureException("protocol " + protocol + " is not implemented");
-    } else {
-      try {
-        return (DbStrategy) Class.forName(type).newInstance();
-      } catch (Exception exception) {
-        throw new IllegalStateException("cannot instantiate a strategy for protocol " + protocol);
-      }
-    }
+    return StrategyRegistry.lookup(protocol, getMetrics());
   }
 }
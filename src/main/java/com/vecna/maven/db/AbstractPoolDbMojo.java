@@ -0,0 +1,86 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Base plugin for goals that operate on a pool of databases, one per test fork. The databases of a pool are named
+ * after the pool and numbered from 1, like the forks of surefire and failsafe (${surefire.forkNumber}).
+ *
+ * @author ogolberg@vecna.com
+ */
+public abstract class AbstractPoolDbMojo extends AbstractBatchDbMojo {
+  /**
+   * Number of databases in the pool.
+   */
+  @Parameter(required = true)
+  protected int poolSize;
+
+  /**
+   * Name of the pool. The databases of the pool are named poolName_1 to poolName_N. Defaults to the name of the
+   * database identified by url.
+   */
+  @Parameter
+  protected String poolName;
+
+  /**
+   * Prefix of the properties the URLs of the databases are published as, followed by the fork number.
+   */
+  @Parameter(defaultValue = "dbPool.url.")
+  protected String propertyPrefix;
+
+  /**
+   * @param fork fork number, starting at 1
+   * @return name of the fork's database
+   * @throws MojoFailureException if the url is invalid
+   */
+  protected String getDatabaseName(int fork) throws MojoFailureException {
+    String name = poolName == null ? getURI().getPath().replaceAll("^/", "") : poolName;
+    return name + "_" + fork;
+  }
+
+  /**
+   * The databases of the pool.
+   */
+  @Override
+  protected List<URI> getURIs() throws MojoFailureException {
+    if (poolSize < 1) {
+      throw new MojoFailureException("poolSize must be positive, got " + poolSize);
+    }
+    List<URI> uris = Lists.newArrayList();
+    for (int fork = 1; fork <= poolSize; fork++) {
+      uris.add(getDatabaseURI(getDatabaseName(fork)));
+    }
+    return uris;
+  }
+
+  /**
+   * All the databases of the pool are processed at once by default.
+   */
+  @Override
+  protected int getDefaultParallelism() throws MojoFailureException {
+    return poolSize;
+  }
+}
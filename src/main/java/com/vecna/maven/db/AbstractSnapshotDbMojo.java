@@ -0,0 +1,44 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Base plugin for goals that work with snapshots of databases. The snapshot of a database is kept in another database
+ * on the same server, named after it.
+ *
+ * @author ogolberg@vecna.com
+ */
+public abstract class AbstractSnapshotDbMojo extends AbstractBatchDbMojo {
+  /**
+   * Suffix appended to the name of a database to name its snapshot.
+   */
+  @Parameter(defaultValue = "_snapshot")
+  protected String snapshotSuffix;
+
+  /**
+   * @param uri database URI
+   * @return name of the database's snapshot
+   */
+  protected String getSnapshotName(URI uri) {
+    return uri.getPath().replaceAll("^/", "") + snapshotSuffix;
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Waits for the operations started in the background by async executions of the other goals, and fails if any of
+ * them failed.
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "await", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST, threadSafe = true)
+public class AwaitMojo extends AbstractDbMojo {
+  /**
+   * Group of the operations that don't specify one.
+   */
+  static final String DEFAULT_GROUP = "default";
+
+  /**
+   * Group of the operations to wait for (see asyncGroup). If not set, waits for all the operations started so far.
+   */
+  @Parameter
+  private String asyncGroup;
+
+  /**
+   * Wait for the operations started by all the projects of the build, rather than just the current project's.
+   */
+  @Parameter(defaultValue = "false")
+  private boolean allProjects;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    if (session == null) {
+      getLog().info("no build session, no background operations to wait for");
+      return;
+    }
+
+    List<Future<Void>> operations = SessionCache.takePendingOperations(getBuild(), allProjects ? null : getProjectId(),
+                                                                       asyncGroup);
+    getLog().info("waiting for " + operations.size() + " background operations");
+    List<Throwable> failures = Lists.newArrayList();
+    try {
+      for (Future<Void> operation : operations) {
+        try {
+          operation.get();
+        } catch (ExecutionException executionException) {
+          // the operation has logged the failure already
+          failures.add(executionException.getCause());
+        }
+      }
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("interrupted while waiting for the background operations",
+                                       interruptedException);
+    }
+
+    if (failures.size() == 1 && failures.get(0) instanceof MojoFailureException) {
+      throw (MojoFailureException) failures.get(0);
+    } else if (failures.size() == 1 && failures.get(0) instanceof MojoExecutionException) {
+      throw (MojoExecutionException) failures.get(0);
+    } else if (!failures.isEmpty()) {
+      List<String> messages = Lists.newArrayList();
+      for (Throwable failure : failures) {
+        messages.add(failure.getMessage());
+      }
+      throw new MojoExecutionException(failures.size() + " of " + operations.size()
+                                       + " background operations failed: " + messages, failures.get(0));
+    }
+  }
+}
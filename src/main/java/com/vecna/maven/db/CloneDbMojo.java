@@ -0,0 +1,52 @@
+/**
+ * Copyright 2014 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Creates a database as a copy of a template database.
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "clone", threadSafe = true)
+public class CloneDbMojo extends AbstractBatchDbMojo {
+  /**
+   * Name of an existing database to copy.
+   */
+  @Parameter(required = true)
+  private String template;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    forEachDatabase("clone", new DbOperation() {
+      @Override
+      public void run(DbStrategy strategy, DbContext context, URI uri)
+          throws MojoExecutionException, MojoFailureException {
+        strategy.cloneDb(context, uri, username, password, template);
+      }
+    });
+  }
+}
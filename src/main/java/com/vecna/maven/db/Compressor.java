@@ -0,0 +1,61 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+/**
+ * Compressors that a dump can be streamed through while it is written.
+ *
+ * @author ogolberg@vecna.com
+ */
+public enum Compressor {
+  /**
+   * Write the dump as is.
+   */
+  NONE(""),
+
+  /**
+   * gzip compression.
+   */
+  GZIP(".gz"),
+
+  /**
+   * Zstandard compression. Requires zstd-jni on the plugin's classpath.
+   */
+  ZSTD(".zst"),
+
+  /**
+   * LZ4 (framed) compression.
+   */
+  LZ4(".lz4");
+
+  private final String extension;
+
+  /**
+   * @param extension conventional file name extension of the compressor's output
+   */
+  private Compressor(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return conventional file name extension of the compressor's output (empty if there's no compression)
+   */
+  public String getExtension() {
+    return extension;
+  }
+}
@@ -21,20 +21,46 @@ import java.net.URI;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 
 /**
- * Creates a database.
+ * Creates a database. If the warm-pool goal ran earlier in the build, a pre-created database is claimed instead.
  *
  * @author ogolberg@vecna.com
  */
 @Mojo(name = "create", threadSafe = true)
-public class CreateDbMojo extends AbstractDbMojo {
+public class CreateDbMojo extends AbstractBatchDbMojo {
+  /**
+   * Name of an existing database to copy. If not set, an empty database is created.
+   */
+  @Parameter
+  private String template;
+
+  /**
+   * Durability of the new databases: "full" (the server's defaults) or "relaxed", which makes commits return before
+   * they are flushed to disk; see the README for what this means for each database.
+   */
+  @Parameter(defaultValue = "full")
+  private String durability;
+
+  /**
+   * With relaxed durability, also make the tables copied from the template unlogged (PostgreSQL 9.5 and later only).
+   */
+  @Parameter
+  private boolean unlogged;
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
-    final URI uri = getURI();
-    lookupStrategy(uri.getScheme()).createDb(uri, username, password);
+    final Durability durabilityMode = parseDurability(durability);
+    forEachDatabase("create", new DbOperation() {
+      @Override
+      public void run(DbStrategy strategy, DbContext context, URI uri)
+          throws MojoExecutionException, MojoFailureException {
+        createDb(strategy, context, uri, template, durabilityMode, unlogged);
+      }
+    });
   }
 }
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.vecna.maven.db.jdbc.ConnectionLease;
+import com.vecna.maven.db.jdbc.ConnectionPool;
+import com.vecna.maven.db.jdbc.RetryPolicy;
+import com.vecna.maven.db.jdbc.RetryPolicy.ErrorClass;
+import com.vecna.maven.db.jdbc.Timeouts;
+import com.vecna.maven.db.metrics.Metrics;
+import com.vecna.maven.db.metrics.Timing;
+
+/**
+ * State of a single plugin execution that is made available to {@link DbStrategy} operations. Strategies are
+ * stateless, so anything that belongs to the calling execution is passed in through the context.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class DbContext implements Closeable {
+  private final Log log;
+  private final ConnectionPool connections;
+  private final boolean ownsConnections;
+  private final Metrics metrics;
+  private final RetryPolicy retryPolicy;
+  private final Timeouts timeouts;
+
+  /**
+   * Create a new {@link DbContext} that doesn't retry failed operations or limit how long they take.
+   * @param log log of the calling mojo
+   * @param connections pool to borrow admin connections from
+   * @param ownsConnections whether the pool belongs to this context and should be closed with it (as opposed to
+   *                        being shared with other executions)
+   * @param metrics metrics of the calling execution
+   */
+  public DbContext(Log log, ConnectionPool connections, boolean ownsConnections, Metrics metrics) {
+    this(log, connections, ownsConnections, metrics, RetryPolicy.NONE, Timeouts.NONE);
+  }
+
+  /**
+   * Create a new {@link DbContext}
+   * @param log log of the calling mojo
+   * @param connections pool to borrow admin connections from
+   * @param ownsConnections whether the pool belongs to this context and should be closed with it (as opposed to
+   *                        being shared with other executions)
+   * @param metrics metrics of the calling execution
+   * @param retryPolicy policy for retrying failed connections and statements
+   * @param timeouts bounds on how long connections, statements and command line tools may take
+   */
+  public DbContext(Log log, ConnectionPool connections, boolean ownsConnections, Metrics metrics,
+                   RetryPolicy retryPolicy, Timeouts timeouts) {
+    this.log = log;
+    this.connections = connections;
+    this.ownsConnections = ownsConnections;
+    this.metrics = metrics;
+    this.retryPolicy = retryPolicy;
+    this.timeouts = timeouts;
+  }
+
+  /**
+   * @return log of the calling mojo
+   */
+  public Log getLog() {
+    return log;
+  }
+
+  /**
+   * @return pool to borrow admin connections from
+   */
+  public ConnectionPool getConnections() {
+    return connections;
+  }
+
+  /**
+   * @return metrics of the calling execution
+   */
+  public Metrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return policy for retrying failed connections and statements
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * @return bounds on how long connections, statements and command line tools may take
+   */
+  public Timeouts getTimeouts() {
+    return timeouts;
+  }
+
+  /**
+   * Borrow an admin connection from the pool, recording the time it took. The connection is opened with the connect
+   * and socket {@link #getTimeouts() timeouts}, and connection failures are retried according to the
+   * {@link #getRetryPolicy() retry policy}.
+   * @param url JDBC url
+   * @param username JDBC username
+   * @param password JDBC password
+   * @return the borrowed connection; must be closed to return it to the pool
+   * @throws SQLException if a connection cannot be opened
+   */
+  public ConnectionLease connect(final String url, String username, String password) throws SQLException {
+    final Properties properties = timeouts.getConnectionProperties(url, username, password);
+    try (Timing timing = metrics.start("connect")) {
+      return retryPolicy.call(log, "connecting", ErrorClass.CONNECTION, new RetryPolicy.Action<ConnectionLease>() {
+        @Override
+        public ConnectionLease run() throws SQLException {
+          return connections.acquire(url, properties);
+        }
+      });
+    }
+  }
+
+  /**
+   * Open a dedicated connection that is not shared through the pool, recording the time it took. Meant for
+   * connections to the managed databases themselves, which must not be kept open once the operation is done.
+   * The connection is opened with the connect and socket {@link #getTimeouts() timeouts}, and connection failures are
+   * retried according to the {@link #getRetryPolicy() retry policy}.
+   * @param url JDBC url
+   * @param username JDBC username
+   * @param password JDBC password
+   * @return the connection; must be closed
+   * @throws SQLException if the connection cannot be opened
+   */
+  public Connection open(final String url, String username, String password) throws SQLException {
+    final Properties properties = timeouts.getConnectionProperties(url, username, password);
+    try (Timing timing = metrics.start("connect")) {
+      return retryPolicy.call(log, "connecting", ErrorClass.CONNECTION, new RetryPolicy.Action<Connection>() {
+        @Override
+        public Connection run() throws SQLException {
+          return DriverManager.getConnection(url, properties);
+        }
+      });
+    }
+  }
+
+  /**
+   * Wait until a server accepts connections, recording the time it took. Every attempt is bounded by the connect
+   * timeout.
+   * @param url JDBC url
+   * @param username JDBC username
+   * @param password JDBC password
+   * @param waitMillis how long to wait
+   * @throws SQLException if the server doesn't accept connections in time, or connecting fails for a reason that
+   *                      waiting won't fix
+   */
+  public void awaitConnection(String url, String username, String password, long waitMillis) throws SQLException {
+    try (Timing timing = metrics.start("await-server")) {
+      retryPolicy.awaitConnection(log, url, timeouts.getConnectionProperties(url, username, password), waitMillis);
+    }
+  }
+
+  /**
+   * Close the connections opened on behalf of the execution, unless they are shared with other executions.
+   */
+  @Override
+  public void close() {
+    if (ownsConnections) {
+      connections.close();
+    }
+  }
+}
@@ -18,6 +18,9 @@ package com.vecna.maven.db;
 
 import java.io.File;
 import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -27,34 +30,207 @@ import org.apache.maven.plugin.MojoFailureException;
  * @author ogolberg@vecna.com
  */
 public interface DbStrategy {
+  /**
+   * Wait until the server accepts connections, e.g. while it starts up.
+   * @param context execution context
+   * @param url URL of any database on the server
+   * @param username username
+   * @param password password
+   * @param waitMillis how long to wait
+   * @throws MojoExecutionException if the server doesn't accept connections in time
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void awaitServer(DbContext context, URI url, String username, String password, long waitMillis)
+      throws MojoExecutionException, MojoFailureException;
+
   /**
    * Create a database.
+   * @param context execution context
    * @param url database URL
    * @param username username
    * @param password password
    * @throws MojoExecutionException if an unexpected build problem occurs
    * @throws MojoFailureException if an expected build problem occurs
    */
-  public void createDb(URI url, String username, String password) throws MojoExecutionException, MojoFailureException;
+  public void createDb(DbContext context, URI url, String username, String password)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Create a database as a copy of an existing (template) database.
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @param template name of the database to copy
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void cloneDb(DbContext context, URI url, String username, String password, String template)
+      throws MojoExecutionException, MojoFailureException;
 
   /**
    * Drop a database.
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void dropDb(DbContext context, URI url, String username, String password)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * List the user databases of a server, leaving out the system ones.
+   * @param context execution context
+   * @param url URL of any database on the server
+   * @param username username
+   * @param password password
+   * @return names of the databases, in name order, mapped to their creation time (null if it can't be told)
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public Map<String, Date> listDbs(DbContext context, URI url, String username, String password)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Terminate the sessions connected to a database (except the caller's own), busy or not.
+   * @param context execution context
    * @param url database URL
    * @param username username
    * @param password password
+   * @return number of sessions terminated
    * @throws MojoExecutionException if an unexpected build problem occurs
    * @throws MojoFailureException if an expected build problem occurs
    */
-  public void dropDb(URI url, String username, String password) throws MojoExecutionException, MojoFailureException;
+  public int terminateSessions(DbContext context, URI url, String username, String password)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Make commits to a database return before they are flushed to disk (see {@link Durability#RELAXED}).
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @param unlogged whether to also stop logging the changes to the existing tables, if the database supports it
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void relaxDurability(DbContext context, URI url, String username, String password, boolean unlogged)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Rename a database. Nobody may be connected to the database.
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @param newName new name of the database
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void renameDb(DbContext context, URI url, String username, String password, String newName)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Save a copy of a database (a snapshot) that it can later be reset to. Replaces an existing snapshot of the same
+   * name.
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @param snapshot name of the snapshot
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void snapshotDb(DbContext context, URI url, String username, String password, String snapshot)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Reset a database to a snapshot taken by {@link #snapshotDb(DbContext, URI, String, String, String)}. The
+   * snapshot is kept, so the database can be reset to it again.
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @param snapshot name of the snapshot
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void resetDb(DbContext context, URI url, String username, String password, String snapshot)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Export snapshots of databases on the same server for dumps to read the databases as of (see
+   * {@link DumpOptions#setSnapshot(String)}), so that the dumps are consistent with each other.
+   * @param context execution context
+   * @param urls database URLs
+   * @param username username
+   * @param password password
+   * @return the snapshots, which can be imported until they are closed
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs, e.g. the database doesn't support snapshots
+   */
+  public ExportedSnapshots exportSnapshots(DbContext context, List<URI> urls, String username, String password)
+      throws MojoExecutionException, MojoFailureException;
 
   /**
    * Dump a database
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @param out output file (or directory, for the directory format)
+   * @param options dump options
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void dumpDb(DbContext context, URI url, String username, String password, File out,
+                     DumpOptions options)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Restore a dump into an existing database.
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @param in dump file (or directory, for the directory format)
+   * @param options restore options
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public void restoreDb(DbContext context, URI url, String username, String password, File in,
+                        RestoreOptions options)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Compute a fingerprint of a database that changes whenever its schema or data do. The fingerprint is meant to be
+   * cheap to compute, so it is derived from the catalog and the server's modification counters rather than from the
+   * data itself.
+   * @param context execution context
+   * @param url database URL
+   * @param username username
+   * @param password password
+   * @return the fingerprint
+   * @throws MojoExecutionException if an unexpected build problem occurs
+   * @throws MojoFailureException if an expected build problem occurs
+   */
+  public String fingerprint(DbContext context, URI url, String username, String password)
+      throws MojoExecutionException, MojoFailureException;
+
+  /**
+   * Compute a fingerprint of the schema of a database: its tables, columns, indexes and constraints, but not its data.
+   * The fingerprint doesn't depend on the name of the database or the order in which the objects were created, so
+   * that databases with the same schema have the same fingerprint.
+   * @param context execution context
    * @param url database URL
    * @param username username
    * @param password password
-   * @param out output file
+   * @return the fingerprint
    * @throws MojoExecutionException if an unexpected build problem occurs
    * @throws MojoFailureException if an expected build problem occurs
    */
-  public void dumpDb(URI url, String username, String password, File out) throws MojoExecutionException, MojoFailureException;
+  public String schemaFingerprint(DbContext context, URI url, String username, String password)
+      throws MojoExecutionException, MojoFailureException;
 }
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+/**
+ * Provides the {@link DbStrategy} for a type of database. Providers are found with {@link java.util.ServiceLoader}:
+ * to support another database, implement this interface and {@link DbStrategy}, list the provider in
+ * META-INF/services/com.vecna.maven.db.DbStrategyProvider and add the jar as a dependency of the plugin.
+ *
+ * <p>Providers are loaded once, by the plugin's strategy registry, and kept for the lifetime of the plugin's class
+ * loader. All providers are created, whichever database is used, so they should be cheap to create and must not load
+ * the JDBC driver; the strategy is only created once the driver is known to be available.</p>
+ *
+ * @author ogolberg@vecna.com
+ */
+public interface DbStrategyProvider {
+  /**
+   * @return the protocol of the JDBC urls of the database (jdbc:protocol://...)
+   */
+  public String getProtocol();
+
+  /**
+   * @return class name of the JDBC driver the strategy requires
+   */
+  public String getDriverClass();
+
+  /**
+   * @return a new strategy; the plugin creates one per protocol and shares it, so it must be thread-safe
+   */
+  public DbStrategy createStrategy();
+}
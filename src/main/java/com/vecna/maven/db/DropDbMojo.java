@@ -28,13 +28,18 @@ import org.apache.maven.plugins.annotations.Mojo;
  * @author ogolberg@vecna.com
  */
 @Mojo(name = "drop", threadSafe = true)
-public class DropDbMojo extends AbstractDbMojo {
+public class DropDbMojo extends AbstractBatchDbMojo {
   /**
    * {@inheritDoc}
    */
   @Override
   public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
-    final URI uri = getURI();
-    lookupStrategy(uri.getScheme()).dropDb(uri, username, password);
+    forEachDatabase("drop", new DbOperation() {
+      @Override
+      public void run(DbStrategy strategy, DbContext context, URI uri)
+          throws MojoExecutionException, MojoFailureException {
+        strategy.dropDb(context, uri, username, password);
+      }
+    });
   }
 }
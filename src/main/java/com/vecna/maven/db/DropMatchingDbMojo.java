@@ -0,0 +1,156 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Drops the databases of a server whose name matches a pattern and/or that are older than a given age, e.g. to clean
+ * up the databases left behind by CI builds. Sessions connected to the databases are terminated first.
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "drop-matching", threadSafe = true)
+public class DropMatchingDbMojo extends AbstractBatchDbMojo {
+  /**
+   * Regular expression the whole name of a database must match, e.g. ci_.*
+   */
+  @Parameter
+  private String pattern;
+
+  /**
+   * Minimum age of the databases to drop, as a number followed by a unit (s, m, h or d), e.g. 12h. Databases whose
+   * age can't be told are never dropped by age (see the README for how the age is determined).
+   */
+  @Parameter
+  private String olderThan;
+
+  /**
+   * Only list the databases that would be dropped.
+   */
+  @Parameter
+  private boolean dryRun;
+
+  /**
+   * Terminate the sessions connected to the databases before dropping them.
+   */
+  @Parameter(defaultValue = "true")
+  private boolean terminateSessions;
+
+  /**
+   * Databases to drop, found when the execution starts.
+   */
+  private List<URI> matching;
+
+  /**
+   * @param dbs databases mapped to their creation time (null if unknown)
+   * @param namePattern pattern the names must match, or null
+   * @param maxCreated latest creation time, or null
+   * @return names of the databases that satisfy both conditions
+   */
+  static List<String> select(Map<String, Date> dbs, Pattern namePattern, Date maxCreated) {
+    List<String> selected = Lists.newArrayList();
+    for (Map.Entry<String, Date> db : dbs.entrySet()) {
+      if (namePattern != null && !namePattern.matcher(db.getKey()).matches()) {
+        continue;
+      }
+      if (maxCreated != null && (db.getValue() == null || db.getValue().after(maxCreated))) {
+        continue;
+      }
+      selected.add(db.getKey());
+    }
+    return selected;
+  }
+
+  /**
+   * The databases that were found to match.
+   */
+  @Override
+  protected List<URI> getURIs() {
+    return matching;
+  }
+
+  /**
+   * Up to four databases are dropped at a time by default.
+   */
+  @Override
+  protected int getDefaultParallelism() {
+    return 4;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    if (pattern == null && olderThan == null) {
+      throw new MojoFailureException("Either pattern or olderThan must be set");
+    }
+    Pattern namePattern = pattern == null ? null : Pattern.compile(pattern);
+    Date maxCreated = olderThan == null ? null : new Date(System.currentTimeMillis() - parseDuration(olderThan));
+
+    URI server = getURI();
+    DbStrategy strategy = lookupStrategy(server.getScheme());
+    Map<String, Date> dbs;
+    try (DbContext context = createContext()) {
+      awaitServer(strategy, context, server);
+      dbs = strategy.listDbs(context, server, username, password);
+    }
+    List<String> names = select(dbs, namePattern, maxCreated);
+    if (names.isEmpty()) {
+      getLog().info("no databases match among " + dbs.size());
+      return;
+    }
+    if (dryRun) {
+      for (String name : names) {
+        getLog().info("would drop " + name + (dbs.get(name) == null ? "" : " (created " + dbs.get(name) + ")"));
+      }
+      getLog().info("dry run: would drop " + names.size() + " of " + dbs.size() + " databases");
+      return;
+    }
+
+    matching = Lists.newArrayList();
+    for (String name : names) {
+      matching.add(getDatabaseURI(name));
+    }
+    forEachDatabase("drop", new DbOperation() {
+      @Override
+      public void run(DbStrategy strategy, DbContext context, URI uri)
+          throws MojoExecutionException, MojoFailureException {
+        if (terminateSessions) {
+          int terminated = strategy.terminateSessions(context, uri, username, password);
+          if (terminated > 0) {
+            getLog().info("terminated " + terminated + " sessions of " + uri.getPath().replaceAll("^/", ""));
+          }
+        }
+        strategy.dropDb(context, uri, username, password);
+      }
+    });
+  }
+}
@@ -16,36 +16,269 @@
 
 package com.vecna.maven.db;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.codehaus.plexus.util.FileUtils;
 
+import com.google.common.base.Objects;
+import com.vecna.maven.db.io.DumpManifest;
+import com.vecna.maven.db.jdbc.TableSubset;
+import com.vecna.maven.db.metrics.Metrics;
+
 /**
- * Dumps a database into a file.
+ * Dumps a database into a file, or several databases concurrently into a directory.
  *
  * @author ogolberg@vecna.com
  */
 @Mojo(name = "dump", threadSafe = true)
-public class DumpDbMojo extends AbstractDbMojo {
+public class DumpDbMojo extends AbstractBatchDbMojo {
   /**
-   * Output file
+   * Output file. When databases are listed, the directory to dump them to: each database is dumped to a file named
+   * after it, with the extensions of the format and the compressor (e.g. app.dump.gz).
    */
   @Parameter
   private String output;
 
+  /**
+   * When dumping several databases, dump them from snapshots exported at the same moment, so that the dumps are
+   * consistent with each other. PostgreSQL only.
+   */
+  @Parameter
+  private boolean consistentSnapshot;
+
+  /**
+   * How to produce the dump: "tool" runs pg_dump/mysqldump, "jdbc" exports the data of every table over JDBC into
+   * one file per table in the output directory, without any native tools.
+   */
+  @Parameter(defaultValue = "tool")
+  private String engine;
+
+  /**
+   * Output format: plain, custom, directory or tar. Only PostgreSQL supports formats other than plain.
+   */
+  @Parameter(defaultValue = "plain")
+  private String format;
+
+  /**
+   * Number of tables to dump concurrently. Values above 1 require the directory format or the jdbc engine.
+   */
+  @Parameter(defaultValue = "1")
+  private int jobs;
+
+  /**
+   * Compression level (0-9). Applies to the compressor if one is configured, otherwise to the dump tool, in which
+   * case it is not supported by the tar format. If not set, the default level is used.
+   */
+  @Parameter
+  private Integer compression;
+
+  /**
+   * Compressor to stream the dump through while it is written: none, gzip, zstd or lz4. zstd requires
+   * com.github.luben:zstd-jni to be added as a plugin dependency.
+   */
+  @Parameter(defaultValue = "none")
+  private String compressor;
+
+  /**
+   * Write a SHA-256 checksum of the dump to a sidecar file (output + ".sha256"), computed while the dump is written.
+   */
+  @Parameter
+  private boolean checksum;
+
+  /**
+   * Only re-export the tables that changed since the previous dump into the same output directory, according to
+   * their fingerprints (see the README). Requires the jdbc engine.
+   */
+  @Parameter
+  private boolean incremental;
+
+  /**
+   * Skip the dump if the database hasn't changed since the output was last written. The database is fingerprinted
+   * (its schema and modification statistics, see the README for details) before dumping, and the fingerprint is kept
+   * in a manifest next to the output (output + ".manifest").
+   */
+  @Parameter
+  private boolean skipUnchanged;
+
+  /**
+   * Maximum rate, in bytes per second, at which the dump is written (before compression). Since the dump tool waits
+   * for its output to be consumed, this also limits how fast the database is read. Not supported by the directory
+   * format.
+   */
+  @Parameter
+  private Long maxBytesPerSecond;
+
+  /**
+   * Run the dump tool with this niceness (0-19, higher is nicer) to lower its CPU priority. Requires nice.
+   */
+  @Parameter
+  private Integer nice;
+
+  /**
+   * Run the dump tool with this I/O scheduling priority: "idle", or a best-effort level from 0 (highest) to 7
+   * (lowest). Requires ionice (Linux).
+   */
+  @Parameter
+  private String ionice;
+
+  /**
+   * Pause the dump while the server, a replica, lags more than this many seconds behind its primary. Not supported by
+   * the directory format.
+   */
+  @Parameter
+  private Integer maxReplicaLag;
+
+  /**
+   * Patterns of the tables to dump; all tables if not set. A pattern matches the table's name, or its qualified name
+   * (schema.table, or database.table on MySQL) if it contains a dot; * matches any number of characters and ? a
+   * single one.
+   */
+  @Parameter
+  private List<String> includeTables;
+
+  /**
+   * Patterns of the tables not to dump (see includeTables).
+   */
+  @Parameter
+  private List<String> excludeTables;
+
+  /**
+   * Patterns of the tables to dump without their data (see includeTables).
+   */
+  @Parameter
+  private List<String> schemaOnlyTables;
+
+  /**
+   * Rows to dump, by table name (optionally qualified): "limit N" dumps at most N rows, "P%" a random sample of about
+   * P percent of the rows, and anything else is an SQL condition the rows must satisfy. The other tables are dumped in
+   * full. Requires the plain format or the jdbc engine.
+   */
+  @Parameter
+  private Map<String, String> rowFilters;
+
+  /**
+   * Snapshots of the databases of the current batch, if they are dumped from snapshots.
+   */
+  private ExportedSnapshots snapshots;
+
+  /**
+   * Dumps 4 databases at a time.
+   */
+  @Override
+  protected int getDefaultParallelism() {
+    return 4;
+  }
+
+  /**
+   * A batch of dumps stops at the first failure, since the dumps are only useful together.
+   */
+  @Override
+  protected boolean isFailFast() {
+    return true;
+  }
+
+  /**
+   * Exports the snapshots of the databases if they are dumped from consistent snapshots.
+   */
+  @Override
+  protected Closeable prepareBatch(DbContext context, List<URI> uris, Map<String, DbStrategy> strategies)
+      throws MojoExecutionException, MojoFailureException {
+    if (!consistentSnapshot || uris.size() < 2) {
+      return null;
+    }
+    URI server = uris.get(0);
+    for (URI uri : uris) {
+      if (!server.getScheme().equals(uri.getScheme()) || !Objects.equal(server.getAuthority(), uri.getAuthority())) {
+        throw new MojoFailureException("consistent snapshots require all the databases to be on the same server");
+      }
+    }
+    snapshots = strategies.get(server.getScheme()).exportSnapshots(context, uris, username, password);
+    return snapshots;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
-    final URI uri = getURI();
-    File file = new File(output);
+    createOptions();
+    final File target = new File(output);
+    final boolean batch = databases != null && !databases.isEmpty();
+    forEachDatabase("dump", new DbOperation() {
+      @Override
+      public void run(DbStrategy strategy, DbContext context, URI uri)
+          throws MojoExecutionException, MojoFailureException {
+        DumpOptions options = createOptions();
+        if (snapshots != null) {
+          options.setSnapshot(snapshots.getSnapshot(uri));
+        }
+        String db = uri.getPath().replaceAll("^/", "");
+        dump(strategy, context, uri, batch ? new File(target, options.getFileName(db)) : target, options);
+      }
+    });
+  }
+
+  /**
+   * @return validated dump options
+   * @throws MojoFailureException if the options are invalid
+   */
+  private DumpOptions createOptions() throws MojoFailureException {
+    DumpOptions options = new DumpOptions();
+    try {
+      options.setEngine(DumpEngine.valueOf(engine.toUpperCase(Locale.ENGLISH)));
+    } catch (IllegalArgumentException illegalArgumentException) {
+      throw new MojoFailureException("unknown dump engine: " + engine);
+    }
+    try {
+      options.setFormat(DumpFormat.valueOf(format.toUpperCase(Locale.ENGLISH)));
+    } catch (IllegalArgumentException illegalArgumentException) {
+      throw new MojoFailureException("unknown dump format: " + format);
+    }
+    try {
+      options.setCompressor(Compressor.valueOf(compressor.toUpperCase(Locale.ENGLISH)));
+    } catch (IllegalArgumentException illegalArgumentException) {
+      throw new MojoFailureException("unknown compressor: " + compressor);
+    }
+    if (options.getCompressor() == Compressor.ZSTD && !ZstdUtils.isZstdCompressionAvailable()) {
+      throw new MojoFailureException("zstd compression requires com.github.luben:zstd-jni as a plugin dependency");
+    }
+    options.setJobs(jobs);
+    options.setCompression(compression);
+    options.setChecksum(checksum);
+    options.setIncremental(incremental);
+    options.setMaxBytesPerSecond(maxBytesPerSecond);
+    options.setNice(nice);
+    options.setIonice(ionice);
+    options.setMaxReplicaLag(maxReplicaLag);
+    options.setSubset(TableSubset.of(includeTables, excludeTables, schemaOnlyTables, rowFilters));
+    options.validate();
+    return options;
+  }
+
+  /**
+   * Dump a database, unless it hasn't changed since it was last dumped and skipUnchanged is set.
+   * @param strategy strategy for the database
+   * @param context execution context
+   * @param uri database URI
+   * @param file output file
+   * @param options dump options
+   * @throws MojoExecutionException on unexpected build failure
+   * @throws MojoFailureException on expected build failure
+   */
+  private void dump(DbStrategy strategy, DbContext context, URI uri, File file, DumpOptions options)
+      throws MojoExecutionException, MojoFailureException {
     File parent = file.getParentFile();
     if (parent != null) {
       try {
@@ -54,6 +287,55 @@ public class DumpDbMojo extends AbstractDbMojo {
         throw new MojoExecutionException("failed to create " + parent, ioException);
       }
     }
-    lookupStrategy(uri.getScheme()).dumpDb(uri, username, password, file);
+    String fingerprint = null;
+    if (skipUnchanged) {
+      fingerprint = strategy.fingerprint(context, uri, username, password);
+      try {
+        DumpManifest manifest = DumpManifest.read(file);
+        if (manifest != null && manifest.matches(file, fingerprint, options)) {
+          getLog().info("the database hasn't changed since " + file + " was written, skipping the dump");
+          return;
+        }
+      } catch (IOException ioException) {
+        getLog().warn("cannot read the manifest of " + file + ", dumping", ioException);
+      }
+      // a failed dump must not leave a manifest behind that vouches for it
+      DumpManifest.getFile(file).delete();
+    }
+
+    long start = System.nanoTime();
+    strategy.dumpDb(context, uri, username, password, file, options);
+    long nanos = System.nanoTime() - start;
+    getMetrics().record("dump", nanos);
+
+    long bytes = DumpManifest.sizeOf(file);
+    long bytesPerSecond = nanos > 0 ? (long) (bytes / (nanos / 1e9)) : 0;
+    getMetrics().add("bytes-written", bytes);
+    getLog().info("wrote " + bytes + " bytes to " + file + " in " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms ("
+                  + bytesPerSecond / 1024 + " KiB/s)");
+
+    if (fingerprint != null) {
+      try {
+        new DumpManifest(fingerprint, options.toString(), bytes).write(file);
+      } catch (IOException ioException) {
+        throw new MojoExecutionException("cannot write the manifest of " + file, ioException);
+      }
+    }
+  }
+
+  /**
+   * The dump rate is derived from the totals when the metrics are reported, so it is the average rate of the dumps
+   * rather than a sum of their rates.
+   */
+  @Override
+  protected void reportMetrics() {
+    Metrics metrics = getMetrics();
+    Long bytes = metrics.getCounters().get("bytes-written");
+    for (Metrics.Phase phase : metrics.getPhases()) {
+      if ("dump".equals(phase.getName()) && bytes != null && phase.getTotalNanos() > 0) {
+        metrics.add("bytes-per-second", (long) (bytes / (phase.getTotalNanos() / 1e9)));
+      }
+    }
+    super.reportMetrics();
   }
 }
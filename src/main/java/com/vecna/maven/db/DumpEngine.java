@@ -0,0 +1,35 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+/**
+ * Ways of producing a database dump.
+ *
+ * @author ogolberg@vecna.com
+ */
+public enum DumpEngine {
+  /**
+   * The database's native dump tool (pg_dump, mysqldump), which has to be on the PATH.
+   */
+  TOOL,
+
+  /**
+   * In-process export of the table data over JDBC, one file per table. Doesn't require any native tools.
+   */
+  JDBC
+}
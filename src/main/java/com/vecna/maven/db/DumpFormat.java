@@ -0,0 +1,61 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+/**
+ * Output formats of a database dump.
+ *
+ * @author ogolberg@vecna.com
+ */
+public enum DumpFormat {
+  /**
+   * Plain SQL script.
+   */
+  PLAIN(".sql"),
+
+  /**
+   * Custom (compressed, reorderable) archive, restorable by pg_restore.
+   */
+  CUSTOM(".dump"),
+
+  /**
+   * Directory with one file per table, restorable by pg_restore. The only format that can be dumped in parallel.
+   */
+  DIRECTORY(""),
+
+  /**
+   * Tar archive, restorable by pg_restore.
+   */
+  TAR(".tar");
+
+  private final String extension;
+
+  /**
+   * @param extension conventional file name extension of the format
+   */
+  private DumpFormat(String extension) {
+    this.extension = extension;
+  }
+
+  /**
+   * @return conventional file name extension of the format (empty for the directory format)
+   */
+  public String getExtension() {
+    return extension;
+  }
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Objects.ToStringHelper;
+import com.vecna.maven.db.jdbc.TableSubset;
+
+/**
+ * Options controlling how a database is dumped.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class DumpOptions {
+  private static final Pattern IONICE = Pattern.compile("idle|[0-7]");
+
+  private DumpEngine engine = DumpEngine.TOOL;
+  private DumpFormat format = DumpFormat.PLAIN;
+  private int jobs = 1;
+  private Integer compression;
+  private Compressor compressor = Compressor.NONE;
+  private boolean checksum;
+  private boolean incremental;
+  private Long maxBytesPerSecond;
+  private Integer nice;
+  private String ionice;
+  private Integer maxReplicaLag;
+  private String snapshot;
+  private TableSubset subset = new TableSubset();
+
+  /**
+   * @return how the dump is produced
+   */
+  public DumpEngine getEngine() {
+    return engine;
+  }
+
+  /**
+   * @param engine how the dump is produced
+   */
+  public void setEngine(DumpEngine engine) {
+    this.engine = engine;
+  }
+
+  /**
+   * @return output format
+   */
+  public DumpFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * @param format output format
+   */
+  public void setFormat(DumpFormat format) {
+    this.format = format;
+  }
+
+  /**
+   * @return number of tables to dump concurrently (and, for the JDBC engine, the number of connections to use)
+   */
+  public int getJobs() {
+    return jobs;
+  }
+
+  /**
+   * @param jobs number of tables to dump concurrently (and, for the JDBC engine, the number of connections to use)
+   */
+  public void setJobs(int jobs) {
+    this.jobs = jobs;
+  }
+
+  /**
+   * @return compression level (0-9) of the dump tool or of the {@link #getCompressor() compressor}, or null to use
+   *         the default
+   */
+  public Integer getCompression() {
+    return compression;
+  }
+
+  /**
+   * @param compression compression level (0-9) of the dump tool or of the {@link #getCompressor() compressor}, or
+   *                    null to use the default
+   */
+  public void setCompression(Integer compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * @return compressor to stream the dump through
+   */
+  public Compressor getCompressor() {
+    return compressor;
+  }
+
+  /**
+   * @param compressor compressor to stream the dump through
+   */
+  public void setCompressor(Compressor compressor) {
+    this.compressor = compressor;
+  }
+
+  /**
+   * @return whether to write a SHA-256 checksum of the dump next to it
+   */
+  public boolean isChecksum() {
+    return checksum;
+  }
+
+  /**
+   * @param checksum whether to write a SHA-256 checksum of the dump next to it
+   */
+  public void setChecksum(boolean checksum) {
+    this.checksum = checksum;
+  }
+
+  /**
+   * @return whether to only re-export the tables that changed since the previous export (jdbc engine only)
+   */
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  /**
+   * @param incremental whether to only re-export the tables that changed since the previous export (jdbc engine
+   *                    only)
+   */
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  /**
+   * @return maximum rate at which the dump is written, or null for no limit
+   */
+  public Long getMaxBytesPerSecond() {
+    return maxBytesPerSecond;
+  }
+
+  /**
+   * @param maxBytesPerSecond maximum rate at which the dump is written, or null for no limit
+   */
+  public void setMaxBytesPerSecond(Long maxBytesPerSecond) {
+    this.maxBytesPerSecond = maxBytesPerSecond;
+  }
+
+  /**
+   * @return niceness (0-19) to run the dump tool with, or null to run it with the plugin's
+   */
+  public Integer getNice() {
+    return nice;
+  }
+
+  /**
+   * @param nice niceness (0-19) to run the dump tool with, or null to run it with the plugin's
+   */
+  public void setNice(Integer nice) {
+    this.nice = nice;
+  }
+
+  /**
+   * @return I/O scheduling priority to run the dump tool with: "idle", or a best-effort level from 0 (highest) to 7
+   *         (lowest); null to run it with the plugin's
+   */
+  public String getIonice() {
+    return ionice;
+  }
+
+  /**
+   * @param ionice I/O scheduling priority to run the dump tool with: "idle", or a best-effort level from 0 (highest)
+   *               to 7 (lowest); null to run it with the plugin's
+   */
+  public void setIonice(String ionice) {
+    this.ionice = ionice;
+  }
+
+  /**
+   * @return replication lag (in seconds) above which the dump pauses, or null to never pause
+   */
+  public Integer getMaxReplicaLag() {
+    return maxReplicaLag;
+  }
+
+  /**
+   * @param maxReplicaLag replication lag (in seconds) above which the dump pauses, or null to never pause
+   */
+  public void setMaxReplicaLag(Integer maxReplicaLag) {
+    this.maxReplicaLag = maxReplicaLag;
+  }
+
+  /**
+   * @return snapshot exported by another session for the dump to read the database as of, or null to read it as of
+   *         the start of the dump
+   */
+  public String getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * @param snapshot snapshot exported by another session for the dump to read the database as of, or null to read it
+   *                 as of the start of the dump
+   */
+  public void setSnapshot(String snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * @return the tables and rows to dump
+   */
+  public TableSubset getSubset() {
+    return subset;
+  }
+
+  /**
+   * @param subset the tables and rows to dump
+   */
+  public void setSubset(TableSubset subset) {
+    this.subset = subset;
+  }
+
+  /**
+   * @param database name of a database
+   * @return name of the file (or directory) to dump the database to, with the extensions of the format and the
+   *         compressor
+   */
+  public String getFileName(String database) {
+    if (engine == DumpEngine.JDBC) {
+      return database;
+    }
+    return database + format.getExtension() + compressor.getExtension();
+  }
+
+  /**
+   * @return whether the dump should go easy on the server
+   */
+  public boolean isThrottled() {
+    return maxBytesPerSecond != null || nice != null || ionice != null || maxReplicaLag != null;
+  }
+
+  /**
+   * @return whether the dump tool's output is streamed through the plugin (to be compressed, checksummed or
+   *         throttled) rather than written by the tool directly
+   */
+  public boolean isStreamed() {
+    return compressor != Compressor.NONE || checksum || maxBytesPerSecond != null || maxReplicaLag != null;
+  }
+
+  /**
+   * Check that the options can be used together.
+   * @throws MojoFailureException if the options are inconsistent
+   */
+  public void validate() throws MojoFailureException {
+    if (jobs < 1) {
+      throw new MojoFailureException("jobs must be positive, got " + jobs);
+    }
+    if (engine == DumpEngine.JDBC) {
+      if (format != DumpFormat.PLAIN) {
+        throw new MojoFailureException("the jdbc engine always writes one data file per table, the format option "
+                                       + "only applies to the tool engine");
+      }
+      if (compression != null && compressor == Compressor.NONE) {
+        throw new MojoFailureException("the jdbc engine can only compress through a compressor");
+      }
+      if (nice != null || ionice != null) {
+        throw new MojoFailureException("nice and ionice only apply to the dump tools of the tool engine");
+      }
+    } else {
+      if (incremental) {
+        throw new MojoFailureException("incremental dumps require the jdbc engine");
+      }
+      if (jobs > 1 && format != DumpFormat.DIRECTORY) {
+        throw new MojoFailureException("parallel dumps (jobs > 1) require the directory format, got " + format);
+      }
+      if (!subset.getRowFilters().isEmpty()) {
+        // the filtered rows are dumped separately and appended to the dump
+        if (format != DumpFormat.PLAIN) {
+          throw new MojoFailureException("row filters require the plain format, got " + format);
+        }
+        if (compression != null && compressor == Compressor.NONE) {
+          throw new MojoFailureException("dumps with row filters can only be compressed through a compressor");
+        }
+      }
+      if (isStreamed() && format == DumpFormat.DIRECTORY) {
+        throw new MojoFailureException("the directory format cannot be streamed through a compressor, "
+                                       + "checksummed, rate limited or paused on replication lag");
+      }
+    }
+    if (maxBytesPerSecond != null && maxBytesPerSecond < 1) {
+      throw new MojoFailureException("maxBytesPerSecond must be positive, got " + maxBytesPerSecond);
+    }
+    if (nice != null && (nice < 0 || nice > 19)) {
+      throw new MojoFailureException("nice must be between 0 and 19, got " + nice);
+    }
+    if (ionice != null && !IONICE.matcher(ionice).matches()) {
+      throw new MojoFailureException("ionice must be idle or a best-effort level between 0 and 7, got " + ionice);
+    }
+    if (maxReplicaLag != null && maxReplicaLag < 0) {
+      throw new MojoFailureException("maxReplicaLag must not be negative, got " + maxReplicaLag);
+    }
+    if (compression != null) {
+      if (compression < 0 || compression > 9) {
+        throw new MojoFailureException("compression level must be between 0 and 9, got " + compression);
+      }
+      if (compressor == Compressor.NONE && format == DumpFormat.TAR) {
+        throw new MojoFailureException("the tar format does not support compression");
+      }
+      if (compressor == Compressor.LZ4) {
+        throw new MojoFailureException("the lz4 compressor does not support compression levels");
+      }
+    }
+  }
+
+  /**
+   * Describes the options that affect the output. The throttling options and the snapshot are left out, and so is
+   * the subset unless there is one, so that changing them doesn't invalidate the manifests of earlier dumps.
+   */
+  @Override
+  public String toString() {
+    ToStringHelper helper = Objects.toStringHelper(this).add("engine", engine).add("format", format).add("jobs", jobs)
+                                   .add("compression", compression).add("compressor", compressor)
+                                   .add("checksum", checksum).add("incremental", incremental);
+    if (!subset.isEmpty()) {
+      helper.add("subset", subset);
+    }
+    return helper.toString();
+  }
+}
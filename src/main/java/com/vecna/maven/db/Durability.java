@@ -0,0 +1,36 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+/**
+ * How durable the commits to a database are.
+ *
+ * @author ogolberg@vecna.com
+ */
+public enum Durability {
+  /**
+   * The server's defaults: commits survive a crash.
+   */
+  FULL,
+
+  /**
+   * Commits return before they are flushed to disk, so the most recent ones may be lost in a crash. Good enough for
+   * throwaway test databases, and much faster for write-heavy tests.
+   */
+  RELAXED
+}
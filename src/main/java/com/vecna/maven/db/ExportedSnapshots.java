@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Snapshots of databases, exported for dumps to read the databases as of (see {@link DumpOptions#setSnapshot(String)}).
+ * A snapshot can only be imported while the session that exported it is open, so the sessions are kept open until
+ * the snapshots are closed.
+ *
+ * @author ogolberg@vecna.com
+ */
+public final class ExportedSnapshots implements Closeable {
+  private final Map<URI, String> snapshots;
+  private final List<Connection> sessions;
+
+  /**
+   * Create a new {@link ExportedSnapshots}
+   * @param snapshots identifiers of the snapshots by the URIs of their databases
+   * @param sessions the sessions that exported the snapshots
+   */
+  public ExportedSnapshots(Map<URI, String> snapshots, List<Connection> sessions) {
+    this.snapshots = ImmutableMap.copyOf(snapshots);
+    this.sessions = ImmutableList.copyOf(sessions);
+  }
+
+  /**
+   * @param uri database URI
+   * @return identifier of the database's snapshot, or null if no snapshot of the database was exported
+   */
+  public String getSnapshot(URI uri) {
+    return snapshots.get(uri);
+  }
+
+  /**
+   * Close the sessions that exported the snapshots, which releases the snapshots.
+   */
+  @Override
+  public void close() {
+    for (Connection session : sessions) {
+      try {
+        session.close();
+      } catch (SQLException sqlException) {
+        // the server releases the snapshot when the session ends, one way or another
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Fingerprints the schema of a database (its tables, columns, indexes and constraints) with a few catalog queries,
+ * to check that it has the expected shape without dumping it.
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "fingerprint", threadSafe = true)
+public class FingerprintDbMojo extends AbstractDbMojo {
+  /**
+   * File to write the fingerprint to.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/db-schema.fingerprint")
+  private File output;
+
+  /**
+   * Expected fingerprint; the build fails if the schema's fingerprint differs.
+   */
+  @Parameter
+  private String expected;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    URI uri = getURI();
+    DbStrategy strategy = lookupStrategy(uri.getScheme());
+    String fingerprint;
+    try (DbContext context = createContext()) {
+      awaitServer(strategy, context, uri);
+      fingerprint = strategy.schemaFingerprint(context, uri, username, password);
+    }
+    getLog().info("schema fingerprint: " + fingerprint);
+
+    if (output != null) {
+      try {
+        Files.createParentDirs(output);
+        Files.write(fingerprint + "\n", output, Charsets.UTF_8);
+      } catch (IOException ioException) {
+        throw new MojoExecutionException("couldn't write " + output, ioException);
+      }
+    }
+
+    if (expected != null && !expected.trim().equalsIgnoreCase(fingerprint)) {
+      throw new MojoFailureException("the schema of " + uri.getPath() + " doesn't match: its fingerprint is "
+                                     + fingerprint + ", expected " + expected.trim());
+    }
+  }
+}
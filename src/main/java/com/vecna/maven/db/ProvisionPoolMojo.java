@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Creates a pool of databases, one per test fork, and publishes their URLs as project and system properties
+ * (propertyPrefix + fork number).
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "provision-pool", threadSafe = true)
+public class ProvisionPoolMojo extends AbstractPoolDbMojo {
+  /**
+   * Name of an existing database to copy. If not set, empty databases are created.
+   */
+  @Parameter
+  private String template;
+
+  /**
+   * Durability of the new databases: "full" (the server's defaults) or "relaxed", which makes commits return before
+   * they are flushed to disk; see the README for what this means for each database.
+   */
+  @Parameter(defaultValue = "full")
+  private String durability;
+
+  /**
+   * With relaxed durability, also make the tables copied from the template unlogged (PostgreSQL 9.5 and later only).
+   */
+  @Parameter
+  private boolean unlogged;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    final Durability durabilityMode = parseDurability(durability);
+    forEachDatabase("create", new DbOperation() {
+      @Override
+      public void run(DbStrategy strategy, DbContext context, URI uri)
+          throws MojoExecutionException, MojoFailureException {
+        createDb(strategy, context, uri, template, durabilityMode, unlogged);
+      }
+    });
+
+    for (int fork = 1; fork <= poolSize; fork++) {
+      String property = propertyPrefix + fork;
+      String value = JDBC_PREFIX + getDatabaseURI(getDatabaseName(fork));
+      if (project != null) {
+        project.getProperties().setProperty(property, value);
+      }
+      System.setProperty(property, value);
+      getLog().debug(property + " = " + value);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Drops the pool of databases created by {@link ProvisionPoolMojo}.
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "release-pool", threadSafe = true)
+public class ReleasePoolMojo extends AbstractPoolDbMojo {
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    forEachDatabase("drop", new DbOperation() {
+      @Override
+      public void run(DbStrategy strategy, DbContext context, URI uri)
+          throws MojoExecutionException, MojoFailureException {
+        strategy.dropDb(context, uri, username, password);
+      }
+    });
+
+    for (int fork = 1; fork <= poolSize; fork++) {
+      System.clearProperty(propertyPrefix + fork);
+    }
+  }
+}
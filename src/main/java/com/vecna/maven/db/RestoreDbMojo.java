@@ -0,0 +1,68 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.io.File;
+import java.net.URI;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Restores a database from a dump.
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "restore", threadSafe = true)
+public class RestoreDbMojo extends AbstractDbMojo {
+  /**
+   * Dump file (or directory, for directory format dumps)
+   */
+  @Parameter(required = true)
+  private String input;
+
+  /**
+   * Number of tables to restore concurrently. Only PostgreSQL custom and directory archives can be restored in
+   * parallel.
+   */
+  @Parameter(defaultValue = "1")
+  private int jobs;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    final URI uri = getURI();
+    File file = new File(input);
+    if (!file.exists()) {
+      throw new MojoFailureException("dump " + file + " does not exist");
+    }
+    RestoreOptions options = new RestoreOptions();
+    options.setJobs(jobs);
+    options.validate();
+
+    DbStrategy strategy = lookupStrategy(uri.getScheme());
+    try (DbContext context = createContext()) {
+      awaitServer(strategy, context, uri);
+      strategy.restoreDb(context, uri, username, password, file, options);
+    }
+  }
+}
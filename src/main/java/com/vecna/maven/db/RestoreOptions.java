@@ -0,0 +1,53 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Options controlling how a database dump is restored.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class RestoreOptions {
+  private int jobs = 1;
+
+  /**
+   * @return number of tables to restore concurrently
+   */
+  public int getJobs() {
+    return jobs;
+  }
+
+  /**
+   * @param jobs number of tables to restore concurrently
+   */
+  public void setJobs(int jobs) {
+    this.jobs = jobs;
+  }
+
+  /**
+   * Check that the options can be used together.
+   * @throws MojoFailureException if the options are inconsistent
+   */
+  public void validate() throws MojoFailureException {
+    if (jobs < 1) {
+      throw new MojoFailureException("jobs must be positive, got " + jobs);
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.vecna.maven.db.jdbc.ConnectionPool;
+
+/**
+ * Admin connections and other resources shared by all the executions of the plugin in a build, so that a reactor
+ * build doesn't connect to the server for every goal execution. Strategies are cached by {@link StrategyRegistry}.
+ *
+ * <p>Admin connections are kept for the duration of the build. A build is identified by a key that all the
+ * executions of the build share (see {@link AbstractDbMojo#getBuild()}), rather than by the Maven session object,
+ * which Maven clones for every project of a parallel (-T) build. The connections are closed when an execution
+ * belonging to a different build shows up (e.g. the next build in a long-lived Maven process) and when the JVM exits,
+ * rather than when the build ends: the Maven 2.0 API the plugin is built against doesn't tell plugins when a build
+ * ends. A long-lived Maven process (e.g. mvnd or an IDE) therefore keeps up to {@value #MAX_IDLE_CONNECTIONS} idle
+ * admin connections per server between builds. {@link WarmPool}s are kept and closed the same way. Background operations are tracked per project for the duration
+ * of the build; the ones that nobody waited for are logged when the build ends, and waited for before the JVM exits.
+ * All methods are thread-safe, so the cache can be used by parallel builds.</p>
+ *
+ * @author ogolberg@vecna.com
+ */
+final class SessionCache {
+  /**
+   * Number of idle connections to keep open per server and user.
+   */
+  private static final int MAX_IDLE_CONNECTIONS = 4;
+
+  /**
+   * How often to check whether the background operations of the previous build are done.
+   */
+  private static final long AWAIT_POLL_MILLIS = 100;
+
+  private static final Map<String, WarmPool> WARM_POOLS = Maps.newHashMap();
+  private static final List<PendingOperation> PENDING_OPERATIONS = Lists.newArrayList();
+
+  private static Object build;
+  private static ConnectionPool connections;
+  private static boolean shutdownHookRegistered;
+
+  /**
+   * A background operation started by an async execution.
+   */
+  static final class PendingOperation {
+    private final String project;
+    private final String group;
+    private final String description;
+    private final Log log;
+    private final Future<Void> future;
+
+    /**
+     * Create a new {@link PendingOperation}
+     * @param project id of the project of the execution that started the operation, or null
+     * @param group group of the operation
+     * @param description description of the operation, for logging
+     * @param log log of the execution that started the operation
+     * @param future the operation
+     */
+    PendingOperation(String project, String group, String description, Log log, Future<Void> future) {
+      this.project = project;
+      this.group = group;
+      this.description = description;
+      this.log = log;
+      this.future = future;
+    }
+
+    /**
+     * @param projectFilter id of a project, or null for any project
+     * @param groupFilter group, or null for any group
+     * @return whether the operation belongs to the project and group
+     */
+    private boolean matches(String projectFilter, String groupFilter) {
+      return (projectFilter == null || projectFilter.equals(project))
+          && (groupFilter == null || groupFilter.equals(group));
+    }
+
+    /**
+     * @return description of the operation and the project it belongs to
+     */
+    private String describe() {
+      return "background " + description + (project == null ? "" : " of " + project);
+    }
+  }
+
+  private SessionCache() {
+  }
+
+  /**
+   * @param currentBuild key of the build of the calling execution
+   * @return admin connections shared by the executions of the build
+   */
+  static synchronized ConnectionPool getConnections(Object currentBuild) {
+    checkBuild(currentBuild);
+    if (connections == null) {
+      connections = new ConnectionPool(MAX_IDLE_CONNECTIONS);
+    }
+    return connections;
+  }
+
+  /**
+   * @param currentBuild key of the build of the calling execution
+   * @param key key of the pool (see {@link WarmPool#key})
+   * @return the build's warm pool for the key, or null if there isn't one
+   */
+  static synchronized WarmPool getWarmPool(Object currentBuild, String key) {
+    checkBuild(currentBuild);
+    return WARM_POOLS.get(key);
+  }
+
+  /**
+   * Keep a warm pool for the rest of the build, unless the build already has one for the key.
+   * @param currentBuild key of the build of the calling execution
+   * @param key key of the pool (see {@link WarmPool#key})
+   * @param pool pool to keep
+   * @return whether the pool was kept; if not, the caller must close it
+   */
+  static synchronized boolean putWarmPool(Object currentBuild, String key, WarmPool pool) {
+    checkBuild(currentBuild);
+    if (WARM_POOLS.containsKey(key)) {
+      return false;
+    }
+    WARM_POOLS.put(key, pool);
+    return true;
+  }
+
+  /**
+   * Track a background operation until an await execution of the build waits for it.
+   * @param currentBuild key of the build of the calling execution
+   * @param operation the operation
+   */
+  static synchronized void addPendingOperation(Object currentBuild, PendingOperation operation) {
+    checkBuild(currentBuild);
+    PENDING_OPERATIONS.add(operation);
+  }
+
+  /**
+   * Stop tracking the background operations of a project and group.
+   * @param currentBuild key of the build of the calling execution
+   * @param project id of the project, or null for all the projects
+   * @param group group of the operations, or null for all of them
+   * @return the operations, in the order they were started
+   */
+  static synchronized List<Future<Void>> takePendingOperations(Object currentBuild, String project, String group) {
+    checkBuild(currentBuild);
+    List<Future<Void>> operations = Lists.newArrayList();
+    for (Iterator<PendingOperation> it = PENDING_OPERATIONS.iterator(); it.hasNext();) {
+      PendingOperation operation = it.next();
+      if (operation.matches(project, group)) {
+        operations.add(operation.future);
+        it.remove();
+      }
+    }
+    return operations;
+  }
+
+  /**
+   * Release the resources of the previous build if the calling execution belongs to a new one. The executions of the
+   * previous build are done by then, but the background operations that nobody waited for may still be running and
+   * using its warm pools and connections, so they are waited for first.
+   * @param currentBuild key of the build of the calling execution
+   */
+  private static void checkBuild(Object currentBuild) {
+    if (!Objects.equal(build, currentBuild)) {
+      awaitPrevious();
+    }
+    // another execution of the new build may have taken over while this one was waiting
+    if (!Objects.equal(build, currentBuild)) {
+      closeAll();
+      build = currentBuild;
+
+      if (!shutdownHookRegistered) {
+        Runtime.getRuntime().addShutdownHook(new Thread("db-manager-connection-cleanup") {
+          @Override
+          public void run() {
+            awaitUnfinished();
+            closeAll();
+          }
+        });
+        shutdownHookRegistered = true;
+      }
+    }
+  }
+
+  /**
+   * Wait for the background operations of the previous build that are still running. Must be called with the lock
+   * held; the lock is released while waiting, so that the operations can still use the cache.
+   */
+  private static void awaitPrevious() {
+    for (PendingOperation operation : Lists.newArrayList(PENDING_OPERATIONS)) {
+      if (!operation.future.isDone()) {
+        operation.log.warn("waiting for the " + operation.describe() + ", which was never awaited, before the next"
+                           + " build starts");
+      }
+      while (!operation.future.isDone()) {
+        try {
+          SessionCache.class.wait(AWAIT_POLL_MILLIS);
+        } catch (InterruptedException interruptedException) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Wait for the background operations that nobody waited for, so that the JVM doesn't exit in the middle of them.
+   * The operations log their own failures.
+   */
+  private static void awaitUnfinished() {
+    List<PendingOperation> unfinished = Lists.newArrayList();
+    synchronized (SessionCache.class) {
+      for (PendingOperation operation : PENDING_OPERATIONS) {
+        if (!operation.future.isDone()) {
+          unfinished.add(operation);
+        }
+      }
+    }
+    for (PendingOperation operation : unfinished) {
+      operation.log.warn("waiting for the " + operation.describe() + ", which was never awaited");
+      try {
+        operation.future.get();
+      } catch (ExecutionException executionException) {
+        // already logged by the operation
+      } catch (InterruptedException interruptedException) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Close the warm pools and the cached admin connections.
+   */
+  static synchronized void closeAll() {
+    // operations that nobody waited for are left to finish on their own; they log their own failures
+    for (PendingOperation operation : PENDING_OPERATIONS) {
+      if (!operation.future.isDone()) {
+        operation.log.warn("the " + operation.describe() + " was never awaited and is still running");
+      }
+    }
+    PENDING_OPERATIONS.clear();
+    for (WarmPool pool : WARM_POOLS.values()) {
+      pool.close();
+    }
+    WARM_POOLS.clear();
+    if (connections != null) {
+      connections.close();
+      connections = null;
+    }
+  }
+}
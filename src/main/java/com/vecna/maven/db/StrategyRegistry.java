@@ -0,0 +1,104 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.google.common.collect.Maps;
+import com.vecna.maven.db.metrics.Metrics;
+import com.vecna.maven.db.metrics.Timing;
+
+/**
+ * Finds the {@link DbStrategy} for a protocol through the {@link DbStrategyProvider}s on the plugin's class path.
+ * Providers are discovered on the first lookup, and each strategy is created (and its JDBC driver loaded) on the
+ * first lookup of its protocol. Strategies are stateless, so they are kept for the lifetime of the plugin's class
+ * loader and shared by all the executions of the plugin. All methods are thread-safe.
+ *
+ * @author ogolberg@vecna.com
+ */
+final class StrategyRegistry {
+  private static final ConcurrentMap<String, DbStrategy> STRATEGIES = new ConcurrentHashMap<String, DbStrategy>();
+  private static Map<String, DbStrategyProvider> providers;
+
+  private StrategyRegistry() {
+  }
+
+  /**
+   * @return the providers on the plugin's class path, by protocol
+   * @throws MojoFailureException if a provider cannot be instantiated
+   */
+  private static synchronized Map<String, DbStrategyProvider> getProviders() throws MojoFailureException {
+    if (providers == null) {
+      Map<String, DbStrategyProvider> found = Maps.newTreeMap();
+      try {
+        for (DbStrategyProvider provider : ServiceLoader.load(DbStrategyProvider.class,
+                                                              StrategyRegistry.class.getClassLoader())) {
+          // the first provider on the class path wins
+          if (!found.containsKey(provider.getProtocol())) {
+            found.put(provider.getProtocol(), provider);
+          }
+        }
+      } catch (ServiceConfigurationError serviceConfigurationError) {
+        throw new MojoFailureException("cannot load the database strategies: "
+                                       + serviceConfigurationError.getMessage());
+      }
+      providers = found;
+    }
+    return providers;
+  }
+
+  /**
+   * Find the strategy for a protocol, creating it on first use.
+   * @param protocol database protocol (jdbc:protocol://...)
+   * @param metrics metrics to record the time it takes to create the strategy in
+   * @return the strategy
+   * @throws MojoFailureException if no provider supports the protocol or the JDBC driver is missing
+   */
+  static DbStrategy lookup(String protocol, Metrics metrics) throws MojoFailureException {
+    DbStrategy strategy = STRATEGIES.get(protocol);
+    if (strategy != null) {
+      return strategy;
+    }
+
+    Map<String, DbStrategyProvider> available = getProviders();
+    DbStrategyProvider provider = available.get(protocol);
+    if (provider == null) {
+      throw new MojoFailureException("protocol " + protocol + " is not implemented (supported: " + available.keySet()
+                                     + "); strategies for other databases can be added as plugin dependencies");
+    }
+
+    // loading the driver is what the timing is for
+    try (Timing timing = metrics.start("driver-load")) {
+      try {
+        Class.forName(provider.getDriverClass(), true, provider.getClass().getClassLoader());
+      } catch (ClassNotFoundException classNotFoundException) {
+        throw new MojoFailureException("the JDBC driver for protocol " + protocol + " (" + provider.getDriverClass()
+                                       + ") is not available; add it as a dependency of the plugin");
+      }
+      strategy = provider.createStrategy();
+    }
+    DbStrategy existing = STRATEGIES.putIfAbsent(protocol, strategy);
+    return existing == null ? strategy : existing;
+  }
+}
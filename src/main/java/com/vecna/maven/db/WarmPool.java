@@ -0,0 +1,169 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+import com.google.common.collect.Lists;
+import com.vecna.maven.db.jdbc.ConnectionPool;
+import com.vecna.maven.db.jdbc.RetryPolicy;
+import com.vecna.maven.db.jdbc.Timeouts;
+import com.vecna.maven.db.metrics.Metrics;
+
+/**
+ * A queue of ready-made databases on a server, kept full by a background thread, so that creating a database during
+ * the build only takes a rename. The databases are empty or copies of a template, and get temporary names until they
+ * are claimed. The databases that are still unclaimed when the pool is closed are dropped.
+ *
+ * @author ogolberg@vecna.com
+ */
+final class WarmPool implements Closeable {
+  private final DbStrategy strategy;
+  private final URI server;
+  private final String username;
+  private final String password;
+  private final String template;
+  private final String prefix;
+  private final DbContext context;
+  private final Semaphore vacancies;
+  private final BlockingQueue<URI> ready = new LinkedBlockingQueue<URI>();
+  private final Thread filler;
+  private volatile boolean closed;
+
+  /**
+   * Create a new {@link WarmPool}; call {@link #start()} to start filling it.
+   * @param log log to report background failures to
+   * @param strategy strategy for the server
+   * @param server URI of any database on the server
+   * @param username admin username
+   * @param password admin password
+   * @param template name of the database to copy, or null to create empty databases
+   * @param size number of databases to keep ready
+   * @param retryPolicy policy for retrying the failures of the background operations
+   * @param timeouts bounds on how long the background operations may take
+   */
+  WarmPool(Log log, DbStrategy strategy, URI server, String username, String password, String template, int size,
+           RetryPolicy retryPolicy, Timeouts timeouts) {
+    this.strategy = strategy;
+    this.server = server;
+    this.username = username;
+    this.password = password;
+    this.template = template;
+    // unique enough not to collide with the pools of other builds on the same server
+    this.prefix = "warm_" + Integer.toHexString(new Random().nextInt() & 0xffffff) + "_";
+    this.context = new DbContext(log, new ConnectionPool(1), true, new Metrics(), retryPolicy, timeouts);
+    this.vacancies = new Semaphore(size);
+    this.filler = new Thread("db-warm-pool") {
+      @Override
+      public void run() {
+        fill();
+      }
+    };
+    filler.setDaemon(true);
+  }
+
+  /**
+   * @param server URI of any database on a server
+   * @param username admin username
+   * @param template name of the template database, or null
+   * @return key identifying the pools that can serve the same requests
+   */
+  static String key(URI server, String username, String template) {
+    return username + "@" + server.getScheme() + "://" + server.getAuthority() + "/" + template;
+  }
+
+  /**
+   * Start filling the pool in the background.
+   */
+  void start() {
+    filler.start();
+  }
+
+  /**
+   * Create databases whenever there's room in the pool, until the pool is closed or a database cannot be created.
+   */
+  private void fill() {
+    try {
+      for (int i = 1; !closed; i++) {
+        vacancies.acquire();
+        URI uri = AbstractBatchDbMojo.withDatabase(server, prefix + i);
+        if (template == null) {
+          strategy.createDb(context, uri, username, password);
+        } else {
+          strategy.cloneDb(context, uri, username, password, template);
+        }
+        ready.add(uri);
+      }
+    } catch (InterruptedException interruptedException) {
+      // the pool is being closed
+    } catch (MojoExecutionException | MojoFailureException | URISyntaxException exception) {
+      if (!closed) {
+        context.getLog().warn("stopped pre-creating databases, new databases will be created on demand", exception);
+      }
+    }
+  }
+
+  /**
+   * Take a ready database out of the pool. Never waits for a database to be created.
+   * @return URI of the database, or null if none is ready; the caller becomes responsible for the database
+   */
+  URI claim() {
+    URI uri = ready.poll();
+    if (uri != null) {
+      vacancies.release();
+    }
+    return uri;
+  }
+
+  /**
+   * Stop filling the pool and drop the unclaimed databases.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    filler.interrupt();
+    try {
+      // let a creation in progress finish, so its database is dropped too
+      filler.join();
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+    }
+
+    List<URI> unclaimed = Lists.newArrayList();
+    ready.drainTo(unclaimed);
+    for (URI uri : unclaimed) {
+      try {
+        strategy.dropDb(context, uri, username, password);
+      } catch (MojoExecutionException | MojoFailureException exception) {
+        context.getLog().warn("cannot drop the pre-created database " + uri.getPath(), exception);
+      }
+    }
+    context.close();
+  }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Starts pre-creating databases in the background, so that the create and provision-pool goals executed later in the
+ * build (with the same server, username and template) can claim a ready database by renaming it. The databases that
+ * are still unclaimed at the end of the build are dropped.
+ *
+ * @author ogolberg@vecna.com
+ */
+@Mojo(name = "warm-pool", defaultPhase = LifecyclePhase.INITIALIZE, threadSafe = true)
+public class WarmPoolMojo extends AbstractDbMojo {
+  /**
+   * Name of an existing database to copy. If not set, empty databases are pre-created.
+   */
+  @Parameter
+  private String template;
+
+  /**
+   * Number of databases to keep ready.
+   */
+  @Parameter(defaultValue = "2")
+  private int warmPoolSize;
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+    if (warmPoolSize < 1) {
+      throw new MojoFailureException("warmPoolSize must be positive, got " + warmPoolSize);
+    }
+    if (session == null) {
+      getLog().warn("no build session, not pre-creating databases");
+      return;
+    }
+
+    URI uri = getURI();
+    String key = WarmPool.key(uri, username, template);
+    if (SessionCache.getWarmPool(getBuild(), key) != null) {
+      getLog().info("databases are already being pre-created");
+      return;
+    }
+
+    WarmPool pool = new WarmPool(getLog(), lookupStrategy(uri.getScheme()), uri, username, password, template,
+                                 warmPoolSize, getRetryPolicy(), getTimeouts());
+    if (SessionCache.putWarmPool(getBuild(), key, pool)) {
+      pool.start();
+      getLog().info("pre-creating " + warmPoolSize + " databases in the background");
+    } else {
+      pool.close();
+    }
+  }
+}
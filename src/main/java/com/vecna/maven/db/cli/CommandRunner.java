@@ -0,0 +1,348 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamPumper;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.vecna.maven.db.DbContext;
+import com.vecna.maven.db.DumpOptions;
+import com.vecna.maven.db.io.DumpSink;
+import com.vecna.maven.db.io.Throttle;
+import com.vecna.maven.db.metrics.Timing;
+
+/**
+ * Runs the database command line tools (pg_dump, mysqldump, etc).
+ *
+ * @author ogolberg@vecna.com
+ */
+public final class CommandRunner {
+  private static final String NICE = "nice";
+  private static final String IONICE = "ionice";
+  private static final String IONICE_IDLE = "idle";
+
+  /**
+   * Kills the tools that run longer than the tool timeout.
+   */
+  private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("db-tool-watchdog").setDaemon(true).build());
+
+  /**
+   * A part of a dump that is assembled from several sources, e.g. several runs of the dump tool.
+   */
+  public interface DumpPart {
+    /**
+     * Write the part.
+     * @param out stream to write the part to
+     * @throws MojoExecutionException if the part cannot be produced
+     * @throws IOException if the part cannot be written
+     */
+    void write(OutputStream out) throws MojoExecutionException, IOException;
+  }
+
+  private CommandRunner() {
+  }
+
+  /**
+   * Set the dump tool a command line runs, lowering its CPU and I/O priority with nice and ionice if the dump options
+   * say so. The tool's arguments must be added afterwards.
+   * @param cmdLine command line
+   * @param command name of the dump tool
+   * @param options dump options
+   */
+  public static void setDumpExecutable(Commandline cmdLine, String command, DumpOptions options) {
+    List<String> args = Lists.newArrayList();
+    if (options.getIonice() != null) {
+      args.add(IONICE);
+      if (IONICE_IDLE.equals(options.getIonice())) {
+        args.add("-c3");
+      } else {
+        args.add("-c2");
+        args.add("-n" + options.getIonice());
+      }
+    }
+    if (options.getNice() != null) {
+      args.add(NICE);
+      args.add("-n");
+      args.add(String.valueOf(options.getNice()));
+    }
+    args.add(command);
+
+    cmdLine.setExecutable(args.get(0));
+    cmdLine.addArguments(args.subList(1, args.size()).toArray(new String[0]));
+  }
+
+  /**
+   * Run a command line tool, streaming its output to the log.
+   * @param context execution context
+   * @param cmdLine command line to run
+   * @param command name of the tool, for logging and error reporting
+   * @param stdin stream to feed to the tool's standard input, or null
+   * @throws MojoExecutionException if the tool cannot be started or fails
+   */
+  public static void run(DbContext context, Commandline cmdLine, String command, final InputStream stdin)
+      throws MojoExecutionException {
+    LoggingStreamConsumer stdout = new LoggingStreamConsumer(context.getLog(), command);
+    LoggingStreamConsumer stderr = new LoggingStreamConsumer(context.getLog(), command);
+
+    final Process process = spawn(context, cmdLine, command);
+    AtomicBoolean killed = new AtomicBoolean();
+    ScheduledFuture<?> watchdog = killOnTimeout(context, process, killed);
+    StreamPumper outputPumper = new StreamPumper(process.getInputStream(), stdout);
+    StreamPumper errorPumper = new StreamPumper(process.getErrorStream(), stderr);
+    outputPumper.start();
+    errorPumper.start();
+
+    final IOException[] inputFailure = new IOException[1];
+    Thread feeder = new Thread(command + "-stdin") {
+      @Override
+      public void run() {
+        try (OutputStream in = process.getOutputStream()) {
+          if (stdin != null) {
+            ByteStreams.copy(stdin, in);
+          }
+        } catch (IOException ioException) {
+          // the tool may exit before consuming all of its input; its exit code tells whether that's a problem
+          inputFailure[0] = ioException;
+        }
+      }
+    };
+    feeder.setDaemon(true);
+    feeder.start();
+
+    int result;
+    try (Timing timing = context.getMetrics().start("process-run")) {
+      result = process.waitFor();
+      feeder.join();
+      outputPumper.join();
+      errorPumper.join();
+    } catch (InterruptedException interruptedException) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("interrupted while running " + command, interruptedException);
+    } finally {
+      cancel(watchdog);
+    }
+
+    checkTimeout(context, command, killed);
+    if (result != 0) {
+      throw new MojoExecutionException(command + " returned " + result
+                                       + "\n<stdout>:\n" + stdout.getTail()
+                                       + "\n<stderr>:\n" + stderr.getTail());
+    } else if (inputFailure[0] != null) {
+      throw new MojoExecutionException("couldn't feed the input of " + command, inputFailure[0]);
+    }
+  }
+
+  /**
+   * Run a dump tool that writes the dump to its standard output, streaming the dump into a file through the
+   * compressor and checksum configured in the dump options.
+   * @param context execution context
+   * @param cmdLine command line to run
+   * @param command name of the tool, for logging and error reporting
+   * @param out output file
+   * @param options dump options
+   * @param throttle throttle to write the dump through
+   * @throws MojoExecutionException if the tool cannot be started or fails, or the output cannot be written
+   */
+  public static void dump(DbContext context, Commandline cmdLine, String command, File out, DumpOptions options,
+                          Throttle throttle) throws MojoExecutionException {
+    dump(out, Collections.singletonList(toolOutput(context, cmdLine, command)), options, throttle);
+  }
+
+  /**
+   * Stream the parts of a dump, one after the other, into a file through the compressor and checksum configured in
+   * the dump options.
+   * @param out output file
+   * @param parts parts of the dump
+   * @param options dump options
+   * @param throttle throttle to write the dump through
+   * @throws MojoExecutionException if a part cannot be produced, or the output cannot be written
+   */
+  public static void dump(File out, List<DumpPart> parts, DumpOptions options, Throttle throttle)
+      throws MojoExecutionException {
+    try (DumpSink sink = new DumpSink(out, options.getCompressor(), options.getCompression(), options.isChecksum())) {
+      OutputStream stream = throttle.wrap(sink.getStream());
+      for (DumpPart part : parts) {
+        part.write(stream);
+      }
+      sink.finish();
+    } catch (IOException ioException) {
+      throw new MojoExecutionException("couldn't write " + out, ioException);
+    }
+  }
+
+  /**
+   * @param context execution context
+   * @param cmdLine command line of a dump tool that writes the dump to its standard output
+   * @param command name of the tool, for logging and error reporting
+   * @return a dump part that runs the tool and copies its output
+   */
+  public static DumpPart toolOutput(final DbContext context, final Commandline cmdLine, final String command) {
+    return new DumpPart() {
+      @Override
+      public void write(OutputStream out) throws MojoExecutionException {
+        pipe(context, cmdLine, command, out);
+      }
+    };
+  }
+
+  /**
+   * Run a command line tool, copying its (binary) standard output to a stream and its error output to the log. The
+   * output is copied on a separate thread, so that the tool is killed as soon as the calling thread is interrupted.
+   * @param context execution context
+   * @param cmdLine command line to run
+   * @param command name of the tool, for logging and error reporting
+   * @param out stream to copy the tool's standard output to
+   * @throws MojoExecutionException if the tool cannot be started or fails, or the output cannot be written
+   */
+  public static void pipe(DbContext context, Commandline cmdLine, String command, final OutputStream out)
+      throws MojoExecutionException {
+    LoggingStreamConsumer stderr = new LoggingStreamConsumer(context.getLog(), command);
+
+    final Process process = spawn(context, cmdLine, command);
+    AtomicBoolean killed = new AtomicBoolean();
+    ScheduledFuture<?> watchdog = killOnTimeout(context, process, killed);
+    StreamPumper errorPumper = new StreamPumper(process.getErrorStream(), stderr);
+    errorPumper.start();
+
+    final long[] copied = new long[1];
+    final IOException[] outputFailure = new IOException[1];
+    Thread copier = new Thread(command + "-stdout") {
+      @Override
+      public void run() {
+        try {
+          copied[0] = ByteStreams.copy(process.getInputStream(), out);
+        } catch (IOException ioException) {
+          outputFailure[0] = ioException;
+          process.destroy();
+        }
+      }
+    };
+    copier.setDaemon(true);
+
+    int result;
+    try (Timing timing = context.getMetrics().start("process-run")) {
+      process.getOutputStream().close();
+      copier.start();
+      result = process.waitFor();
+      copier.join();
+      errorPumper.join();
+    } catch (IOException ioException) {
+      process.destroy();
+      throw new MojoExecutionException("couldn't close the input of " + command, ioException);
+    } catch (InterruptedException interruptedException) {
+      process.destroy();
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("interrupted while running " + command, interruptedException);
+    } finally {
+      cancel(watchdog);
+    }
+
+    checkTimeout(context, command, killed);
+    if (outputFailure[0] != null) {
+      throw new MojoExecutionException("couldn't write the output of " + command, outputFailure[0]);
+    }
+    context.getMetrics().add("tool-output-bytes", copied[0]);
+    if (result != 0) {
+      throw new MojoExecutionException(command + " returned " + result + "\n<stderr>:\n" + stderr.getTail());
+    }
+  }
+
+  /**
+   * Kill a process once it runs longer than the tool timeout of the context. Only the process itself is killed, which
+   * is the tool even when it runs through nice and ionice (they replace themselves with the tool); the parallel
+   * workers of pg_dump and pg_restore exit when they lose their leader.
+   * @param context execution context
+   * @param process the process
+   * @param killed set once the process has been killed
+   * @return the scheduled kill, to be cancelled when the process is done, or null if there is no tool timeout
+   */
+  private static ScheduledFuture<?> killOnTimeout(DbContext context, final Process process,
+                                                  final AtomicBoolean killed) {
+    long timeout = context.getTimeouts().getToolMillis();
+    if (timeout <= 0) {
+      return null;
+    }
+    return WATCHDOG.schedule(new Runnable() {
+      @Override
+      public void run() {
+        killed.set(true);
+        process.destroy();
+      }
+    }, timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param watchdog a scheduled kill, or null
+   */
+  private static void cancel(ScheduledFuture<?> watchdog) {
+    if (watchdog != null) {
+      watchdog.cancel(false);
+    }
+  }
+
+  /**
+   * @param context execution context
+   * @param command name of the tool, for error reporting
+   * @param killed whether the tool was killed for running too long
+   * @throws MojoExecutionException if it was
+   */
+  private static void checkTimeout(DbContext context, String command, AtomicBoolean killed)
+      throws MojoExecutionException {
+    if (killed.get()) {
+      throw new MojoExecutionException(command + " did not finish within " + context.getTimeouts().getToolMillis()
+                                       + " ms and was killed");
+    }
+  }
+
+  /**
+   * Start a command line tool, recording the time it took. The tool is started directly rather than through a shell
+   * (as {@link Commandline#execute()} does), so that killing the process kills the tool rather than just the shell.
+   * @param context execution context
+   * @param cmdLine command line to run
+   * @param command name of the tool, for error reporting
+   * @return the started process
+   * @throws MojoExecutionException if the tool cannot be started
+   */
+  private static Process spawn(DbContext context, Commandline cmdLine, String command) throws MojoExecutionException {
+    try (Timing timing = context.getMetrics().start("process-spawn")) {
+      return Runtime.getRuntime().exec(cmdLine.getCommandline(), cmdLine.getEnvironmentVariables(),
+                                       cmdLine.getWorkingDirectory());
+    } catch (CommandLineException | IOException exception) {
+      throw new MojoExecutionException("couldn't execute " + command, exception);
+    }
+  }
+}
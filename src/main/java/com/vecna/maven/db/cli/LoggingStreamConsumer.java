@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.cli;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import com.google.common.base.Joiner;
+
+/**
+ * Forwards the output of a command line tool to the Maven log as it is produced, remembering only the last few
+ * lines for error reporting.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class LoggingStreamConsumer implements StreamConsumer {
+  /**
+   * Number of lines to remember.
+   */
+  private static final int TAIL_LINES = 50;
+
+  /**
+   * Lines longer than this are truncated before they are remembered.
+   */
+  private static final int MAX_LINE_LENGTH = 1000;
+
+  private final Log log;
+  private final String prefix;
+  private final Deque<String> tail = new ArrayDeque<String>(TAIL_LINES);
+
+  /**
+   * Create a new {@link LoggingStreamConsumer}
+   * @param log log to forward the output to
+   * @param command name of the tool, used to prefix the logged lines
+   */
+  public LoggingStreamConsumer(Log log, String command) {
+    this.log = log;
+    this.prefix = "[" + command + "] ";
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void consumeLine(String line) {
+    log.info(prefix + line);
+
+    String truncated = line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) + "..." : line;
+    synchronized (tail) {
+      if (tail.size() == TAIL_LINES) {
+        tail.removeFirst();
+      }
+      tail.addLast(truncated);
+    }
+  }
+
+  /**
+   * @return the last lines of the output
+   */
+  public String getTail() {
+    synchronized (tail) {
+      return Joiner.on('\n').join(tail);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+
+import com.google.common.io.Closeables;
+
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+/**
+ * Reads dump files that may have been compressed by a {@link DumpSink}.
+ *
+ * @author ogolberg@vecna.com
+ */
+public final class DumpInput {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private DumpInput() {
+  }
+
+  /**
+   * @param file dump file
+   * @return whether the file is compressed
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isCompressed(File file) throws IOException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      return detect(in) != null;
+    }
+  }
+
+  /**
+   * Open a dump file, decompressing it if necessary.
+   * @param file dump file
+   * @return stream of the uncompressed dump
+   * @throws IOException if the file cannot be read or is compressed in a format that can't be decompressed
+   */
+  public static InputStream open(File file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+    try {
+      String compressor = detect(in);
+      if (compressor == null) {
+        return in;
+      } else if (CompressorStreamFactory.LZ4_FRAMED.equals(compressor)) {
+        return new LZ4FrameInputStream(in);
+      } else {
+        return new CompressorStreamFactory().createCompressorInputStream(compressor, in);
+      }
+    } catch (CompressorException compressorException) {
+      Closeables.closeQuietly(in);
+      throw new IOException("cannot decompress " + file, compressorException);
+    }
+  }
+
+  /**
+   * @param in stream positioned at the start of the file; must support marks
+   * @return name of the compressor (see {@link CompressorStreamFactory}), or null if the stream isn't compressed
+   */
+  private static String detect(InputStream in) {
+    try {
+      return CompressorStreamFactory.detect(in);
+    } catch (CompressorException compressorException) {
+      return null;
+    }
+  }
+}
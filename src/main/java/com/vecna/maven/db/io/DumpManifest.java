@@ -0,0 +1,129 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.vecna.maven.db.DumpOptions;
+
+/**
+ * Describes the database state a dump was taken from, so that the dump can be reused as long as the database
+ * doesn't change. Stored next to the dump, in <code>&lt;dump&gt;.manifest</code>.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class DumpManifest {
+  private static final String SUFFIX = ".manifest";
+  private static final String FINGERPRINT = "fingerprint";
+  private static final String OPTIONS = "options";
+  private static final String SIZE = "size";
+
+  private final String fingerprint;
+  private final String options;
+  private final long size;
+
+  /**
+   * Create a new {@link DumpManifest}
+   * @param fingerprint fingerprint of the database the dump was taken from
+   * @param options options the dump was taken with
+   * @param size size of the dump, in bytes
+   */
+  public DumpManifest(String fingerprint, String options, long size) {
+    this.fingerprint = fingerprint;
+    this.options = options;
+    this.size = size;
+  }
+
+  /**
+   * @param dump dump file or directory
+   * @return size of the dump, in bytes
+   */
+  public static long sizeOf(File dump) {
+    return dump.isDirectory() ? FileUtils.sizeOfDirectory(dump) : dump.length();
+  }
+
+  /**
+   * @param dump dump file or directory
+   * @return the manifest file of the dump
+   */
+  public static File getFile(File dump) {
+    return new File(dump.getPath() + SUFFIX);
+  }
+
+  /**
+   * Read the manifest of a dump.
+   * @param dump dump file or directory
+   * @return the manifest, or null if the dump doesn't have one
+   * @throws IOException if the manifest cannot be read
+   */
+  public static DumpManifest read(File dump) throws IOException {
+    File file = getFile(dump);
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    }
+    try {
+      return new DumpManifest(properties.getProperty(FINGERPRINT), properties.getProperty(OPTIONS),
+                              Long.parseLong(properties.getProperty(SIZE)));
+    } catch (NumberFormatException numberFormatException) {
+      return null;
+    }
+  }
+
+  /**
+   * Write the manifest next to a dump.
+   * @param dump dump file or directory
+   * @throws IOException if the manifest cannot be written
+   */
+  public void write(File dump) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(FINGERPRINT, fingerprint);
+    properties.setProperty(OPTIONS, options);
+    properties.setProperty(SIZE, String.valueOf(size));
+    try (OutputStream out = new FileOutputStream(getFile(dump))) {
+      properties.store(out, null);
+    }
+  }
+
+  /**
+   * @param dump dump file or directory
+   * @param dbFingerprint current fingerprint of the database
+   * @param dumpOptions options the dump would be taken with
+   * @return whether the dump is still intact and up to date
+   */
+  public boolean matches(File dump, String dbFingerprint, DumpOptions dumpOptions) {
+    if (!dump.exists() || sizeOf(dump) != size) {
+      return false;
+    }
+    if (dumpOptions.isChecksum() && dump.isFile() && !new File(dump.getPath() + DumpSink.CHECKSUM_SUFFIX).isFile()) {
+      return false;
+    }
+    return dbFingerprint.equals(fingerprint) && dumpOptions.toString().equals(options);
+  }
+}
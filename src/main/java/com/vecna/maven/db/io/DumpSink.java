@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.vecna.maven.db.Compressor;
+
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+/**
+ * Destination of a dump that is streamed through the plugin. The dump is compressed and checksummed in the same
+ * pass that writes it to disk, so the uncompressed dump never touches the disk.
+ *
+ * <p>The checksum covers the bytes written to the file (i.e. the compressed dump) and is written to a sidecar file
+ * in the format of sha256sum, so that the dump can be verified with <code>sha256sum -c</code>.</p>
+ *
+ * @author ogolberg@vecna.com
+ */
+public class DumpSink implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final String CHECKSUM_ALGORITHM = "SHA-256";
+  /**
+   * Suffix of the checksum sidecar file.
+   */
+  public static final String CHECKSUM_SUFFIX = ".sha256";
+
+  private final File file;
+  private final MessageDigest digest;
+  private final OutputStream stream;
+  private boolean finished;
+
+  /**
+   * Open a new {@link DumpSink}
+   * @param file output file
+   * @param compressor compressor to stream the dump through
+   * @param level compression level, or null for the compressor's default
+   * @param checksum whether to write a SHA-256 checksum of the output file next to it
+   * @throws IOException if the output file cannot be opened
+   */
+  public DumpSink(File file, Compressor compressor, Integer level, boolean checksum) throws IOException {
+    this.file = file;
+
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+    try {
+      if (checksum) {
+        digest = newDigest();
+        out = new DigestOutputStream(out, digest);
+      } else {
+        digest = null;
+      }
+      stream = new BufferedOutputStream(compress(out, compressor, level), BUFFER_SIZE);
+    } catch (IOException | RuntimeException exception) {
+      Closeables.closeQuietly(out);
+      throw exception;
+    }
+  }
+
+  /**
+   * @return a new SHA-256 digest
+   */
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+    } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+      throw new IllegalStateException("every JVM is required to support " + CHECKSUM_ALGORITHM,
+                                      noSuchAlgorithmException);
+    }
+  }
+
+  /**
+   * Wrap a stream with a compressor.
+   * @param out stream to write the compressed output to
+   * @param compressor compressor
+   * @param level compression level, or null for the compressor's default
+   * @return stream to write uncompressed data to
+   * @throws IOException if the compressor cannot be initialized
+   */
+  private static OutputStream compress(OutputStream out, Compressor compressor, Integer level) throws IOException {
+    switch (compressor) {
+      case GZIP:
+        GzipParameters parameters = new GzipParameters();
+        if (level != null) {
+          parameters.setCompressionLevel(level);
+        }
+        return new GzipCompressorOutputStream(out, parameters);
+      case ZSTD:
+        return level == null ? new ZstdCompressorOutputStream(out) : new ZstdCompressorOutputStream(out, level);
+      case LZ4:
+        return new LZ4FrameOutputStream(out);
+      default:
+        return out;
+    }
+  }
+
+  /**
+   * @return stream to write the (uncompressed) dump to
+   */
+  public OutputStream getStream() {
+    return stream;
+  }
+
+  /**
+   * Flush the compressor, close the output file and write the checksum sidecar.
+   * @throws IOException if the output cannot be completed
+   */
+  public void finish() throws IOException {
+    stream.close();
+    finished = true;
+    if (digest != null) {
+      Files.write(hex(digest.digest()) + "  " + file.getName() + "\n", new File(file.getPath() + CHECKSUM_SUFFIX),
+                  Charsets.US_ASCII);
+    }
+  }
+
+  /**
+   * @param bytes bytes to format
+   * @return lower case hex representation of the bytes
+   */
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Close the output. If the dump hasn't been {@link #finish() finished}, the partial output file is deleted.
+   */
+  @Override
+  public void close() {
+    if (!finished) {
+      Closeables.closeQuietly(stream);
+      file.delete();
+    }
+  }
+}
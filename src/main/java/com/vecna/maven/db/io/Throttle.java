@@ -0,0 +1,133 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Slows down a dump to limit its impact on the database server: caps the rate at which the dump is written and
+ * pauses it while the server, a replica, lags too far behind its primary. Since the dump tool blocks when its output
+ * isn't consumed, slowing down the writes also slows down the reads from the server. A throttle can be shared by
+ * several streams (e.g. the tables of a jdbc export), which then share the rate.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class Throttle {
+  /**
+   * How often the replication lag is checked.
+   */
+  private static final long LAG_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+  private final Log log;
+  private final RateLimiter rateLimiter;
+  private final Callable<Double> lagProbe;
+  private final double maxLagSeconds;
+  private long nextLagCheck;
+
+  /**
+   * Create a new {@link Throttle}
+   * @param log log to report pauses to
+   * @param bytesPerSecond maximum rate, or null for no limit
+   * @param lagProbe returns the current replication lag of the server in seconds, or null if it isn't a replica
+   * @param maxLagSeconds replication lag above which the dump pauses, or null to never pause
+   */
+  public Throttle(Log log, Long bytesPerSecond, Callable<Double> lagProbe, Integer maxLagSeconds) {
+    this.log = log;
+    this.rateLimiter = bytesPerSecond == null ? null : RateLimiter.create(bytesPerSecond);
+    this.lagProbe = maxLagSeconds == null ? null : lagProbe;
+    this.maxLagSeconds = maxLagSeconds == null ? 0 : maxLagSeconds;
+  }
+
+  /**
+   * Wait until some bytes may be written.
+   * @param bytes number of bytes about to be written
+   * @throws IOException if the replication lag cannot be checked or the thread is interrupted
+   */
+  public void acquire(int bytes) throws IOException {
+    if (rateLimiter != null && bytes > 0) {
+      rateLimiter.acquire(bytes);
+    }
+    if (lagProbe != null) {
+      awaitReplica();
+    }
+  }
+
+  /**
+   * Check the replication lag every so often and wait while it's too high.
+   * @throws IOException if the replication lag cannot be checked or the thread is interrupted
+   */
+  private synchronized void awaitReplica() throws IOException {
+    if (System.currentTimeMillis() < nextLagCheck) {
+      return;
+    }
+    boolean paused = false;
+    try {
+      Double lag;
+      while ((lag = lagProbe.call()) != null && lag > maxLagSeconds) {
+        if (!paused) {
+          log.info("the replication lag is " + lag + "s, pausing the dump until it drops to " + maxLagSeconds + "s");
+          paused = true;
+        }
+        Thread.sleep(LAG_CHECK_INTERVAL_MILLIS);
+      }
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while waiting for the replica to catch up");
+    } catch (IOException ioException) {
+      throw ioException;
+    } catch (Exception exception) {
+      throw new IOException("cannot check the replication lag", exception);
+    }
+    if (paused) {
+      log.info("the replica caught up, resuming the dump");
+    }
+    nextLagCheck = System.currentTimeMillis() + LAG_CHECK_INTERVAL_MILLIS;
+  }
+
+  /**
+   * @param out stream to throttle
+   * @return a stream that writes to out no faster than the throttle allows; closing it closes out
+   */
+  public OutputStream wrap(OutputStream out) {
+    if (rateLimiter == null && lagProbe == null) {
+      return out;
+    }
+    return new FilterOutputStream(out) {
+      @Override
+      public void write(int b) throws IOException {
+        acquire(1);
+        out.write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        acquire(len);
+        out.write(b, off, len);
+      }
+    };
+  }
+}
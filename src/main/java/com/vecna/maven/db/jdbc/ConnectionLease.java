@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.sql.Connection;
+
+/**
+ * A connection borrowed from a {@link ConnectionPool}. Closing the lease returns the connection to the pool.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class ConnectionLease implements AutoCloseable {
+  private final ConnectionPool pool;
+  private final String key;
+  private final Connection connection;
+  private boolean released;
+
+  /**
+   * Create a new {@link ConnectionLease}
+   * @param pool pool the connection belongs to
+   * @param key url/user key of the connection
+   * @param connection the connection
+   */
+  ConnectionLease(ConnectionPool pool, String key, Connection connection) {
+    this.pool = pool;
+    this.key = key;
+    this.connection = connection;
+  }
+
+  /**
+   * @return the borrowed connection; must not be closed or used after the lease is closed
+   */
+  public Connection getConnection() {
+    return connection;
+  }
+
+  /**
+   * Return the connection to the pool.
+   */
+  @Override
+  public void close() {
+    if (!released) {
+      released = true;
+      pool.release(key, connection);
+    }
+  }
+
+  /**
+   * Close the connection instead of returning it to the pool, e.g. when its session state cannot be restored.
+   */
+  public void discard() {
+    if (!released) {
+      released = true;
+      ConnectionPool.closeQuietly(connection);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * A small pool of connections, keyed by JDBC url, user and connection properties (e.g. timeouts). Used to run many
+ * operations against the same server (e.g. creating a batch of databases) over a handful of connections instead of
+ * connecting for each one.
+ *
+ * <p>The pool never blocks: a new connection is opened whenever all the pooled ones are in use, so the number of
+ * open connections is bounded by the number of threads using the pool. At most <code>maxIdle</code> connections
+ * per url/user are kept open once they are returned. A closed pool keeps handing out connections, which are closed
+ * when they are returned, so that closing the pool never breaks its users. The pool is thread-safe.</p>
+ *
+ * @author ogolberg@vecna.com
+ */
+public class ConnectionPool implements Closeable {
+  /**
+   * How long to wait for a connection to respond when checking whether an idle connection is still usable.
+   */
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private final int maxIdle;
+  private final Map<String, Deque<Connection>> idle = Maps.newHashMap();
+  private boolean closed;
+
+  /**
+   * Create a new {@link ConnectionPool}
+   * @param maxIdle maximum number of idle connections to keep per url/user
+   */
+  public ConnectionPool(int maxIdle) {
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Borrow a connection.
+   * @param url jdbc url
+   * @param username jdbc username
+   * @param password jdbc password
+   * @return a lease on the connection; closing the lease returns the connection to the pool
+   * @throws SQLException if a new connection cannot be established
+   */
+  public ConnectionLease acquire(String url, String username, String password) throws SQLException {
+    return acquire(url, Timeouts.NONE.getConnectionProperties(url, username, password));
+  }
+
+  /**
+   * Borrow a connection that was opened with the given properties.
+   * @param url jdbc url
+   * @param properties connection properties, including the user and password
+   * @return a lease on the connection; closing the lease returns the connection to the pool
+   * @throws SQLException if a new connection cannot be established
+   */
+  public ConnectionLease acquire(String url, Properties properties) throws SQLException {
+    Map<Object, Object> settings = new TreeMap<Object, Object>(properties);
+    settings.remove("password");
+    String key = url + settings;
+    Connection conn;
+    while ((conn = poll(key)) != null) {
+      if (conn.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+        return new ConnectionLease(this, key, conn);
+      }
+      closeQuietly(conn);
+    }
+    return new ConnectionLease(this, key, DriverManager.getConnection(url, properties));
+  }
+
+  /**
+   * @param key url/user key
+   * @return an idle connection, or null if there are none or the pool has been closed
+   */
+  private synchronized Connection poll(String key) {
+    if (closed) {
+      return null;
+    }
+    Deque<Connection> connections = idle.get(key);
+    return connections == null ? null : connections.pollFirst();
+  }
+
+  /**
+   * Return a connection to the pool.
+   * @param key url/user key of the connection
+   * @param conn connection
+   */
+  void release(String key, Connection conn) {
+    synchronized (this) {
+      Deque<Connection> connections = idle.get(key);
+      if (connections == null) {
+        connections = Lists.newLinkedList();
+        idle.put(key, connections);
+      }
+      if (!closed && connections.size() < maxIdle) {
+        connections.addFirst(conn);
+        return;
+      }
+    }
+    closeQuietly(conn);
+  }
+
+  /**
+   * Close all idle connections. Connections that are currently leased are closed when they are returned.
+   */
+  @Override
+  public void close() {
+    List<Connection> connections = Lists.newArrayList();
+    synchronized (this) {
+      closed = true;
+      for (Deque<Connection> keyConnections : idle.values()) {
+        connections.addAll(keyConnections);
+      }
+      idle.clear();
+    }
+    for (Connection conn : connections) {
+      closeQuietly(conn);
+    }
+  }
+
+  /**
+   * @param conn connection to close, ignoring errors
+   */
+  static void closeQuietly(Connection conn) {
+    try {
+      conn.close();
+    } catch (SQLException sqlException) {
+      // the connection is being discarded anyway
+    }
+  }
+}
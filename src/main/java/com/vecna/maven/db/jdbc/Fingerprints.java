@@ -0,0 +1,170 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Helpers for fingerprinting databases by hashing the results of catalog queries.
+ *
+ * @author ogolberg@vecna.com
+ */
+public final class Fingerprints {
+  private Fingerprints() {
+  }
+
+  /**
+   * Hash the results of a query. The query must order its results, so that the hash is deterministic.
+   * @param hasher hasher to feed the results to
+   * @param conn connection to run the query on
+   * @param sql query
+   * @param params string parameters of the query
+   * @throws SQLException if the query fails
+   */
+  public static void update(Hasher hasher, Connection conn, String sql, String... params) throws SQLException {
+    try (PreparedStatement statement = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.length; i++) {
+        statement.setString(i + 1, params[i]);
+      }
+      // separate the queries, the rows and the values, so that moving a value across a boundary changes the hash
+      hasher.putString(sql, Charsets.UTF_8).putByte((byte) 0);
+      try (ResultSet rs = statement.executeQuery()) {
+        int columns = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+          for (int i = 1; i <= columns; i++) {
+            putValue(hasher, rs.getString(i));
+          }
+          hasher.putByte((byte) 3);
+        }
+      }
+    }
+  }
+
+  /**
+   * Fingerprint tables individually. The first two columns of the query identify a table (schema and name), the
+   * rest are hashed into the table's fingerprint.
+   * @param conn connection to run the query on
+   * @param sql query returning one row per table
+   * @param params string parameters of the query
+   * @return fingerprints of the tables
+   * @throws SQLException if the query fails
+   */
+  public static Map<Table, String> perTable(Connection conn, String sql, String... params) throws SQLException {
+    Map<Table, String> fingerprints = Maps.newHashMap();
+    try (PreparedStatement statement = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.length; i++) {
+        statement.setString(i + 1, params[i]);
+      }
+      try (ResultSet rs = statement.executeQuery()) {
+        int columns = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+          Hasher hasher = Hashing.sha256().newHasher();
+          for (int i = 3; i <= columns; i++) {
+            putValue(hasher, rs.getString(i));
+          }
+          fingerprints.put(new Table(rs.getString(1), rs.getString(2)), hasher.hash().toString());
+        }
+      }
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Hash the results of catalog queries regardless of the order of their rows, so that the queries don't need to
+   * order them and objects created in a different order (e.g. by different migration paths) hash the same. Every row
+   * is hashed on its own, along with the index of its query, and the sorted row hashes are hashed together.
+   * @param conn connection to run the queries on
+   * @param queries queries
+   * @param params string parameters of every query
+   * @return the hash
+   * @throws SQLException if a query fails
+   */
+  public static String unordered(Connection conn, List<String> queries, String... params) throws SQLException {
+    List<String> rows = Lists.newArrayList();
+    for (int query = 0; query < queries.size(); query++) {
+      try (PreparedStatement statement = conn.prepareStatement(queries.get(query))) {
+        for (int i = 0; i < params.length; i++) {
+          statement.setString(i + 1, params[i]);
+        }
+        try (ResultSet rs = statement.executeQuery()) {
+          int columns = rs.getMetaData().getColumnCount();
+          while (rs.next()) {
+            List<String> values = Lists.newArrayListWithCapacity(columns);
+            for (int i = 1; i <= columns; i++) {
+              values.add(rs.getString(i));
+            }
+            rows.add(hashRow(query, values));
+          }
+        }
+      }
+    }
+    return combine(rows);
+  }
+
+  /**
+   * @param query index of the query the row was returned by
+   * @param values values of the row
+   * @return hash of the row
+   */
+  static String hashRow(int query, List<String> values) {
+    Hasher hasher = Hashing.sha256().newHasher().putInt(query);
+    for (String value : values) {
+      putValue(hasher, value);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @param rows hashes of rows, in any order
+   * @return hash of the rows
+   */
+  static String combine(Collection<String> rows) {
+    List<String> sorted = Lists.newArrayList(rows);
+    Collections.sort(sorted);
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String row : sorted) {
+      hasher.putString(row, Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @param hasher hasher
+   * @param value value to hash, may be null
+   */
+  private static void putValue(Hasher hasher, String value) {
+    if (value == null) {
+      hasher.putByte((byte) 1);
+    } else {
+      hasher.putByte((byte) 2).putInt(value.length()).putString(value, Charsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db.jdbc;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.maven.plugin.logging.Log;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Decides which failed JDBC operations are retried, how often and after how long. Failures are classified by their
+ * SQL state (and MySQL error code): connection failures may go away once the server is up or has connections to
+ * spare, conflicts with other transactions once the other transactions are done, and anything else is permanent and
+ * never retried. The delay before a retry starts at the initial delay and doubles with every retry, up to the maximum
+ * delay, with random jitter so that concurrent operations don't retry in lockstep. No retry starts once the timeout
+ * has passed since the first attempt.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class RetryPolicy {
+  /**
+   * Classes of failures, which are retried independently.
+   */
+  public enum ErrorClass {
+    /**
+     * The server is down, starting up, shutting down or out of connections.
+     */
+    CONNECTION,
+
+    /**
+     * The statement was rolled back because of another transaction (deadlock, serialization failure, lock timeout).
+     */
+    CONFLICT,
+
+    /**
+     * Anything else, e.g. bad credentials or an invalid statement.
+     */
+    PERMANENT
+  }
+
+  /**
+   * Doesn't retry anything.
+   */
+  public static final RetryPolicy NONE = new RetryPolicy(1, 1, 0, 0, 0);
+
+  /**
+   * PostgreSQL states that aren't in the connection exception class (08) but mean the same: the server is starting
+   * up, shutting down, has crashed or is out of connections.
+   */
+  private static final Set<String> CONNECTION_STATES = ImmutableSet.of("57P01", "57P02", "57P03", "53300");
+
+  /**
+   * MySQL errors that mean the server is out of connections or shutting down.
+   */
+  private static final Set<Integer> CONNECTION_ERRORS = ImmutableSet.of(1040, 1053);
+
+  /**
+   * PostgreSQL lock_not_available, for statements that don't wait for locks, and object_in_use, e.g. for CREATE
+   * DATABASE while someone is connected to its template.
+   */
+  private static final Set<String> CONFLICT_STATES = ImmutableSet.of("55P03", "55006");
+
+  /**
+   * MySQL lock wait timeout and deadlock.
+   */
+  private static final Set<Integer> CONFLICT_ERRORS = ImmutableSet.of(1205, 1213);
+
+  /**
+   * Shortest and longest delay between two attempts to connect while waiting for a server.
+   */
+  private static final long PROBE_MIN_DELAY_MILLIS = 100;
+  private static final long PROBE_MAX_DELAY_MILLIS = 1000;
+
+  private final int connectionAttempts;
+  private final int conflictAttempts;
+  private final long initialDelayMillis;
+  private final long maxDelayMillis;
+  private final long timeoutMillis;
+  private final Random random = new Random();
+
+  /**
+   * An operation that may be retried.
+   * @param <T> type of the result
+   */
+  public interface Action<T> {
+    /**
+     * Run the operation.
+     * @return result
+     * @throws SQLException if the operation fails
+     */
+    T run() throws SQLException;
+  }
+
+  /**
+   * Create a new {@link RetryPolicy}
+   * @param connectionAttempts maximum number of attempts when connections fail
+   * @param conflictAttempts maximum number of attempts when statements conflict with other transactions
+   * @param initialDelayMillis delay before the first retry
+   * @param maxDelayMillis maximum delay between two attempts
+   * @param timeoutMillis time after the first attempt after which no retry is started; 0 for no limit
+   */
+  public RetryPolicy(int connectionAttempts, int conflictAttempts, long initialDelayMillis, long maxDelayMillis,
+                     long timeoutMillis) {
+    this.connectionAttempts = Math.max(1, connectionAttempts);
+    this.conflictAttempts = Math.max(1, conflictAttempts);
+    this.initialDelayMillis = initialDelayMillis;
+    this.maxDelayMillis = Math.max(initialDelayMillis, maxDelayMillis);
+    this.timeoutMillis = timeoutMillis > 0 ? timeoutMillis : Long.MAX_VALUE;
+  }
+
+  /**
+   * @param sqlException a failure
+   * @return class of the failure
+   */
+  public static ErrorClass classify(SQLException sqlException) {
+    String state = Strings.nullToEmpty(sqlException.getSQLState());
+    int error = sqlException.getErrorCode();
+    if (state.startsWith("08") || CONNECTION_STATES.contains(state) || CONNECTION_ERRORS.contains(error)
+        || sqlException instanceof SQLTransientConnectionException) {
+      return ErrorClass.CONNECTION;
+    }
+    if (state.startsWith("40") || CONFLICT_STATES.contains(state) || CONFLICT_ERRORS.contains(error)
+        || sqlException instanceof SQLTransactionRollbackException) {
+      return ErrorClass.CONFLICT;
+    }
+    return ErrorClass.PERMANENT;
+  }
+
+  /**
+   * @param errorClass class of failures
+   * @return maximum number of attempts for failures of the class
+   */
+  public int getAttempts(ErrorClass errorClass) {
+    switch (errorClass) {
+      case CONNECTION:
+        return connectionAttempts;
+      case CONFLICT:
+        return conflictAttempts;
+      default:
+        return 1;
+    }
+  }
+
+  /**
+   * Run an operation, retrying it when it fails with a failure of the given class.
+   * @param log log to report the retries to
+   * @param description description of the operation, for reporting
+   * @param retried class of the failures to retry
+   * @param action the operation
+   * @param <T> type of the result
+   * @return result of the operation
+   * @throws SQLException the last failure, if the operation doesn't succeed
+   */
+  public <T> T call(Log log, String description, ErrorClass retried, Action<T> action) throws SQLException {
+    long start = System.currentTimeMillis();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return action.run();
+      } catch (SQLException sqlException) {
+        if (attempt >= getAttempts(retried) || classify(sqlException) != retried) {
+          throw sqlException;
+        }
+        long delay = getDelay(attempt, initialDelayMillis, maxDelayMillis);
+        if (System.currentTimeMillis() + delay - start > timeoutMillis) {
+          throw sqlException;
+        }
+        log.info(description + " failed (" + sqlException.getMessage() + "), retrying in " + delay + " ms");
+        sleep(delay, sqlException);
+      }
+    }
+  }
+
+  /**
+   * Wait until a server accepts connections, retrying connection failures (only) at short intervals.
+   * @param log log to report the wait to
+   * @param url jdbc url to connect to
+   * @param properties connection properties, including the user and password
+   * @param waitMillis how long to wait
+   * @throws SQLException the last failure, if the server doesn't accept connections in time, or a failure that
+   *                      waiting won't fix
+   */
+  public void awaitConnection(Log log, String url, Properties properties, long waitMillis) throws SQLException {
+    long start = System.currentTimeMillis();
+    for (int attempt = 1; ; attempt++) {
+      try {
+        DriverManager.getConnection(url, properties).close();
+        if (attempt > 1) {
+          log.info("the server accepts connections after " + (System.currentTimeMillis() - start) + " ms");
+        }
+        return;
+      } catch (SQLException sqlException) {
+        if (classify(sqlException) != ErrorClass.CONNECTION) {
+          throw sqlException;
+        }
+        long delay = getDelay(attempt, PROBE_MIN_DELAY_MILLIS, PROBE_MAX_DELAY_MILLIS);
+        if (System.currentTimeMillis() + delay - start > waitMillis) {
+          throw sqlException;
+        }
+        if (attempt == 1) {
+          log.info("waiting for the server to accept connections (" + sqlException.getMessage() + ")");
+        }
+        sleep(delay, sqlException);
+      }
+    }
+  }
+
+  /**
+   * @param attempt number of the attempt that failed, starting from 1
+   * @param initialDelay delay after the first attempt
+   * @param maxDelay maximum delay
+   * @return delay before the next attempt: half of the exponential delay, plus a random part of up to the other half
+   */
+  long getDelay(int attempt, long initialDelay, long maxDelay) {
+    long delay = Math.max(1, Math.min(initialDelay, maxDelay));
+    for (int i = 1; i < attempt && delay < maxDelay; i++) {
+      delay = Math.min(delay * 2, maxDelay);
+    }
+    synchronized (random) {
+      return delay / 2 + (long) (random.nextDouble() * (delay - delay / 2));
+    }
+  }
+
+  /**
+   * @param millis how long to sleep
+   * @param failure the failure that is being retried, thrown if the sleep is interrupted
+   * @throws SQLException if the sleep is interrupted
+   */
+  private static void sleep(long millis, SQLException failure) throws SQLException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Rule selecting the rows of a table to dump: a row limit ("limit 1000"), a random sample of a percentage of the rows
+ * ("10%") or an SQL condition (e.g. "created &gt; '2017-01-01'").
+ *
+ * @author ogolberg@vecna.com
+ */
+public final class RowFilter {
+  private static final Pattern LIMIT = Pattern.compile("(?i)limit\\s+(\\d+)");
+  private static final Pattern SAMPLE = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*%");
+
+  private final Long limit;
+  private final Double samplePercent;
+  private final String condition;
+
+  /**
+   * @param limit maximum number of rows, or null
+   * @param samplePercent percentage of the rows to sample, or null
+   * @param condition SQL condition the rows must satisfy, or null
+   */
+  private RowFilter(Long limit, Double samplePercent, String condition) {
+    this.limit = limit;
+    this.samplePercent = samplePercent;
+    this.condition = condition;
+  }
+
+  /**
+   * @param rule "limit N", "P%" or an SQL condition
+   * @return the filter
+   * @throws MojoFailureException if the rule is empty or the percentage isn't between 0 and 100
+   */
+  public static RowFilter parse(String rule) throws MojoFailureException {
+    String trimmed = rule == null ? "" : rule.trim();
+    if (trimmed.isEmpty()) {
+      throw new MojoFailureException("empty row filter");
+    }
+    Matcher limit = LIMIT.matcher(trimmed);
+    if (limit.matches()) {
+      return new RowFilter(Long.valueOf(limit.group(1)), null, null);
+    }
+    Matcher sample = SAMPLE.matcher(trimmed);
+    if (sample.matches()) {
+      double percent = Double.parseDouble(sample.group(1));
+      if (percent <= 0 || percent > 100) {
+        throw new MojoFailureException("sample percentage must be above 0 and at most 100, got " + trimmed);
+      }
+      return new RowFilter(null, percent, null);
+    }
+    return new RowFilter(null, null, trimmed);
+  }
+
+  /**
+   * @return maximum number of rows, or null
+   */
+  public Long getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return percentage of the rows to sample, or null
+   */
+  public Double getSamplePercent() {
+    return samplePercent;
+  }
+
+  /**
+   * @return SQL condition the rows must satisfy, or null
+   */
+  public String getCondition() {
+    return condition;
+  }
+
+  /**
+   * @return the rule the filter was parsed from, normalized
+   */
+  @Override
+  public String toString() {
+    if (limit != null) {
+      return "limit " + limit;
+    } else if (samplePercent != null) {
+      return samplePercent + "%";
+    } else {
+      return condition;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import com.google.common.base.Objects;
+
+/**
+ * A table, as listed by {@link java.sql.DatabaseMetaData}.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class Table {
+  private final String schema;
+  private final String name;
+
+  /**
+   * Create a new {@link Table}
+   * @param schema schema (PostgreSQL) or database (MySQL) the table belongs to
+   * @param name name of the table
+   */
+  public Table(String schema, String name) {
+    this.schema = schema;
+    this.name = name;
+  }
+
+  /**
+   * @return schema (PostgreSQL) or database (MySQL) the table belongs to
+   */
+  public String getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return name of the table
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Table)) {
+      return false;
+    }
+    Table other = (Table) obj;
+    return Objects.equal(schema, other.schema) && Objects.equal(name, other.name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(schema, name);
+  }
+
+  /**
+   * @return qualified name of the table (schema.table)
+   */
+  @Override
+  public String toString() {
+    return schema + "." + name;
+  }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.FileUtils;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.vecna.maven.db.DbContext;
+import com.vecna.maven.db.DumpOptions;
+import com.vecna.maven.db.io.DumpSink;
+import com.vecna.maven.db.io.Throttle;
+import com.vecna.maven.db.metrics.Metrics;
+import com.vecna.maven.db.metrics.Timing;
+
+/**
+ * Exports the data of every table of a database over JDBC, without any native tools. Each table is written to its
+ * own file (schema.table.tsv, plus the compressor's extension) in the output directory. Tables are exported
+ * concurrently, each worker using its own connection.
+ *
+ * <p>Only table data is exported; the schema is expected to be created by other means (e.g. migrations). The tables
+ * and rows to export are selected by the {@link TableSubset} of the dump options.</p>
+ *
+ * <p>The tables are listed in a {@link TableManifest}. Incremental exports also record a fingerprint of every table
+ * in the manifest, and only re-export the tables whose fingerprint has changed since the previous export.</p>
+ *
+ * @author ogolberg@vecna.com
+ */
+public abstract class TableExporter {
+  private static final String DATA_SUFFIX = ".tsv";
+
+  /**
+   * Stream the data of a table.
+   * @param conn connection to use
+   * @param table table to export
+   * @param filter filter of the rows to export, or null to export all of them
+   * @param out stream to write the data to
+   * @throws SQLException if the data cannot be read
+   * @throws IOException if the data cannot be written
+   */
+  protected abstract void exportTable(Connection conn, Table table, RowFilter filter, OutputStream out)
+      throws SQLException, IOException;
+
+  /**
+   * Prepare the connections before any data is read, e.g. make them share a snapshot. Does nothing by default.
+   * @param leader the connection that listed the tables
+   * @param workers the other connections
+   * @param options dump options
+   * @throws SQLException if the connections cannot be prepared
+   */
+  protected void prepare(Connection leader, List<Connection> workers, DumpOptions options) throws SQLException {
+  }
+
+  /**
+   * List the tables to export.
+   * @param conn connection to the database
+   * @return tables of the database
+   * @throws SQLException if the tables cannot be listed
+   */
+  protected List<Table> listTables(Connection conn) throws SQLException {
+    DatabaseMetaData metaData = conn.getMetaData();
+    ResultSet rs = metaData.getTables(conn.getCatalog(), null, "%", new String[] {"TABLE"});
+    List<Table> tables = Lists.newArrayList();
+    try {
+      while (rs.next()) {
+        String schema = rs.getString("TABLE_SCHEM");
+        tables.add(new Table(schema == null ? rs.getString("TABLE_CAT") : schema, rs.getString("TABLE_NAME")));
+      }
+    } finally {
+      rs.close();
+    }
+    return tables;
+  }
+
+  /**
+   * @param dir output directory
+   * @param table table
+   * @param options dump options
+   * @return the file the table's data is written to
+   */
+  protected File getDataFile(File dir, Table table, DumpOptions options) {
+    return new File(dir, table + DATA_SUFFIX + options.getCompressor().getExtension());
+  }
+
+  /**
+   * Fingerprint the tables of a database, for incremental exports. A table's fingerprint must change whenever its
+   * columns or data do.
+   * @param conn connection to the database
+   * @return fingerprints of the tables
+   * @throws SQLException if the tables cannot be fingerprinted
+   */
+  protected abstract Map<Table, String> fingerprintTables(Connection conn) throws SQLException;
+
+  /**
+   * @param options dump options
+   * @return describes how the data files are written
+   */
+  private String describeOutput(DumpOptions options) {
+    String output = options.getCompressor() + ":" + options.getCompression() + ":" + options.isChecksum();
+    Map<String, RowFilter> rowFilters = options.getSubset().getRowFilters();
+    return rowFilters.isEmpty() ? output : output + ":" + rowFilters;
+  }
+
+  /**
+   * @param previous manifest of the previous export, or null
+   * @param file data file of a table
+   * @param fingerprint current fingerprint of the table
+   * @param options dump options
+   * @return whether the previous export of the table can be kept
+   */
+  private boolean isUnchanged(TableManifest previous, File file, String fingerprint, DumpOptions options) {
+    TableManifest.Entry entry = previous == null ? null : previous.get(file.getName());
+    if (entry == null || fingerprint.isEmpty() || !fingerprint.equals(entry.getFingerprint()) || !file.isFile()) {
+      return false;
+    }
+    return !options.isChecksum() || new File(file.getPath() + DumpSink.CHECKSUM_SUFFIX).isFile();
+  }
+
+  /**
+   * Delete the data files of tables that were dropped since the previous export.
+   * @param dir export directory
+   * @param previous manifest of the previous export
+   * @param current manifest of the current export
+   */
+  private void removeDropped(File dir, TableManifest previous, TableManifest current) {
+    for (TableManifest.Entry entry : previous.getEntries()) {
+      if (current.get(entry.getFile()) == null) {
+        new File(dir, entry.getFile()).delete();
+        new File(dir, entry.getFile() + DumpSink.CHECKSUM_SUFFIX).delete();
+      }
+    }
+  }
+
+  /**
+   * Export a database.
+   * @param context execution context
+   * @param url jdbc url of the database
+   * @param username jdbc username
+   * @param password jdbc password
+   * @param dir output directory
+   * @param options dump options
+   * @param throttle throttle shared by the data files
+   * @throws MojoExecutionException if the export fails
+   */
+  public void export(DbContext context, String url, String username, String password, final File dir,
+                     final DumpOptions options, final Throttle throttle) throws MojoExecutionException {
+    try {
+      FileUtils.forceMkdir(dir);
+    } catch (IOException ioException) {
+      throw new MojoExecutionException("failed to create " + dir, ioException);
+    }
+
+    long start = System.currentTimeMillis();
+    final Metrics metrics = context.getMetrics();
+    String output = describeOutput(options);
+    TableManifest previous = null;
+    if (options.isIncremental()) {
+      try {
+        previous = TableManifest.read(dir);
+      } catch (IOException ioException) {
+        context.getLog().warn("cannot read the manifest of " + dir + ", exporting all tables", ioException);
+      }
+      if (previous != null && !output.equals(previous.getOutput())) {
+        previous = null;
+      }
+    }
+    // the directory is inconsistent until the export completes
+    TableManifest.getFile(dir).delete();
+
+    List<Connection> connections = Lists.newArrayList();
+    ExecutorService executor = null;
+    try {
+      Connection leader = context.open(url, username, password);
+      connections.add(leader);
+      TableSubset subset = options.getSubset();
+      List<Table> tables = Lists.newArrayList();
+      for (Table table : listTables(leader)) {
+        // only data is exported, so tables that are dumped without their data are skipped altogether
+        if (subset.includes(table) && !subset.isSchemaOnly(table)) {
+          tables.add(table);
+        }
+      }
+      Map<Table, String> fingerprints;
+      if (options.isIncremental()) {
+        try (Timing timing = metrics.start("fingerprint")) {
+          fingerprints = fingerprintTables(leader);
+        }
+      } else {
+        fingerprints = Collections.emptyMap();
+      }
+
+      TableManifest manifest = new TableManifest(output);
+      List<Table> changed = Lists.newArrayList();
+      for (Table table : tables) {
+        File file = getDataFile(dir, table, options);
+        String fingerprint = Strings.nullToEmpty(fingerprints.get(table));
+        manifest.add(new TableManifest.Entry(table, file.getName(), fingerprint));
+        if (!isUnchanged(previous, file, fingerprint, options)) {
+          changed.add(table);
+        }
+      }
+
+      int jobs = Math.max(1, Math.min(options.getJobs(), changed.size()));
+      for (int i = 1; i < jobs; i++) {
+        connections.add(context.open(url, username, password));
+      }
+      prepare(leader, connections.subList(1, connections.size()), options);
+
+      final BlockingQueue<Connection> idle = new LinkedBlockingQueue<Connection>(connections);
+      executor = Executors.newFixedThreadPool(jobs, new ThreadFactoryBuilder().setNameFormat("db-export-%d")
+                                                                               .setDaemon(true).build());
+      CompletionService<Table> completion = new ExecutorCompletionService<Table>(executor);
+      for (final Table table : changed) {
+        completion.submit(new Callable<Table>() {
+          @Override
+          public Table call() throws Exception {
+            Connection conn = idle.take();
+            try (Timing timing = metrics.start("export-table");
+                 DumpSink sink = new DumpSink(getDataFile(dir, table, options), options.getCompressor(),
+                                              options.getCompression(), options.isChecksum())) {
+              exportTable(conn, table, options.getSubset().getRowFilter(table), throttle.wrap(sink.getStream()));
+              sink.finish();
+            } finally {
+              idle.put(conn);
+            }
+            return table;
+          }
+        });
+      }
+
+      for (int i = 0; i < changed.size(); i++) {
+        context.getLog().debug("exported " + completion.take().get());
+      }
+      if (previous != null) {
+        removeDropped(dir, previous, manifest);
+      }
+      manifest.write(dir);
+
+      metrics.add("tables-exported", changed.size());
+      context.getLog().info("exported " + changed.size() + " tables"
+                            + (changed.size() < tables.size() ? " (" + (tables.size() - changed.size())
+                                                                 + " unchanged)" : "")
+                            + " in " + (System.currentTimeMillis() - start) + " ms");
+    } catch (IOException ioException) {
+      throw new MojoExecutionException("cannot write the manifest of " + dir, ioException);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot export the db", sqlException);
+    } catch (ExecutionException executionException) {
+      throw new MojoExecutionException("cannot export the db", executionException.getCause());
+    } catch (InterruptedException interruptedException) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("interrupted while exporting the db", interruptedException);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+      for (Connection conn : connections) {
+        try {
+          conn.close();
+        } catch (SQLException sqlException) {
+          context.getLog().warn("cannot close a connection", sqlException);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.vecna.maven.db.DbContext;
+import com.vecna.maven.db.io.DumpInput;
+import com.vecna.maven.db.metrics.Timing;
+
+/**
+ * Restores an export written by a {@link TableExporter} into an existing database whose schema is already in place.
+ * The tables listed in the export's {@link TableManifest} are emptied and reloaded in a single transaction, tables
+ * referenced by foreign keys first.
+ *
+ * @author ogolberg@vecna.com
+ */
+public abstract class TableImporter {
+  /**
+   * Load the data of a table.
+   * @param conn connection to use
+   * @param table table to load
+   * @param in stream of the (uncompressed) data, in the format written by the matching {@link TableExporter}
+   * @throws SQLException if the data cannot be loaded
+   * @throws IOException if the data cannot be read
+   */
+  protected abstract void importTable(Connection conn, Table table, InputStream in) throws SQLException, IOException;
+
+  /**
+   * Delete the contents of the tables about to be loaded.
+   * @param conn connection to use
+   * @param tables tables to empty
+   * @throws SQLException if the tables cannot be emptied
+   */
+  protected abstract void truncate(Connection conn, List<Table> tables) throws SQLException;
+
+  /**
+   * Prepare the connection before any data is loaded. Does nothing by default.
+   * @param conn connection to use
+   * @throws SQLException if the connection cannot be prepared
+   */
+  protected void prepare(Connection conn) throws SQLException {
+  }
+
+  /**
+   * Map a table of the export to the table of the target database to load it into. The same table by default.
+   * @param conn connection to the target database
+   * @param table exported table
+   * @return the table to load
+   * @throws SQLException if the table cannot be mapped
+   */
+  protected Table resolve(Connection conn, Table table) throws SQLException {
+    return table;
+  }
+
+  /**
+   * @param dir a file or directory
+   * @return whether it is an export written by a {@link TableExporter}
+   */
+  public static boolean isExport(File dir) {
+    return dir.isDirectory() && TableManifest.getFile(dir).isFile();
+  }
+
+  /**
+   * Restore an export.
+   * @param context execution context
+   * @param url jdbc url of the database
+   * @param username jdbc username
+   * @param password jdbc password
+   * @param dir export directory
+   * @throws MojoExecutionException if the export cannot be restored
+   */
+  public void restore(DbContext context, String url, String username, String password, File dir)
+      throws MojoExecutionException {
+    TableManifest manifest;
+    try {
+      manifest = TableManifest.read(dir);
+    } catch (IOException ioException) {
+      throw new MojoExecutionException("cannot read the manifest of " + dir, ioException);
+    }
+    if (manifest == null) {
+      throw new MojoExecutionException(dir + " is not a jdbc export");
+    }
+
+    long start = System.currentTimeMillis();
+    try (Connection conn = context.open(url, username, password)) {
+      Map<Table, File> files = Maps.newLinkedHashMap();
+      for (TableManifest.Entry entry : manifest.getEntries()) {
+        files.put(resolve(conn, entry.getTable()), new File(dir, entry.getFile()));
+      }
+      List<Table> tables = order(Lists.newArrayList(files.keySet()), listReferences(conn, files.keySet()));
+
+      conn.setAutoCommit(false);
+      prepare(conn);
+      truncate(conn, tables);
+      for (Table table : tables) {
+        try (Timing timing = context.getMetrics().start("import-table");
+             InputStream in = DumpInput.open(files.get(table))) {
+          importTable(conn, table, in);
+        } catch (IOException ioException) {
+          throw new MojoExecutionException("cannot read " + files.get(table), ioException);
+        }
+        context.getLog().debug("imported " + table);
+      }
+      conn.commit();
+      context.getLog().info("imported " + tables.size() + " tables in " + (System.currentTimeMillis() - start)
+                            + " ms");
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot import the db", sqlException);
+    }
+  }
+
+  /**
+   * List the foreign key references between the tables.
+   * @param conn connection to the database
+   * @param tables tables
+   * @return tables referenced by each table
+   * @throws SQLException if the foreign keys cannot be listed
+   */
+  private SetMultimap<Table, Table> listReferences(Connection conn, Set<Table> tables) throws SQLException {
+    SetMultimap<Table, Table> references = HashMultimap.create();
+    for (Table table : tables) {
+      references.putAll(table, listReferencedTables(conn, table));
+    }
+    return references;
+  }
+
+  /**
+   * List the tables a table references through foreign keys. Tables are looked up by schema; databases that
+   * qualify tables by catalog instead must override this.
+   * @param conn connection to the database
+   * @param table table
+   * @return referenced tables
+   * @throws SQLException if the foreign keys cannot be listed
+   */
+  protected List<Table> listReferencedTables(Connection conn, Table table) throws SQLException {
+    List<Table> referenced = Lists.newArrayList();
+    ResultSet rs = conn.getMetaData().getImportedKeys(null, table.getSchema(), table.getName());
+    try {
+      while (rs.next()) {
+        referenced.add(new Table(rs.getString("PKTABLE_SCHEM"), rs.getString("PKTABLE_NAME")));
+      }
+    } finally {
+      rs.close();
+    }
+    return referenced;
+  }
+
+  /**
+   * Order tables so that every table comes after the tables it references. Tables that reference each other (in a
+   * cycle) are kept in their original order.
+   * @param tables tables
+   * @param references tables referenced by each table
+   * @return ordered tables
+   */
+  static List<Table> order(List<Table> tables, SetMultimap<Table, Table> references) {
+    List<Table> ordered = Lists.newArrayList();
+    Set<Table> done = Sets.newHashSet();
+    List<Table> remaining = Lists.newArrayList(tables);
+    while (!remaining.isEmpty()) {
+      boolean progress = false;
+      for (Table table : Lists.newArrayList(remaining)) {
+        boolean ready = true;
+        for (Table referenced : references.get(table)) {
+          if (!referenced.equals(table) && !done.contains(referenced) && tables.contains(referenced)) {
+            ready = false;
+          }
+        }
+        if (ready) {
+          ordered.add(table);
+          done.add(table);
+          remaining.remove(table);
+          progress = true;
+        }
+      }
+      if (!progress) {
+        ordered.addAll(remaining);
+        break;
+      }
+    }
+    return ordered;
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Lists the tables of a JDBC export, the files their data is in and (for incremental exports) the fingerprints of
+ * the tables at the time they were exported. Stored in the export directory as <code>manifest.properties</code>.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class TableManifest {
+  private static final String FILE_NAME = "manifest.properties";
+  private static final String OUTPUT = "output";
+  private static final char SEPARATOR = '\t';
+
+  /**
+   * A table of the export.
+   */
+  public static class Entry {
+    private final Table table;
+    private final String file;
+    private final String fingerprint;
+
+    /**
+     * Create a new {@link Entry}
+     * @param table the table
+     * @param file name of the file the data of the table is in
+     * @param fingerprint fingerprint of the table when it was exported, or an empty string
+     */
+    public Entry(Table table, String file, String fingerprint) {
+      this.table = table;
+      this.file = file;
+      this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the table
+     */
+    public Table getTable() {
+      return table;
+    }
+
+    /**
+     * @return name of the file the data of the table is in
+     */
+    public String getFile() {
+      return file;
+    }
+
+    /**
+     * @return fingerprint of the table when it was exported, or an empty string
+     */
+    public String getFingerprint() {
+      return fingerprint;
+    }
+  }
+
+  private final String output;
+  private final Map<String, Entry> entries = Maps.newTreeMap();
+
+  /**
+   * Create a new {@link TableManifest}
+   * @param output describes how the data files are written (compression etc); files written differently can't be
+   *               reused by incremental exports
+   */
+  public TableManifest(String output) {
+    this.output = output;
+  }
+
+  /**
+   * @param dir export directory
+   * @return the manifest file of the export
+   */
+  public static File getFile(File dir) {
+    return new File(dir, FILE_NAME);
+  }
+
+  /**
+   * Read the manifest of an export.
+   * @param dir export directory
+   * @return the manifest, or null if the directory doesn't have one
+   * @throws IOException if the manifest cannot be read
+   */
+  public static TableManifest read(File dir) throws IOException {
+    File file = getFile(dir);
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    }
+    TableManifest manifest = new TableManifest(properties.getProperty(OUTPUT));
+    for (String key : properties.stringPropertyNames()) {
+      if (!OUTPUT.equals(key)) {
+        List<String> parts = Lists.newArrayList(Splitter.on(SEPARATOR).split(properties.getProperty(key)));
+        if (parts.size() != 3) {
+          throw new IOException("invalid entry for " + key + " in " + file);
+        }
+        manifest.add(new Entry(new Table(parts.get(0), parts.get(1)), key, parts.get(2)));
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * Write the manifest into an export directory.
+   * @param dir export directory
+   * @throws IOException if the manifest cannot be written
+   */
+  public void write(File dir) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(OUTPUT, output);
+    for (Entry entry : entries.values()) {
+      properties.setProperty(entry.getFile(), entry.getTable().getSchema() + SEPARATOR + entry.getTable().getName()
+                                              + SEPARATOR + entry.getFingerprint());
+    }
+    try (OutputStream out = new FileOutputStream(getFile(dir))) {
+      properties.store(out, null);
+    }
+  }
+
+  /**
+   * @return describes how the data files are written
+   */
+  public String getOutput() {
+    return output;
+  }
+
+  /**
+   * @param entry table to add
+   */
+  public void add(Entry entry) {
+    entries.put(entry.getFile(), entry);
+  }
+
+  /**
+   * @param file name of a data file
+   * @return the table whose data is in the file, or null
+   */
+  public Entry get(String file) {
+    return entries.get(file);
+  }
+
+  /**
+   * @return the tables of the export, ordered by file name
+   */
+  public List<Entry> getEntries() {
+    return Lists.newArrayList(entries.values());
+  }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * The part of a database to dump: which tables, which of them without their data, and which rows of the others.
+ * Tables are selected by patterns that match the table's name, or its qualified name (schema.table, or database.table
+ * on MySQL) if they contain a dot; * matches any number of characters and ? a single one.
+ *
+ * @author ogolberg@vecna.com
+ */
+public final class TableSubset {
+  private final List<String> includePatterns;
+  private final List<String> excludePatterns;
+  private final List<String> schemaOnlyPatterns;
+  private final Map<String, RowFilter> rowFilters;
+
+  /**
+   * Create a subset that covers the whole database.
+   */
+  public TableSubset() {
+    this(ImmutableList.<String>of(), ImmutableList.<String>of(), ImmutableList.<String>of(),
+         ImmutableMap.<String, RowFilter>of());
+  }
+
+  /**
+   * @param includePatterns patterns of the tables to dump, all tables if empty
+   * @param excludePatterns patterns of the tables not to dump
+   * @param schemaOnlyPatterns patterns of the tables to dump without their data
+   * @param rowFilters filters of the rows to dump, by table name (optionally qualified)
+   */
+  private TableSubset(List<String> includePatterns, List<String> excludePatterns, List<String> schemaOnlyPatterns,
+                      Map<String, RowFilter> rowFilters) {
+    this.includePatterns = includePatterns;
+    this.excludePatterns = excludePatterns;
+    this.schemaOnlyPatterns = schemaOnlyPatterns;
+    this.rowFilters = rowFilters;
+  }
+
+  /**
+   * @param includePatterns patterns of the tables to dump, all tables if null or empty
+   * @param excludePatterns patterns of the tables not to dump, or null
+   * @param schemaOnlyPatterns patterns of the tables to dump without their data, or null
+   * @param rowFilters rules selecting the rows to dump (see {@link RowFilter}), by table name (optionally
+   *                   qualified), or null
+   * @return the subset
+   * @throws MojoFailureException if a row filter is invalid
+   */
+  public static TableSubset of(List<String> includePatterns, List<String> excludePatterns,
+                               List<String> schemaOnlyPatterns, Map<String, String> rowFilters)
+      throws MojoFailureException {
+    Map<String, RowFilter> filters = Maps.newTreeMap();
+    if (rowFilters != null) {
+      for (Map.Entry<String, String> entry : rowFilters.entrySet()) {
+        filters.put(entry.getKey(), RowFilter.parse(entry.getValue()));
+      }
+    }
+    return new TableSubset(copy(includePatterns), copy(excludePatterns), copy(schemaOnlyPatterns),
+                           Collections.unmodifiableMap(filters));
+  }
+
+  /**
+   * @param patterns patterns, or null
+   * @return an immutable copy of the patterns
+   */
+  private static List<String> copy(List<String> patterns) {
+    return patterns == null ? ImmutableList.<String>of() : ImmutableList.copyOf(patterns);
+  }
+
+  /**
+   * @return patterns of the tables to dump, all tables if empty
+   */
+  public List<String> getIncludePatterns() {
+    return includePatterns;
+  }
+
+  /**
+   * @return patterns of the tables not to dump
+   */
+  public List<String> getExcludePatterns() {
+    return excludePatterns;
+  }
+
+  /**
+   * @return patterns of the tables to dump without their data
+   */
+  public List<String> getSchemaOnlyPatterns() {
+    return schemaOnlyPatterns;
+  }
+
+  /**
+   * @return filters of the rows to dump, by table name (optionally qualified), in name order
+   */
+  public Map<String, RowFilter> getRowFilters() {
+    return rowFilters;
+  }
+
+  /**
+   * @return whether the subset covers the whole database
+   */
+  public boolean isEmpty() {
+    return includePatterns.isEmpty() && excludePatterns.isEmpty() && schemaOnlyPatterns.isEmpty()
+           && rowFilters.isEmpty();
+  }
+
+  /**
+   * @param table table
+   * @return whether the table is dumped
+   */
+  public boolean includes(Table table) {
+    return (includePatterns.isEmpty() || matchesAny(includePatterns, table)) && !matchesAny(excludePatterns, table);
+  }
+
+  /**
+   * @param table table
+   * @return whether the table is dumped without its data
+   */
+  public boolean isSchemaOnly(Table table) {
+    return matchesAny(schemaOnlyPatterns, table);
+  }
+
+  /**
+   * @param table table
+   * @return filter of the table's rows, or null to dump all of them
+   */
+  public RowFilter getRowFilter(Table table) {
+    RowFilter filter = rowFilters.get(table.toString());
+    return filter == null ? rowFilters.get(table.getName()) : filter;
+  }
+
+  /**
+   * @param patterns table patterns
+   * @param table table
+   * @return whether any of the patterns matches the table
+   */
+  private static boolean matchesAny(List<String> patterns, Table table) {
+    for (String pattern : patterns) {
+      if (matches(pattern, table)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param pattern table pattern
+   * @param table table
+   * @return whether the pattern matches the table
+   */
+  static boolean matches(String pattern, Table table) {
+    StringBuilder regex = new StringBuilder();
+    for (char c : pattern.toCharArray()) {
+      if (c == '*') {
+        regex.append(".*");
+      } else if (c == '?') {
+        regex.append('.');
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+      }
+    }
+    String name = pattern.indexOf('.') < 0 ? table.getName() : table.toString();
+    return Pattern.matches(regex.toString(), name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("include", includePatterns).add("exclude", excludePatterns)
+                  .add("schemaOnly", schemaOnlyPatterns).add("rowFilters", rowFilters).toString();
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Objects;
+
+/**
+ * Bounds on how long connections, statements and command line tools may take, so that a hung server or a statement
+ * blocked on a lock fails the build instead of stalling it. A bound of 0 means no limit.
+ *
+ * <p>The connect and socket timeouts are passed to the JDBC driver as the <code>connectTimeout</code> and
+ * <code>socketTimeout</code> connection properties, which both PostgreSQL and MySQL drivers support (in seconds and
+ * milliseconds, respectively). The statement timeout is enforced with {@link Statement#setQueryTimeout(int)}; the
+ * lock timeout is a session setting, which is up to the strategies.</p>
+ *
+ * @author ogolberg@vecna.com
+ */
+public class Timeouts {
+  /**
+   * No limits.
+   */
+  public static final Timeouts NONE = new Timeouts(0, 0, 0, 0, 0);
+
+  /**
+   * Prefix of the urls of the PostgreSQL driver, which takes its timeouts in seconds.
+   */
+  private static final String POSTGRESQL_PREFIX = "jdbc:postgresql:";
+
+  private final long connectMillis;
+  private final long socketMillis;
+  private final long statementMillis;
+  private final long lockMillis;
+  private final long toolMillis;
+
+  /**
+   * Create a new {@link Timeouts}
+   * @param connectMillis how long to wait for a connection to be established
+   * @param socketMillis how long to wait for the server to respond on an established connection
+   * @param statementMillis how long a statement may run
+   * @param lockMillis how long a statement may wait for a lock
+   * @param toolMillis how long a command line tool (e.g. pg_dump) may run before it is killed
+   */
+  public Timeouts(long connectMillis, long socketMillis, long statementMillis, long lockMillis, long toolMillis) {
+    this.connectMillis = connectMillis;
+    this.socketMillis = socketMillis;
+    this.statementMillis = statementMillis;
+    this.lockMillis = lockMillis;
+    this.toolMillis = toolMillis;
+  }
+
+  /**
+   * @return how long to wait for a connection to be established
+   */
+  public long getConnectMillis() {
+    return connectMillis;
+  }
+
+  /**
+   * @return how long to wait for the server to respond on an established connection
+   */
+  public long getSocketMillis() {
+    return socketMillis;
+  }
+
+  /**
+   * @return how long a statement may run
+   */
+  public long getStatementMillis() {
+    return statementMillis;
+  }
+
+  /**
+   * @return how long a statement may wait for a lock
+   */
+  public long getLockMillis() {
+    return lockMillis;
+  }
+
+  /**
+   * @return how long a command line tool may run before it is killed
+   */
+  public long getToolMillis() {
+    return toolMillis;
+  }
+
+  /**
+   * @param url jdbc url of the connection
+   * @param username jdbc username
+   * @param password jdbc password
+   * @return properties to open the connection with, including the connect and socket timeouts in the units of the
+   *         url's driver
+   */
+  public Properties getConnectionProperties(String url, String username, String password) {
+    Properties properties = new Properties();
+    if (username != null) {
+      properties.setProperty("user", username);
+    }
+    if (password != null) {
+      properties.setProperty("password", password);
+    }
+    TimeUnit unit = url.startsWith(POSTGRESQL_PREFIX) ? TimeUnit.SECONDS : TimeUnit.MILLISECONDS;
+    if (connectMillis > 0) {
+      properties.setProperty("connectTimeout", String.valueOf(toUnit(connectMillis, unit)));
+    }
+    if (socketMillis > 0) {
+      properties.setProperty("socketTimeout", String.valueOf(toUnit(socketMillis, unit)));
+    }
+    return properties;
+  }
+
+  /**
+   * Apply the statement timeout to a statement.
+   * @param statement statement
+   * @throws SQLException if the timeout cannot be set
+   */
+  public void apply(Statement statement) throws SQLException {
+    if (statementMillis > 0) {
+      statement.setQueryTimeout((int) toUnit(statementMillis, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * @param millis a positive duration in milliseconds
+   * @param unit unit to convert to
+   * @return the duration in the unit, rounded up so that it doesn't become 0 (no limit)
+   */
+  public static long toUnit(long millis, TimeUnit unit) {
+    long converted = unit.convert(millis, TimeUnit.MILLISECONDS);
+    return TimeUnit.MILLISECONDS.convert(converted, unit) < millis ? converted + 1 : converted;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this).add("connect", connectMillis).add("socket", socketMillis)
+        .add("statement", statementMillis).add("lock", lockMillis).add("tool", toolMillis).toString();
+  }
+}
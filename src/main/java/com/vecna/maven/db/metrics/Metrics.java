@@ -0,0 +1,143 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Timings and counters collected during a single plugin execution. Thread-safe.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class Metrics {
+  private final Map<String, Phase> phases = Maps.newLinkedHashMap();
+  private final Map<String, Long> counters = Maps.newLinkedHashMap();
+
+  /**
+   * Accumulated timings of a phase (e.g. connecting or running a statement).
+   */
+  public static class Phase {
+    private final String name;
+    private int count;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * @param name name of the phase
+     */
+    Phase(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @param other phase to copy
+     */
+    Phase(Phase other) {
+      this.name = other.name;
+      this.count = other.count;
+      this.totalNanos = other.totalNanos;
+      this.maxNanos = other.maxNanos;
+    }
+
+    /**
+     * @return name of the phase
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return number of times the phase ran
+     */
+    public int getCount() {
+      return count;
+    }
+
+    /**
+     * @return total time spent in the phase, in nanoseconds
+     */
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    /**
+     * @return longest single run of the phase, in nanoseconds
+     */
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+  }
+
+  /**
+   * Start timing a phase. The timing is recorded when the returned {@link Timing} is closed.
+   * @param phase name of the phase
+   * @return the running timing
+   */
+  public Timing start(String phase) {
+    return new Timing(this, phase);
+  }
+
+  /**
+   * Record a run of a phase.
+   * @param phase name of the phase
+   * @param nanos duration of the run, in nanoseconds
+   */
+  public synchronized void record(String phase, long nanos) {
+    Phase stats = phases.get(phase);
+    if (stats == null) {
+      stats = new Phase(phase);
+      phases.put(phase, stats);
+    }
+    stats.count++;
+    stats.totalNanos += nanos;
+    stats.maxNanos = Math.max(stats.maxNanos, nanos);
+  }
+
+  /**
+   * Increment a counter.
+   * @param counter name of the counter
+   * @param amount amount to add
+   */
+  public synchronized void add(String counter, long amount) {
+    Long value = counters.get(counter);
+    counters.put(counter, value == null ? amount : value + amount);
+  }
+
+  /**
+   * @return a snapshot of the phases, in the order they first ran
+   */
+  public synchronized List<Phase> getPhases() {
+    List<Phase> snapshot = Lists.newArrayList();
+    for (Phase phase : phases.values()) {
+      snapshot.add(new Phase(phase));
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return a snapshot of the counters, in the order they were first incremented
+   */
+  public synchronized Map<String, Long> getCounters() {
+    return ImmutableMap.copyOf(counters);
+  }
+}
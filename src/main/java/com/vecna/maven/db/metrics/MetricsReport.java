@@ -0,0 +1,147 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Formats {@link Metrics} for the log and for machine-readable reports. Reports are appended to, so that a single
+ * file can collect the metrics of every execution in a build: JSON reports hold one JSON object per line, CSV reports
+ * one row per phase/counter.
+ *
+ * @author ogolberg@vecna.com
+ */
+public final class MetricsReport {
+  private static final String CSV_HEADER = "timestamp,execution,type,name,count,total_ms,max_ms,value";
+
+  private MetricsReport() {
+  }
+
+  /**
+   * @param metrics metrics to summarize
+   * @return a one-line summary of the metrics
+   */
+  public static String summarize(Metrics metrics) {
+    List<String> parts = Lists.newArrayList();
+    for (Metrics.Phase phase : metrics.getPhases()) {
+      parts.add(phase.getName() + " " + millis(phase.getTotalNanos()) + " ms"
+                + (phase.getCount() > 1 ? " (" + phase.getCount() + "x)" : ""));
+    }
+    for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet()) {
+      parts.add(counter.getKey() + " " + counter.getValue());
+    }
+    return Joiner.on(", ").join(parts);
+  }
+
+  /**
+   * Append the metrics of an execution to a report file. The format (JSON or CSV) is chosen by the file's extension.
+   * @param file report file
+   * @param execution identifies the execution
+   * @param metrics metrics of the execution
+   * @throws IOException if the report cannot be written
+   */
+  public static synchronized void append(File file, String execution, Metrics metrics) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null) {
+      FileUtils.forceMkdir(parent);
+    }
+    boolean csv = file.getName().toLowerCase(Locale.ENGLISH).endsWith(".csv");
+    boolean header = csv && (!file.exists() || file.length() == 0);
+    long timestamp = System.currentTimeMillis();
+
+    try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8)) {
+      if (csv) {
+        if (header) {
+          writer.write(CSV_HEADER + "\n");
+        }
+        for (Metrics.Phase phase : metrics.getPhases()) {
+          writer.write(Joiner.on(',').join(timestamp, csv(execution), "phase", csv(phase.getName()), phase.getCount(),
+                                           millis(phase.getTotalNanos()), millis(phase.getMaxNanos()), "") + "\n");
+        }
+        for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet()) {
+          writer.write(Joiner.on(',').join(timestamp, csv(execution), "counter", csv(counter.getKey()), "", "", "",
+                                           counter.getValue()) + "\n");
+        }
+      } else {
+        List<String> phases = Lists.newArrayList();
+        for (Metrics.Phase phase : metrics.getPhases()) {
+          phases.add(json(phase.getName()) + ":{\"count\":" + phase.getCount() + ",\"totalMs\":"
+                     + millis(phase.getTotalNanos()) + ",\"maxMs\":" + millis(phase.getMaxNanos()) + "}");
+        }
+        List<String> counters = Lists.newArrayList();
+        for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet()) {
+          counters.add(json(counter.getKey()) + ":" + counter.getValue());
+        }
+        writer.write("{\"timestamp\":" + timestamp + ",\"execution\":" + json(execution)
+                     + ",\"phases\":{" + Joiner.on(',').join(phases) + "}"
+                     + ",\"counters\":{" + Joiner.on(',').join(counters) + "}}\n");
+      }
+    }
+  }
+
+  /**
+   * @param nanos duration in nanoseconds
+   * @return duration in milliseconds
+   */
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  /**
+   * @param value a string
+   * @return the string as a JSON literal
+   */
+  static String json(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < ' ') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * @param value a string
+   * @return the string as a CSV field
+   */
+  static String csv(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return "\"" + value.replace("\"", "\"\"") + "\"";
+  }
+}
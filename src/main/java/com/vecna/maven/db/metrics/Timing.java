@@ -0,0 +1,51 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.metrics;
+
+/**
+ * A running timing of a phase, recorded in {@link Metrics} when closed. Meant for try-with-resources.
+ *
+ * @author ogolberg@vecna.com
+ */
+public class Timing implements AutoCloseable {
+  private final Metrics metrics;
+  private final String phase;
+  private final long start = System.nanoTime();
+  private boolean stopped;
+
+  /**
+   * Start a new {@link Timing}
+   * @param metrics metrics to record the timing in
+   * @param phase name of the phase
+   */
+  Timing(Metrics metrics, String phase) {
+    this.metrics = metrics;
+    this.phase = phase;
+  }
+
+  /**
+   * Stop the timing and record it. Subsequent calls have no effect.
+   */
+  @Override
+  public void close() {
+    if (!stopped) {
+      stopped = true;
+      metrics.record(phase, System.nanoTime() - start);
+    }
+  }
+}
@@ -17,21 +17,53 @@
 package com.vecna.maven.db.mysql;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.MojoExecutionException;
-import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
-import org.codehaus.plexus.util.cli.CommandLineUtils.StringStreamConsumer;
+import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.plexus.util.cli.Commandline;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.vecna.maven.db.Compressor;
+import com.vecna.maven.db.DbContext;
 import com.vecna.maven.db.DbStrategy;
+import com.vecna.maven.db.DumpEngine;
+import com.vecna.maven.db.DumpFormat;
+import com.vecna.maven.db.DumpOptions;
+import com.vecna.maven.db.ExportedSnapshots;
+import com.vecna.maven.db.RestoreOptions;
+import com.vecna.maven.db.cli.CommandRunner;
+import com.vecna.maven.db.io.DumpInput;
+import com.vecna.maven.db.io.Throttle;
+import com.vecna.maven.db.jdbc.ConnectionLease;
+import com.vecna.maven.db.jdbc.Fingerprints;
+import com.vecna.maven.db.jdbc.RetryPolicy;
+import com.vecna.maven.db.jdbc.RowFilter;
+import com.vecna.maven.db.jdbc.Table;
+import com.vecna.maven.db.jdbc.TableImporter;
+import com.vecna.maven.db.jdbc.TableSubset;
+import com.vecna.maven.db.jdbc.Timeouts;
+import com.vecna.maven.db.metrics.Timing;
 
 /**
  * MySQL strategy for creating/dropping/dumping databases.
@@ -41,8 +73,62 @@ public class MysqlStrategy implements DbStrategy {
   private static final String DEFAULT_DB = "mysql";
   private static final String JDBC = "jdbc:";
   private static final String DUMP_COMMAND = "mysqldump";
-  private static final String PASSWORD_ENV = "MYSQLPASSWORD";
-  private static final String JDBC_DRIVER = "com.mysql.jdbc.Driver";
+  private static final String SQL_COMMAND = "mysql";
+  private static final String PASSWORD_ENV = "MYSQL_PWD";
+  static final String JDBC_DRIVER = "com.mysql.jdbc.Driver";
+  /**
+   * Error code of KILL when the session is already gone.
+   */
+  private static final int NO_SUCH_THREAD = 1094;
+
+  /**
+   * User databases and their creation time. MySQL doesn't record when a database was created, so the creation time
+   * of its oldest table is used instead; empty databases have none.
+   */
+  private static final String LIST_DBS = "SELECT s.SCHEMA_NAME, MIN(t.CREATE_TIME) FROM information_schema.SCHEMATA s"
+      + " LEFT JOIN information_schema.TABLES t ON t.TABLE_SCHEMA = s.SCHEMA_NAME WHERE s.SCHEMA_NAME NOT IN"
+      + " ('information_schema', 'mysql', 'performance_schema', 'sys') GROUP BY s.SCHEMA_NAME ORDER BY s.SCHEMA_NAME";
+
+  private static final Pattern AUTO_INCREMENT = Pattern.compile(" AUTO_INCREMENT=\\d+");
+
+  /**
+   * Catalog queries (parameterized by the database name) that make up the fingerprint of a database: the definitions
+   * of columns, indexes, keys, views, routines and triggers, and the statistics of every table.
+   */
+  private static final List<String> FINGERPRINT_QUERIES = ImmutableList.of(
+      "SELECT TABLE_NAME, COLUMN_NAME, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA FROM information_schema.COLUMNS"
+      + " WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, ORDINAL_POSITION",
+      "SELECT TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX, COLUMN_NAME, NON_UNIQUE FROM information_schema.STATISTICS"
+      + " WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX",
+      "SELECT TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION, COLUMN_NAME, REFERENCED_TABLE_SCHEMA,"
+      + " REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE"
+      + " WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION",
+      "SELECT TABLE_NAME, VIEW_DEFINITION FROM information_schema.VIEWS WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME",
+      "SELECT ROUTINE_TYPE, ROUTINE_NAME, ROUTINE_DEFINITION FROM information_schema.ROUTINES"
+      + " WHERE ROUTINE_SCHEMA = ? ORDER BY ROUTINE_TYPE, ROUTINE_NAME",
+      "SELECT TRIGGER_NAME, EVENT_OBJECT_TABLE, EVENT_MANIPULATION, ACTION_TIMING, ACTION_STATEMENT"
+      + " FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = ? ORDER BY TRIGGER_NAME",
+      "SELECT TABLE_NAME, ENGINE, TABLE_ROWS, AUTO_INCREMENT, DATA_LENGTH, CREATE_TIME, UPDATE_TIME"
+      + " FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? ORDER BY TABLE_NAME");
+
+  /**
+   * Catalog queries (parameterized by the database name) that make up the schema fingerprint of a database: its
+   * tables (and views), columns, indexes and constraints. The order of the rows doesn't matter, and references to
+   * tables of the same database leave out its name.
+   */
+  private static final List<String> SCHEMA_FINGERPRINT_QUERIES = ImmutableList.of(
+      "SELECT TABLE_NAME, TABLE_TYPE, ENGINE FROM information_schema.TABLES WHERE TABLE_SCHEMA = ?",
+      "SELECT TABLE_NAME, COLUMN_NAME, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA, CHARACTER_SET_NAME,"
+      + " COLLATION_NAME FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = ?",
+      "SELECT TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX, COLUMN_NAME, NON_UNIQUE, SUB_PART, INDEX_TYPE"
+      + " FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = ?",
+      "SELECT TABLE_NAME, CONSTRAINT_NAME, CONSTRAINT_TYPE FROM information_schema.TABLE_CONSTRAINTS"
+      + " WHERE TABLE_SCHEMA = ?",
+      "SELECT TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION, COLUMN_NAME, CASE WHEN REFERENCED_TABLE_SCHEMA ="
+      + " TABLE_SCHEMA THEN NULL ELSE REFERENCED_TABLE_SCHEMA END, REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME"
+      + " FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = ?",
+      "SELECT TABLE_NAME, CONSTRAINT_NAME, UPDATE_RULE, DELETE_RULE FROM information_schema.REFERENTIAL_CONSTRAINTS"
+      + " WHERE CONSTRAINT_SCHEMA = ?");
 
   /**
    * Create an instance of the MySQL strategy.
@@ -57,19 +143,63 @@ public class MysqlStrategy implements DbStrategy {
   }
 
   /**
-   * run a SQL statement
+   * run a SQL statement, retrying it if it is rolled back because of a conflict with another transaction, and bounding
+   * it with the statement and lock timeouts
+   * @param context execution context
    * @param url the url to execute the sql on.
    * @param username username of the user that will perform the sql.
    * @param password password of the user that will perform the sql.
    * @param sql the sql string to execute.
    * @throws SQLException if the sql fails to run.
    */
-  private void execute(String url, String username, String password, String sql) throws SQLException {
-    Connection conn = DriverManager.getConnection(url, username, password);
+  private void execute(final DbContext context, String url, String username, String password, final String sql)
+      throws SQLException {
+    context.getLog().debug("executing " + sql);
+    final ConnectionLease lease = context.connect(url, username, password);
     try {
-      conn.createStatement().execute(sql);
+      context.getRetryPolicy().call(context.getLog(), sql, RetryPolicy.ErrorClass.CONFLICT,
+                                    new RetryPolicy.Action<Void>() {
+        @Override
+        public Void run() throws SQLException {
+          Statement statement = createStatement(context, lease.getConnection());
+          Timing timing = context.getMetrics().start("execute");
+          try {
+            statement.execute(sql);
+          } finally {
+            timing.close();
+            statement.close();
+          }
+          return null;
+        }
+      });
     } finally {
-      conn.close();
+      lease.close();
+    }
+  }
+
+  /**
+   * Create a statement that is cancelled once it runs longer than the statement timeout, on a session whose statements
+   * fail once they wait for a lock longer than the lock timeout.
+   * @param context execution context
+   * @param conn connection
+   * @return the statement; must be closed
+   * @throws SQLException if the statement cannot be created
+   */
+  private static Statement createStatement(DbContext context, Connection conn) throws SQLException {
+    Statement statement = conn.createStatement();
+    try {
+      long lockMillis = context.getTimeouts().getLockMillis();
+      // lock_wait_timeout covers metadata locks (e.g. a drop blocked by an open transaction), the other row locks;
+      // neither can be disabled, so no limit means the server's default
+      String lockTimeout = lockMillis == 0 ? "DEFAULT"
+          : String.valueOf(Timeouts.toUnit(lockMillis, TimeUnit.SECONDS));
+      statement.execute("SET SESSION lock_wait_timeout = " + lockTimeout + ", innodb_lock_wait_timeout = "
+                        + lockTimeout);
+      context.getTimeouts().apply(statement);
+      return statement;
+    } catch (SQLException sqlException) {
+      statement.close();
+      throw sqlException;
     }
   }
 
@@ -91,57 +221,611 @@ public class MysqlStrategy implements DbStrategy {
     return new MysqlDbInfo(uri.getPath().replaceAll("^/", ""), JDBC + connectUri.toString());
   }
 
+  /**
+   * Connects to the admin database, which exists as soon as the server is up.
+   */
   @Override
-  public void createDb(URI uri, String username, String password) throws MojoExecutionException {
+  public void awaitServer(DbContext context, URI uri, String username, String password, long waitMillis)
+      throws MojoExecutionException {
     MysqlDbInfo dbInfo = parse(uri);
     try {
-      execute(dbInfo.getConnectUrl(), username, password, "CREATE DATABASE " + dbInfo.getDbName());
+      context.awaitConnection(dbInfo.getConnectUrl(), username, password, waitMillis);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("the server did not accept connections within " + waitMillis + " ms",
+                                       sqlException);
+    }
+  }
+
+  @Override
+  public void createDb(DbContext context, URI uri, String username, String password) throws MojoExecutionException {
+    MysqlDbInfo dbInfo = parse(uri);
+    try {
+      execute(context, dbInfo.getConnectUrl(), username, password, "CREATE DATABASE " + dbInfo.getDbName());
     } catch (SQLException sqlException) {
       throw new MojoExecutionException("cannot create the db", sqlException);
     }
   }
 
+  /**
+   * MySQL has no template databases, so the new database is created empty and every base table of the
+   * template is re-created (keys and foreign keys included) and copied over. Views and routines are not copied.
+   */
+  @Override
+  public void cloneDb(DbContext context, URI uri, String username, String password, String template)
+      throws MojoExecutionException {
+    MysqlDbInfo dbInfo = parse(uri);
+    try {
+      copyDb(context, dbInfo.getConnectUrl(), username, password, template, dbInfo.getDbName(), false);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot create the db from template " + template, sqlException);
+    }
+  }
+
+  /**
+   * Copy the base tables of a database into another one.
+   * @param context execution context
+   * @param url admin connection url
+   * @param username admin username
+   * @param password admin password
+   * @param source name of the database to copy
+   * @param target name of the database to copy into
+   * @param reset whether the target database already exists; if so, its tables are truncated when their definition
+   *        matches the source's, and dropped and re-created otherwise, and the tables missing from the source are
+   *        dropped
+   * @throws SQLException if the database cannot be copied
+   */
+  private void copyDb(DbContext context, String url, String username, String password, String source, String target,
+                      boolean reset) throws SQLException {
+    ConnectionLease lease = context.connect(url, username, password);
+    Statement statement = createStatement(context, lease.getConnection());
+    Timing timing = context.getMetrics().start("execute");
+    Exception failure = null;
+    try {
+      if (!reset) {
+        statement.execute("CREATE DATABASE " + MysqlTableExporter.quote(target));
+      }
+      statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+      statement.execute("USE " + MysqlTableExporter.quote(target));
+      List<String> tables = listTables(lease.getConnection(), source);
+      List<String> existing = reset ? listTables(lease.getConnection(), target) : ImmutableList.<String>of();
+      for (String table : existing) {
+        if (!tables.contains(table)) {
+          statement.execute("DROP TABLE " + MysqlTableExporter.quote(table));
+        }
+      }
+      for (String table : tables) {
+        String createTable = showCreateTable(statement, source, table);
+        if (existing.contains(table) && createTable.equals(showCreateTable(statement, target, table))) {
+          // much faster than re-creating the table, and keeps its grants
+          statement.execute("TRUNCATE TABLE " + MysqlTableExporter.quote(table));
+        } else {
+          if (existing.contains(table)) {
+            statement.execute("DROP TABLE " + MysqlTableExporter.quote(table));
+          }
+          statement.execute(createTable);
+        }
+        statement.execute("INSERT INTO " + MysqlTableExporter.quote(table) + " SELECT * FROM "
+                          + MysqlTableExporter.quote(source) + "." + MysqlTableExporter.quote(table));
+      }
+    } catch (SQLException | RuntimeException exception) {
+      failure = exception;
+      throw exception;
+    } finally {
+      timing.close();
+      // the connection goes back to the pool, so undo the session changes, or close it if they cannot be undone
+      boolean restored = false;
+      try {
+        statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+        statement.execute("USE " + DEFAULT_DB);
+        restored = true;
+      } catch (SQLException restoreException) {
+        if (failure != null) {
+          failure.addSuppressed(restoreException);
+        } else {
+          context.getLog().debug("cannot restore the session, closing the connection", restoreException);
+        }
+      } finally {
+        try {
+          statement.close();
+        } finally {
+          if (restored) {
+            lease.close();
+          } else {
+            lease.discard();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @param statement statement to query with
+   * @param dbName name of the database
+   * @param table name of the table
+   * @return the definition of the table, without its auto-increment counter
+   * @throws SQLException if the definition cannot be read
+   */
+  private String showCreateTable(Statement statement, String dbName, String table) throws SQLException {
+    ResultSet ddl = statement.executeQuery("SHOW CREATE TABLE " + MysqlTableExporter.quote(dbName) + "."
+                                           + MysqlTableExporter.quote(table));
+    try {
+      ddl.next();
+      return AUTO_INCREMENT.matcher(ddl.getString(2)).replaceFirst("");
+    } finally {
+      ddl.close();
+    }
+  }
+
+  /**
+   * MySQL can't rename databases, so the new database is created and the tables are moved into it with a single
+   * RENAME TABLE, which only updates the data dictionary. Views and routines are not moved.
+   */
+  @Override
+  public void renameDb(DbContext context, URI uri, String username, String password, String newName)
+      throws MojoExecutionException {
+    MysqlDbInfo dbInfo = parse(uri);
+    String source = MysqlTableExporter.quote(dbInfo.getDbName());
+    String target = MysqlTableExporter.quote(newName);
+    try {
+      ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password);
+      try {
+        List<String> renames = Lists.newArrayList();
+        for (String table : listTables(lease.getConnection(), dbInfo.getDbName())) {
+          renames.add(source + "." + MysqlTableExporter.quote(table) + " TO " + target + "."
+                      + MysqlTableExporter.quote(table));
+        }
+        Statement statement = createStatement(context, lease.getConnection());
+        Timing timing = context.getMetrics().start("execute");
+        try {
+          statement.execute("CREATE DATABASE " + target);
+          if (!renames.isEmpty()) {
+            try {
+              statement.execute("RENAME TABLE " + Joiner.on(", ").join(renames));
+            } catch (SQLException renameException) {
+              // RENAME TABLE is atomic, so the new database is still empty
+              try {
+                statement.execute("DROP DATABASE " + target);
+              } catch (SQLException dropException) {
+                renameException.addSuppressed(dropException);
+              }
+              throw renameException;
+            }
+          }
+          statement.execute("DROP DATABASE " + source);
+        } finally {
+          timing.close();
+          statement.close();
+        }
+      } finally {
+        lease.close();
+      }
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot rename the db to " + newName, sqlException);
+    }
+  }
+
+  /**
+   * The snapshot is a separate database holding a copy of every base table.
+   */
   @Override
-  public void dropDb(URI uri, String username, String password) throws MojoExecutionException {
+  public void snapshotDb(DbContext context, URI uri, String username, String password, String snapshot)
+      throws MojoExecutionException {
     MysqlDbInfo dbInfo = parse(uri);
     try {
-      execute(dbInfo.getConnectUrl(), username, password, "DROP DATABASE IF EXISTS " + dbInfo.getDbName());
+      execute(context, dbInfo.getConnectUrl(), username, password,
+              "DROP DATABASE IF EXISTS " + MysqlTableExporter.quote(snapshot));
+      copyDb(context, dbInfo.getConnectUrl(), username, password, dbInfo.getDbName(), snapshot, false);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot snapshot the db", sqlException);
+    }
+  }
+
+  /**
+   * The tables whose definition hasn't changed since the snapshot are truncated and re-filled from the snapshot;
+   * the others are re-created. The snapshot itself is left untouched, so it can be reset to again.
+   */
+  @Override
+  public void resetDb(DbContext context, URI uri, String username, String password, String snapshot)
+      throws MojoExecutionException {
+    MysqlDbInfo dbInfo = parse(uri);
+    try {
+      copyDb(context, dbInfo.getConnectUrl(), username, password, snapshot, dbInfo.getDbName(), true);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot reset the db to snapshot " + snapshot, sqlException);
+    }
+  }
+
+  /**
+   * List the base tables of a database.
+   * @param conn connection to query
+   * @param dbName name of the database
+   * @return table names
+   * @throws SQLException if the tables cannot be listed
+   */
+  private List<String> listTables(Connection conn, String dbName) throws SQLException {
+    PreparedStatement statement = conn.prepareStatement("SELECT TABLE_NAME FROM information_schema.TABLES"
+                                                        + " WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'");
+    try {
+      statement.setString(1, dbName);
+      ResultSet rs = statement.executeQuery();
+      List<String> tables = Lists.newArrayList();
+      while (rs.next()) {
+        tables.add(rs.getString(1));
+      }
+      return tables;
+    } finally {
+      statement.close();
+    }
+  }
+
+  @Override
+  public void dropDb(DbContext context, URI uri, String username, String password) throws MojoExecutionException {
+    MysqlDbInfo dbInfo = parse(uri);
+    try {
+      execute(context, dbInfo.getConnectUrl(), username, password, "DROP DATABASE IF EXISTS " + dbInfo.getDbName());
     } catch (SQLException sqlException) {
       throw new MojoExecutionException("cannot drop the db", sqlException);
     }
   }
 
+  /**
+   * MySQL has no per-database (or per-session, for other sessions) durability settings; the only settings are global
+   * (innodb_flush_log_at_trx_commit, sync_binlog) and would affect every database on the server, so they are left
+   * alone and the database keeps the server's durability.
+   */
+  @Override
+  public void relaxDurability(DbContext context, URI uri, String username, String password, boolean unlogged)
+      throws MojoExecutionException {
+    context.getLog().warn("MySQL has no per-database durability settings, " + parse(uri).getDbName()
+                          + " keeps the server's durability");
+  }
+
+  @Override
+  public Map<String, Date> listDbs(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
+    MysqlDbInfo dbInfo = parse(uri);
+    try {
+      ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password);
+      try {
+        Statement statement = lease.getConnection().createStatement();
+        try {
+          ResultSet rs = statement.executeQuery(LIST_DBS);
+          Map<String, Date> dbs = Maps.newLinkedHashMap();
+          while (rs.next()) {
+            dbs.put(rs.getString(1), rs.getTimestamp(2));
+          }
+          return dbs;
+        } finally {
+          statement.close();
+        }
+      } finally {
+        lease.close();
+      }
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot list the dbs", sqlException);
+    }
+  }
+
   @Override
-  public void dumpDb(URI uri, String username, String password, File out) throws MojoExecutionException {
+  public int terminateSessions(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
     MysqlDbInfo dbInfo = parse(uri);
+    try {
+      ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password);
+      try {
+        List<Long> sessions = Lists.newArrayList();
+        PreparedStatement query = lease.getConnection().prepareStatement("SELECT ID FROM information_schema.PROCESSLIST"
+                                                                         + " WHERE DB = ? AND ID <> CONNECTION_ID()");
+        try {
+          query.setString(1, dbInfo.getDbName());
+          ResultSet rs = query.executeQuery();
+          while (rs.next()) {
+            sessions.add(rs.getLong(1));
+          }
+        } finally {
+          query.close();
+        }
+
+        int killed = 0;
+        Statement statement = lease.getConnection().createStatement();
+        try {
+          for (Long session : sessions) {
+            try {
+              statement.execute("KILL " + session);
+              killed++;
+            } catch (SQLException sqlException) {
+              if (sqlException.getErrorCode() != NO_SUCH_THREAD) {
+                throw sqlException;
+              }
+            }
+          }
+        } finally {
+          statement.close();
+        }
+        return killed;
+      } finally {
+        lease.close();
+      }
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot terminate the sessions of the db", sqlException);
+    }
+  }
+
+  /**
+   * MySQL can't share a snapshot between sessions, so dumps taken by separate mysqldump runs can't be made consistent
+   * with each other.
+   */
+  @Override
+  public ExportedSnapshots exportSnapshots(DbContext context, List<URI> uris, String username, String password)
+      throws MojoFailureException {
+    throw new MojoFailureException("MySQL cannot share a snapshot between dumps");
+  }
+
+  /**
+   * mysqldump applies --no-data and --where to all the tables it dumps, so the tables dumped without their data and
+   * the tables with row filters are dumped by separate runs, appended to the dump. The runs don't share a snapshot, and
+   * each only reads a consistent state with --single-transaction, which is only passed for throttled dumps. The dump
+   * holds the tables, not the database (mysqldump is not passed --databases), so it can be restored into a database
+   * of any name.
+   */
+  @Override
+  public void dumpDb(DbContext context, URI uri, String username, String password, File out,
+                     DumpOptions options)
+      throws MojoExecutionException, MojoFailureException {
+    if (options.getSnapshot() != null) {
+      throw new MojoFailureException("MySQL cannot dump from an exported snapshot");
+    }
+    Throttle throttle = new Throttle(context.getLog(), options.getMaxBytesPerSecond(),
+                                     replicaLagProbe(context, uri, username, password), options.getMaxReplicaLag());
+    if (options.getEngine() == DumpEngine.JDBC) {
+      new MysqlTableExporter().export(context, JDBC + uri, username, password, out, options, throttle);
+      return;
+    }
+    if (options.getFormat() != DumpFormat.PLAIN) {
+      throw new MojoFailureException(DUMP_COMMAND + " only produces plain SQL dumps");
+    }
+    if (options.getCompression() != null && options.getCompressor() == Compressor.NONE) {
+      throw new MojoFailureException(DUMP_COMMAND + " cannot compress dumps, configure a compressor instead");
+    }
+    MysqlDbInfo dbInfo = parse(uri);
+    TableSubset subset = options.getSubset();
+
+    List<String> args = connectionArgs(uri, username);
+    if (options.isThrottled()) {
+      // read InnoDB tables from a consistent snapshot instead of locking them, and stream the rows
+      args.add("--single-transaction");
+      args.add("--quick");
+    }
+    if (subset.isEmpty()) {
+      args.add(dbInfo.getDbName());
+      dump(context, Collections.singletonList(args), password, out, options, throttle);
+      return;
+    }
+
+    List<String> schemaOnly = Lists.newArrayList();
+    Map<String, RowFilter> filtered = Maps.newLinkedHashMap();
+    List<String> whole = Lists.newArrayList(args);
+    try {
+      ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password);
+      try {
+        for (String name : listTables(lease.getConnection(), dbInfo.getDbName())) {
+          Table table = new Table(dbInfo.getDbName(), name);
+          if (!subset.includes(table)) {
+            whole.add("--ignore-table=" + table);
+          } else if (subset.isSchemaOnly(table)) {
+            whole.add("--ignore-table=" + table);
+            schemaOnly.add(name);
+          } else if (subset.getRowFilter(table) != null) {
+            whole.add("--ignore-table=" + table);
+            filtered.put(name, subset.getRowFilter(table));
+          }
+        }
+      } finally {
+        lease.close();
+      }
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot list the tables of the db", sqlException);
+    }
+    whole.add(dbInfo.getDbName());
+
+    List<List<String>> runs = Lists.newArrayList();
+    runs.add(whole);
+    if (!schemaOnly.isEmpty()) {
+      List<String> run = Lists.newArrayList(args);
+      run.add("--no-data");
+      run.add(dbInfo.getDbName());
+      run.addAll(schemaOnly);
+      runs.add(run);
+    }
+    for (Map.Entry<String, RowFilter> entry : filtered.entrySet()) {
+      List<String> run = Lists.newArrayList(args);
+      run.add("--where=" + MysqlTableExporter.where(entry.getValue()));
+      run.add(dbInfo.getDbName());
+      run.add(entry.getKey());
+      runs.add(run);
+    }
+    dump(context, runs, password, out, options, throttle);
+  }
+
+  /**
+   * Run mysqldump, once or several times in a row into the same dump. A single run writes the dump directly unless it
+   * is streamed.
+   * @param context execution context
+   * @param runs arguments of every run
+   * @param password password
+   * @param out output file
+   * @param options dump options
+   * @param throttle throttle to write the dump through
+   * @throws MojoExecutionException if mysqldump fails
+   */
+  private void dump(DbContext context, List<List<String>> runs, String password, File out, DumpOptions options,
+                    Throttle throttle) throws MojoExecutionException {
+    if (runs.size() == 1 && !options.isStreamed()) {
+      List<String> args = Lists.newArrayList("-r", out.getPath());
+      args.addAll(runs.get(0));
+      CommandRunner.run(context, dumpCommand(args, password, options), DUMP_COMMAND, null);
+      return;
+    }
+    List<CommandRunner.DumpPart> parts = Lists.newArrayList();
+    for (List<String> run : runs) {
+      parts.add(CommandRunner.toolOutput(context, dumpCommand(run, password, options), DUMP_COMMAND));
+    }
+    CommandRunner.dump(out, parts, options, throttle);
+  }
 
+  /**
+   * @param args mysqldump arguments
+   * @param password password
+   * @param options dump options
+   * @return mysqldump command line
+   */
+  private Commandline dumpCommand(List<String> args, String password, DumpOptions options) {
     Commandline cmdLine = new Commandline();
-    cmdLine.setExecutable(DUMP_COMMAND);
+    CommandRunner.setDumpExecutable(cmdLine, DUMP_COMMAND, options);
+    cmdLine.addArguments(args.toArray(new String[0]));
+    cmdLine.addEnvironment(PASSWORD_ENV, password);
+    return cmdLine;
+  }
 
-    List<String> args = Lists.newArrayList("-h", uri.getHost(), "-U", username, "-f", out.getPath());
-    if (uri.getPort() != -1) {
-      args.add("-p");
-      args.add(String.valueOf(uri.getPort()));
+  /**
+   * @param context execution context
+   * @param uri database URI
+   * @param username jdbc username
+   * @param password jdbc password
+   * @return probe returning the number of seconds the server lags behind its master, or null if it isn't a replica
+   *         or its replication is stopped
+   * @throws MojoExecutionException if the URI cannot be parsed
+   */
+  private Callable<Double> replicaLagProbe(final DbContext context, URI uri, final String username,
+                                           final String password) throws MojoExecutionException {
+    final MysqlDbInfo dbInfo = parse(uri);
+    return new Callable<Double>() {
+      @Override
+      public Double call() throws SQLException {
+        ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password);
+        try {
+          Statement statement = lease.getConnection().createStatement();
+          try {
+            ResultSet rs = statement.executeQuery("SHOW SLAVE STATUS");
+            if (!rs.next()) {
+              return null;
+            }
+            double lag = rs.getDouble("Seconds_Behind_Master");
+            return rs.wasNull() ? null : lag;
+          } finally {
+            statement.close();
+          }
+        } finally {
+          lease.close();
+        }
+      }
+    };
+  }
+
+  /**
+   * The dump is streamed (and decompressed, if necessary) into the mysql client. Exports of the jdbc engine are
+   * loaded over JDBC.
+   */
+  @Override
+  public void restoreDb(DbContext context, URI uri, String username, String password, File in,
+                        RestoreOptions options)
+      throws MojoExecutionException, MojoFailureException {
+    if (TableImporter.isExport(in)) {
+      if (options.getJobs() > 1) {
+        throw new MojoFailureException("jdbc exports are restored in a single transaction and cannot be restored "
+                                       + "in parallel");
+      }
+      new MysqlTableImporter().restore(context, JDBC + uri, username, password, in);
+      return;
+    }
+    if (options.getJobs() > 1) {
+      throw new MojoFailureException(SQL_COMMAND + " cannot restore in parallel");
     }
-    args.add("--add-drop-database");
+    MysqlDbInfo dbInfo = parse(uri);
+
+    Commandline cmdLine = new Commandline();
+    cmdLine.setExecutable(SQL_COMMAND);
+
+    List<String> args = connectionArgs(uri, username);
     args.add(dbInfo.getDbName());
     cmdLine.addArguments(args.toArray(new String[0]));
     cmdLine.addEnvironment(PASSWORD_ENV, password);
 
-    StringStreamConsumer stdout = new StringStreamConsumer();
-    StringStreamConsumer stderr = new StringStreamConsumer();
+    try (InputStream stdin = DumpInput.open(in)) {
+      CommandRunner.run(context, cmdLine, SQL_COMMAND, stdin);
+    } catch (IOException ioException) {
+      throw new MojoExecutionException("cannot read " + in, ioException);
+    }
+  }
 
-    int result;
-    try {
-      result = CommandLineUtils.executeCommandLine(cmdLine, stdout, stderr);
-    } catch (CommandLineException commandLineException) {
-      throw new MojoExecutionException("couldn't execute " + DUMP_COMMAND, commandLineException);
+  /**
+   * The table statistics in information_schema are approximate; changes are detected by their last update time.
+   * Tables whose update time isn't tracked (by InnoDB before 5.7, or since the last restart) are checksummed
+   * instead, which reads them in full.
+   */
+  @Override
+  public String fingerprint(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
+    String dbName = parse(uri).getDbName();
+    try (Timing timing = context.getMetrics().start("fingerprint");
+         Connection conn = context.open(JDBC + uri, username, password)) {
+      try (Statement statement = conn.createStatement()) {
+        // MySQL 8 caches table statistics for a day by default
+        statement.execute("SET SESSION information_schema_stats_expiry = 0");
+      } catch (SQLException sqlException) {
+        // older servers don't cache them
+      }
+
+      Hasher hasher = Hashing.sha256().newHasher();
+      for (String query : FINGERPRINT_QUERIES) {
+        Fingerprints.update(hasher, conn, query, dbName);
+      }
+
+      List<String> untracked = Lists.newArrayList();
+      try (PreparedStatement statement = conn.prepareStatement(
+          "SELECT TABLE_NAME FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'"
+          + " AND UPDATE_TIME IS NULL ORDER BY TABLE_NAME")) {
+        statement.setString(1, dbName);
+        try (ResultSet rs = statement.executeQuery()) {
+          while (rs.next()) {
+            untracked.add(MysqlTableExporter.quote(dbName) + "." + MysqlTableExporter.quote(rs.getString(1)));
+          }
+        }
+      }
+      if (!untracked.isEmpty()) {
+        Fingerprints.update(hasher, conn, "CHECKSUM TABLE " + Joiner.on(", ").join(untracked));
+      }
+      return hasher.hash().toString();
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot fingerprint the db", sqlException);
     }
+  }
 
-    if (result != 0) {
-      throw new MojoExecutionException(DUMP_COMMAND + " returned " + result
-                                       + "\n<stdout>:\n" + stdout.getOutput()
-                                       + "\n<stderr>:\n" + stderr.getOutput());
+  @Override
+  public String schemaFingerprint(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
+    String dbName = parse(uri).getDbName();
+    try (Timing timing = context.getMetrics().start("fingerprint");
+         Connection conn = context.open(JDBC + uri, username, password)) {
+      return Fingerprints.unordered(conn, SCHEMA_FINGERPRINT_QUERIES, dbName);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot fingerprint the schema of the db", sqlException);
+    }
+  }
+
+  /**
+   * Build the host/port/user arguments shared by the MySQL command line tools.
+   * @param uri database URI
+   * @param username database user
+   * @return a mutable list of arguments
+   */
+  private List<String> connectionArgs(URI uri, String username) {
+    List<String> args = Lists.newArrayList("-h", uri.getHost(), "-u", username);
+    if (uri.getPort() != -1) {
+      args.add("-P");
+      args.add(String.valueOf(uri.getPort()));
     }
+    return args;
   }
+
 }
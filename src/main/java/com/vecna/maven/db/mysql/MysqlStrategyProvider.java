@@ -0,0 +1,43 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.mysql;
+
+import com.vecna.maven.db.DbStrategy;
+import com.vecna.maven.db.DbStrategyProvider;
+
+/**
+ * Provides the {@link MysqlStrategy} for MySQL (jdbc:mysql://...).
+ *
+ * @author ogolberg@vecna.com
+ */
+public class MysqlStrategyProvider implements DbStrategyProvider {
+  @Override
+  public String getProtocol() {
+    return "mysql";
+  }
+
+  @Override
+  public String getDriverClass() {
+    return MysqlStrategy.JDBC_DRIVER;
+  }
+
+  @Override
+  public DbStrategy createStrategy() {
+    return new MysqlStrategy();
+  }
+}
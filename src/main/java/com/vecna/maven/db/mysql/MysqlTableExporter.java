@@ -0,0 +1,241 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.mysql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.vecna.maven.db.DumpOptions;
+import com.vecna.maven.db.jdbc.Fingerprints;
+import com.vecna.maven.db.jdbc.RowFilter;
+import com.vecna.maven.db.jdbc.Table;
+import com.vecna.maven.db.jdbc.TableExporter;
+
+/**
+ * Exports MySQL tables through streaming result sets. The data is written in the default format of
+ * <code>SELECT ... INTO OUTFILE</code> / <code>LOAD DATA INFILE</code>: tab separated columns, newline separated
+ * rows, backslash escapes and \N for NULL.
+ *
+ * @author ogolberg@vecna.com
+ */
+class MysqlTableExporter extends TableExporter {
+  private static final byte ESCAPE = '\\';
+  private static final byte[] NULL = {ESCAPE, 'N'};
+
+  /**
+   * Columns and statistics of every table of a database.
+   */
+  private static final String TABLE_FINGERPRINTS = "SELECT t.TABLE_SCHEMA, t.TABLE_NAME, t.ENGINE, t.TABLE_ROWS,"
+      + " t.AUTO_INCREMENT, t.DATA_LENGTH, t.CREATE_TIME, t.UPDATE_TIME, (SELECT GROUP_CONCAT(c.COLUMN_NAME, ' ',"
+      + " c.COLUMN_TYPE ORDER BY c.ORDINAL_POSITION) FROM information_schema.COLUMNS c"
+      + " WHERE c.TABLE_SCHEMA = t.TABLE_SCHEMA AND c.TABLE_NAME = t.TABLE_NAME) FROM information_schema.TABLES t"
+      + " WHERE t.TABLE_SCHEMA = ? AND t.TABLE_TYPE = 'BASE TABLE'";
+
+  /**
+   * Changes are detected by the tables' last update time. Tables whose update time isn't tracked (by InnoDB before
+   * 5.7, or since the last restart) are checksummed, which reads them in full.
+   */
+  @Override
+  protected Map<Table, String> fingerprintTables(Connection conn) throws SQLException {
+    Statement statement = conn.createStatement();
+    try {
+      statement.execute("SET SESSION group_concat_max_len = 1048576");
+      try {
+        // MySQL 8 caches table statistics for a day by default
+        statement.execute("SET SESSION information_schema_stats_expiry = 0");
+      } catch (SQLException sqlException) {
+        // older servers don't cache them
+      }
+    } finally {
+      statement.close();
+    }
+
+    String dbName = conn.getCatalog();
+    Map<Table, String> fingerprints = Fingerprints.perTable(conn, TABLE_FINGERPRINTS, dbName);
+    List<Table> untracked = Lists.newArrayList();
+    PreparedStatement query = conn.prepareStatement("SELECT TABLE_NAME FROM information_schema.TABLES"
+                                                    + " WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'"
+                                                    + " AND UPDATE_TIME IS NULL");
+    try {
+      query.setString(1, dbName);
+      ResultSet rs = query.executeQuery();
+      while (rs.next()) {
+        untracked.add(new Table(dbName, rs.getString(1)));
+      }
+    } finally {
+      query.close();
+    }
+
+    if (!untracked.isEmpty()) {
+      List<String> names = Lists.newArrayList();
+      for (Table table : untracked) {
+        names.add(quote(table.getSchema()) + "." + quote(table.getName()));
+      }
+      statement = conn.createStatement();
+      try {
+        // rows come back in the order the tables are listed in
+        ResultSet rs = statement.executeQuery("CHECKSUM TABLE " + Joiner.on(", ").join(names));
+        for (Table table : untracked) {
+          rs.next();
+          fingerprints.put(table, fingerprints.get(table) + ":" + rs.getString(2));
+        }
+      } finally {
+        statement.close();
+      }
+    }
+    return fingerprints;
+  }
+
+  /**
+   * Every connection reads from a consistent snapshot, so the tables are consistent with each other, as with
+   * mysqldump --single-transaction (only InnoDB tables have snapshots). Several connections start their snapshots
+   * while the server is briefly locked against writes with FLUSH TABLES WITH READ LOCK, which requires the RELOAD
+   * privilege, so that the snapshots are the same.
+   */
+  @Override
+  protected void prepare(Connection leader, List<Connection> workers, DumpOptions options) throws SQLException {
+    List<Connection> connections = Lists.newArrayList(leader);
+    connections.addAll(workers);
+    for (Connection conn : connections) {
+      conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+    }
+
+    Statement lock = leader.createStatement();
+    try {
+      if (!workers.isEmpty()) {
+        lock.execute("FLUSH TABLES WITH READ LOCK");
+      }
+      try {
+        for (Connection conn : connections) {
+          Statement statement = conn.createStatement();
+          try {
+            statement.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+          } finally {
+            statement.close();
+          }
+        }
+      } finally {
+        if (!workers.isEmpty()) {
+          lock.execute("UNLOCK TABLES");
+        }
+      }
+    } finally {
+      lock.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void exportTable(Connection conn, Table table, RowFilter filter, OutputStream out)
+      throws SQLException, IOException {
+    Statement statement = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    try {
+      // tells Connector/J to stream the rows instead of reading the whole result set into memory
+      statement.setFetchSize(Integer.MIN_VALUE);
+      String query = "SELECT * FROM " + quote(table.getSchema()) + "." + quote(table.getName());
+      ResultSet rs = statement.executeQuery(filter == null ? query : query + " WHERE " + where(filter));
+      int columns = rs.getMetaData().getColumnCount();
+      while (rs.next()) {
+        for (int i = 1; i <= columns; i++) {
+          if (i > 1) {
+            out.write('\t');
+          }
+          writeValue(rs.getBytes(i), out);
+        }
+        out.write('\n');
+      }
+      rs.close();
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * MySQL has no TABLESAMPLE, so samples are drawn with RAND(), which reads the whole table. Limits are appended to
+   * the condition, which works both in queries and with mysqldump --where.
+   * @param filter filter of the rows to select
+   * @return WHERE clause (without the WHERE keyword) selecting the rows
+   */
+  static String where(RowFilter filter) {
+    if (filter.getLimit() != null) {
+      return "1 LIMIT " + filter.getLimit();
+    } else if (filter.getSamplePercent() != null) {
+      return "RAND() < " + filter.getSamplePercent() / 100;
+    } else {
+      return filter.getCondition();
+    }
+  }
+
+  /**
+   * Write an escaped column value.
+   * @param value raw value, or null
+   * @param out stream to write to
+   * @throws IOException if the value cannot be written
+   */
+  static void writeValue(byte[] value, OutputStream out) throws IOException {
+    if (value == null) {
+      out.write(NULL);
+      return;
+    }
+    for (byte b : value) {
+      switch (b) {
+        case ESCAPE:
+          out.write(ESCAPE);
+          out.write(ESCAPE);
+          break;
+        case '\t':
+          out.write(ESCAPE);
+          out.write('t');
+          break;
+        case '\n':
+          out.write(ESCAPE);
+          out.write('n');
+          break;
+        case '\r':
+          out.write(ESCAPE);
+          out.write('r');
+          break;
+        case 0:
+          out.write(ESCAPE);
+          out.write('0');
+          break;
+        default:
+          out.write(b);
+      }
+    }
+  }
+
+  /**
+   * @param identifier identifier
+   * @return quoted identifier
+   */
+  static String quote(String identifier) {
+    return "`" + identifier.replace("`", "``") + "`";
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.mysql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.vecna.maven.db.jdbc.Table;
+import com.vecna.maven.db.jdbc.TableImporter;
+
+/**
+ * Loads MySQL tables exported by {@link MysqlTableExporter} with <code>LOAD DATA LOCAL INFILE</code>, streaming the
+ * data from the plugin (the server must allow local_infile). Tables are loaded into the target database, whatever
+ * database they were exported from.
+ *
+ * @author ogolberg@vecna.com
+ */
+class MysqlTableImporter extends TableImporter {
+  /**
+   * Foreign keys are not checked while loading, so that tables that reference each other can be loaded.
+   */
+  @Override
+  protected void prepare(Connection conn) throws SQLException {
+    Statement statement = conn.createStatement();
+    try {
+      statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected Table resolve(Connection conn, Table table) throws SQLException {
+    return new Table(conn.getCatalog(), table.getName());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected List<Table> listReferencedTables(Connection conn, Table table) throws SQLException {
+    List<Table> referenced = Lists.newArrayList();
+    ResultSet rs = conn.getMetaData().getImportedKeys(table.getSchema(), null, table.getName());
+    try {
+      while (rs.next()) {
+        referenced.add(new Table(rs.getString("PKTABLE_CAT"), rs.getString("PKTABLE_NAME")));
+      }
+    } finally {
+      rs.close();
+    }
+    return referenced;
+  }
+
+  /**
+   * The tables are emptied with DELETE rather than TRUNCATE, which would commit the import's transaction.
+   */
+  @Override
+  protected void truncate(Connection conn, List<Table> tables) throws SQLException {
+    Statement statement = conn.createStatement();
+    try {
+      for (Table table : tables) {
+        statement.execute("DELETE FROM " + qualify(table));
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void importTable(Connection conn, Table table, InputStream in) throws SQLException, IOException {
+    Statement statement = conn.createStatement();
+    try {
+      // Connector/J sends the stream when the server asks for the (made up) file
+      statement.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(in);
+      statement.execute("LOAD DATA LOCAL INFILE 'stream' INTO TABLE " + qualify(table));
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * @param table table
+   * @return quoted, database-qualified name of the table
+   */
+  private static String qualify(Table table) {
+    return MysqlTableExporter.quote(table.getSchema()) + "." + MysqlTableExporter.quote(table.getName());
+  }
+}
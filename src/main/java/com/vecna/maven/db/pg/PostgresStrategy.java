@@ -17,21 +17,56 @@
 package com.vecna.maven.db.pg;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.maven.plugin.MojoExecutionException;
-import org.codehaus.plexus.util.cli.CommandLineException;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
-import org.codehaus.plexus.util.cli.CommandLineUtils.StringStreamConsumer;
+import org.apache.maven.plugin.MojoFailureException;
 import org.codehaus.plexus.util.cli.Commandline;
+import org.postgresql.PGConnection;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.vecna.maven.db.Compressor;
+import com.vecna.maven.db.DbContext;
 import com.vecna.maven.db.DbStrategy;
+import com.vecna.maven.db.DumpEngine;
+import com.vecna.maven.db.DumpFormat;
+import com.vecna.maven.db.DumpOptions;
+import com.vecna.maven.db.ExportedSnapshots;
+import com.vecna.maven.db.RestoreOptions;
+import com.vecna.maven.db.cli.CommandRunner;
+import com.vecna.maven.db.io.DumpInput;
+import com.vecna.maven.db.io.Throttle;
+import com.vecna.maven.db.jdbc.ConnectionLease;
+import com.vecna.maven.db.jdbc.Fingerprints;
+import com.vecna.maven.db.jdbc.RetryPolicy;
+import com.vecna.maven.db.jdbc.RowFilter;
+import com.vecna.maven.db.jdbc.Table;
+import com.vecna.maven.db.jdbc.TableImporter;
+import com.vecna.maven.db.jdbc.TableSubset;
+import com.vecna.maven.db.metrics.Timing;
 
 /**
  * PostgreSQL strategy for creating/dropping/dumping databases.
@@ -41,8 +76,151 @@ public class PostgresStrategy implements DbStrategy {
   private static final String CONNECT_DB = "postgres";
   private static final String JDBC = "jdbc:";
   private static final String DUMP_COMMAND = "pg_dump";
+  private static final String RESTORE_COMMAND = "pg_restore";
+  private static final String SQL_COMMAND = "psql";
   private static final String PASSWORD_ENV = "PGPASSWORD";
-  private static final String JDBC_DRIVER = "org.postgresql.Driver";
+  static final String JDBC_DRIVER = "org.postgresql.Driver";
+
+  /**
+   * SQL state reported when the template database has other sessions connected to it.
+   */
+  private static final String OBJECT_IN_USE = "55006";
+
+  /**
+   * SQL state reported when the user lacks a privilege.
+   */
+  private static final String INSUFFICIENT_PRIVILEGE = "42501";
+
+  /**
+   * User databases and their creation time. PostgreSQL doesn't record when a database was created, so the
+   * modification time of its PG_VERSION file, which is written once on creation, is used instead. Reading it requires
+   * superuser (or, since 11, pg_read_server_files) privileges.
+   */
+  private static final String LIST_DBS_WITH_TIMES = "select datname, (pg_stat_file('base/' || oid || '/PG_VERSION'))"
+      + ".modification from pg_database where not datistemplate and datallowconn and datname <> '" + CONNECT_DB + "'"
+      + " order by datname";
+
+  /**
+   * Logged base tables of a database.
+   */
+  private static final String LOGGED_TABLES = "select quote_ident(n.nspname) || '.' || quote_ident(c.relname)"
+      + " from pg_class c join pg_namespace n on n.oid = c.relnamespace where c.relkind = 'r'"
+      + " and c.relpersistence = 'p' and n.nspname not in ('pg_catalog', 'information_schema')"
+      + " and n.nspname not like 'pg_toast%' order by 1";
+
+  /**
+   * User databases, for users who can't read the creation times.
+   */
+  private static final String LIST_DBS = "select datname, null from pg_database where not datistemplate"
+      + " and datallowconn and datname <> '" + CONNECT_DB + "' order by datname";
+
+  /**
+   * Values of the pg_dump --format option.
+   */
+  private static final Map<DumpFormat, String> FORMATS = ImmutableMap.of(DumpFormat.PLAIN, "p",
+                                                                         DumpFormat.CUSTOM, "c",
+                                                                         DumpFormat.DIRECTORY, "d",
+                                                                         DumpFormat.TAR, "t");
+
+  /**
+   * Number of times to export the snapshots of several databases until they agree on the committed transactions.
+   */
+  private static final int SNAPSHOT_ATTEMPTS = 10;
+
+  /**
+   * Header of custom format archives.
+   */
+  private static final byte[] ARCHIVE_MAGIC = "PGDMP".getBytes(Charsets.US_ASCII);
+
+  /**
+   * Magic string of (POSIX) tar archives and its offset.
+   */
+  private static final byte[] TAR_MAGIC = "ustar".getBytes(Charsets.US_ASCII);
+  private static final int TAR_MAGIC_OFFSET = 257;
+
+  /**
+   * Schemas that don't belong to the user.
+   */
+  private static final String SYSTEM_SCHEMAS = "('pg_catalog', 'information_schema')";
+
+  /**
+   * Schemas of the temporary and toast tables.
+   */
+  private static final String SYSTEM_SCHEMA_PREFIXES = " and n.nspname not like 'pg\\_toast%' and n.nspname not like"
+      + " 'pg\\_temp\\_%'";
+
+  /**
+   * Catalog queries that make up the fingerprint of a database: the definitions of columns, indexes, constraints,
+   * views, functions, types and triggers, privileges, ownership and comments, and for every table its storage file
+   * (which TRUNCATE replaces) and row modification counters.
+   */
+  private static final List<String> FINGERPRINT_QUERIES = ImmutableList.of(
+      "select table_schema, table_name, column_name, data_type, is_nullable, column_default"
+      + " from information_schema.columns where table_schema not in " + SYSTEM_SCHEMAS
+      + " order by table_schema, table_name, ordinal_position",
+      "select schemaname, tablename, indexname, indexdef from pg_indexes where schemaname not in " + SYSTEM_SCHEMAS
+      + " order by schemaname, tablename, indexname",
+      "select n.nspname, c.conrelid::regclass::text, c.conname, pg_get_constraintdef(c.oid)"
+      + " from pg_constraint c join pg_namespace n on n.oid = c.connamespace where n.nspname not in " + SYSTEM_SCHEMAS
+      + " order by 1, 2, 3",
+      "select schemaname, viewname, definition from pg_views where schemaname not in " + SYSTEM_SCHEMAS
+      + " order by schemaname, viewname",
+      "select n.nspname, p.proname, pg_get_function_identity_arguments(p.oid), md5(p.prosrc)"
+      + " from pg_proc p join pg_namespace n on n.oid = p.pronamespace where n.nspname not in " + SYSTEM_SCHEMAS
+      + " order by 1, 2, 3",
+      "select n.nspname, t.typname, t.typtype, format_type(t.typbasetype, t.typtypmod), (select string_agg(e.enumlabel,"
+      + " ', ' order by e.enumsortorder) from pg_enum e where e.enumtypid = t.oid) from pg_type t join pg_namespace n"
+      + " on n.oid = t.typnamespace where n.nspname not in " + SYSTEM_SCHEMAS + SYSTEM_SCHEMA_PREFIXES
+      + " order by 1, 2",
+      "select c.oid::regclass::text, t.tgname, pg_get_triggerdef(t.oid), t.tgenabled from pg_trigger t"
+      + " join pg_class c on c.oid = t.tgrelid join pg_namespace n on n.oid = c.relnamespace where not t.tgisinternal"
+      + " and n.nspname not in " + SYSTEM_SCHEMAS + " order by 1, 2",
+      "select n.nspname, pg_get_userbyid(n.nspowner), n.nspacl::text from pg_namespace n where n.nspname not in "
+      + SYSTEM_SCHEMAS + SYSTEM_SCHEMA_PREFIXES + " order by 1",
+      "select n.nspname, c.relname, pg_get_userbyid(c.relowner), c.relacl::text from pg_class c join pg_namespace n"
+      + " on n.oid = c.relnamespace where n.nspname not in " + SYSTEM_SCHEMAS + SYSTEM_SCHEMA_PREFIXES
+      + " order by 1, 2",
+      "select n.nspname, p.proname, pg_get_function_identity_arguments(p.oid), pg_get_userbyid(p.proowner),"
+      + " p.proacl::text from pg_proc p join pg_namespace n on n.oid = p.pronamespace where n.nspname not in "
+      + SYSTEM_SCHEMAS + " order by 1, 2, 3",
+      // objects created by the user have ids past the ones reserved for the system
+      "select classoid::regclass::text, objoid, objsubid, description from pg_description where objoid >= 16384"
+      + " order by 1, 2, 3",
+      "select s.schemaname, s.relname, c.relfilenode, s.n_tup_ins, s.n_tup_upd, s.n_tup_del"
+      + " from pg_stat_user_tables s join pg_class c on c.oid = s.relid order by s.schemaname, s.relname");
+
+  /**
+   * Sequences of a database; advancing a sequence doesn't write anything the other fingerprint queries see.
+   */
+  private static final String LIST_SEQUENCES = "select quote_ident(n.nspname) || '.' || quote_ident(c.relname)"
+      + " from pg_class c join pg_namespace n on n.oid = c.relnamespace where c.relkind = 'S' order by 1";
+
+  /**
+   * First version whose statistics counters are kept in shared memory rather than sent to the statistics collector.
+   */
+  private static final int SHARED_STATISTICS_VERSION = 15;
+
+  /**
+   * Catalog queries that make up the schema fingerprint of a database: its tables (and views), columns, indexes and
+   * constraints. Object ids and the order of the rows don't matter.
+   */
+  private static final List<String> SCHEMA_FINGERPRINT_QUERIES = ImmutableList.of(
+      "select n.nspname, c.relname, c.relkind from pg_class c join pg_namespace n on n.oid = c.relnamespace"
+      + " where c.relkind in ('r', 'v', 'm', 'f', 'p') and n.nspname not in " + SYSTEM_SCHEMAS
+      + SYSTEM_SCHEMA_PREFIXES,
+      "select n.nspname, c.relname, a.attname, format_type(a.atttypid, a.atttypmod), a.attnotnull,"
+      + " pg_get_expr(d.adbin, d.adrelid) from pg_attribute a join pg_class c on c.oid = a.attrelid"
+      + " join pg_namespace n on n.oid = c.relnamespace"
+      + " left join pg_attrdef d on d.adrelid = a.attrelid and d.adnum = a.attnum"
+      + " where a.attnum > 0 and not a.attisdropped and c.relkind in ('r', 'v', 'm', 'f', 'p')"
+      + " and n.nspname not in " + SYSTEM_SCHEMAS + SYSTEM_SCHEMA_PREFIXES,
+      "select n.nspname, c.relname, i.relname, pg_get_indexdef(i.oid) from pg_index x"
+      + " join pg_class i on i.oid = x.indexrelid join pg_class c on c.oid = x.indrelid"
+      + " join pg_namespace n on n.oid = c.relnamespace where n.nspname not in " + SYSTEM_SCHEMAS
+      + SYSTEM_SCHEMA_PREFIXES,
+      "select n.nspname, c.relname, k.conname, k.contype, pg_get_constraintdef(k.oid) from pg_constraint k"
+      + " join pg_class c on c.oid = k.conrelid join pg_namespace n on n.oid = c.relnamespace"
+      + " where n.nspname not in " + SYSTEM_SCHEMAS + SYSTEM_SCHEMA_PREFIXES);
 
   /**
    * Create an instance of the PostgreSQL strategy.
@@ -58,18 +236,46 @@ public class PostgresStrategy implements DbStrategy {
 
   /**
    * Run a SQL statement.
+   * @param context execution context
    * @param url jdbc url
    * @param username jdbc username
    * @param password jdbc password
    * @param sql sql statement to execute
    * @throws SQLException if the statement fails to execute
    */
-  private void execute(String url, String username, String password, String sql) throws SQLException {
-    try (Connection conn = DriverManager.getConnection(url, username, password)) {
-      conn.createStatement().execute(sql);
+  private void execute(DbContext context, String url, String username, String password, String sql)
+      throws SQLException {
+    try (ConnectionLease lease = context.connect(url, username, password)) {
+      execute(context, lease.getConnection(), sql);
     }
   }
 
+  /**
+   * Run a SQL statement on an existing connection. Statements rolled back because of a conflict with another
+   * transaction are retried according to the context's retry policy. The statement is cancelled once it runs longer
+   * than the statement timeout, and fails once it waits for a lock longer than the lock timeout.
+   * @param context execution context
+   * @param conn connection
+   * @param sql sql statement to execute
+   * @throws SQLException if the statement fails to execute
+   */
+  private void execute(final DbContext context, final Connection conn, final String sql) throws SQLException {
+    context.getLog().debug("executing " + sql);
+    context.getRetryPolicy().call(context.getLog(), sql, RetryPolicy.ErrorClass.CONFLICT,
+                                  new RetryPolicy.Action<Void>() {
+      @Override
+      public Void run() throws SQLException {
+        try (Timing timing = context.getMetrics().start("execute"); Statement statement = conn.createStatement()) {
+          // a session setting, since create/drop database can't run in a transaction; 0 disables the timeout
+          statement.execute("set lock_timeout = " + context.getTimeouts().getLockMillis());
+          context.getTimeouts().apply(statement);
+          statement.execute(sql);
+        }
+        return null;
+      }
+    });
+  }
+
   /**
    * Parse {@link PostgresDbInfo} out of a jdbc URL.
    * @param uri {@link URI} representation of the jdbc URL
@@ -88,56 +294,721 @@ public class PostgresStrategy implements DbStrategy {
     return new PostgresDbInfo(uri.getPath().replaceAll("^/", ""), JDBC + connectUri.toString());
   }
 
+  /**
+   * Connects to the admin database, which exists as soon as the server is up.
+   */
+  @Override
+  public void awaitServer(DbContext context, URI uri, String username, String password, long waitMillis)
+      throws MojoExecutionException {
+    PostgresDbInfo dbInfo = parse(uri);
+    try {
+      context.awaitConnection(dbInfo.getConnectUrl(), username, password, waitMillis);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("the server did not accept connections within " + waitMillis + " ms",
+                                       sqlException);
+    }
+  }
+
   @Override
-  public void createDb(URI uri, String username, String password) throws MojoExecutionException {
+  public void createDb(DbContext context, URI uri, String username, String password) throws MojoExecutionException {
     PostgresDbInfo dbInfo = parse(uri);
     try {
-      execute(dbInfo.getConnectUrl(), username, password, "create database \"" + dbInfo.getDbName() + "\"");
+      execute(context, dbInfo.getConnectUrl(), username, password, "create database \"" + dbInfo.getDbName() + "\"");
     } catch (SQLException sqlException) {
       throw new MojoExecutionException("cannot create the db", sqlException);
     }
   }
 
   @Override
-  public void dropDb(URI uri, String username, String password) throws MojoExecutionException {
+  public void cloneDb(DbContext context, URI uri, String username, String password, String template)
+      throws MojoExecutionException {
     PostgresDbInfo dbInfo = parse(uri);
+    try (ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password)) {
+      copyDb(context, lease.getConnection(), template, dbInfo.getDbName());
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot create the db from template " + template, sqlException);
+    }
+  }
+
+  /**
+   * Create a database as a copy of another one.
+   * @param context execution context
+   * @param conn admin connection
+   * @param template name of the database to copy
+   * @param dbName name of the database to create
+   * @throws SQLException if the database cannot be created
+   */
+  private void copyDb(DbContext context, Connection conn, String template, String dbName) throws SQLException {
+    // the template can't be copied while anyone is connected to it
+    executeEvictingIdleSessions(context, conn, "create database \"" + dbName + "\" template \"" + template + "\"",
+                                template);
+  }
+
+  /**
+   * Run a statement that requires a database to have no other sessions connected to it. If other sessions are
+   * connected, the idle ones are terminated and the statement is retried once.
+   * @param context execution context
+   * @param conn admin connection
+   * @param sql statement to run
+   * @param dbName name of the database
+   * @throws SQLException if the statement fails
+   */
+  private void executeEvictingIdleSessions(DbContext context, Connection conn, String sql, String dbName)
+      throws SQLException {
     try {
-      execute(dbInfo.getConnectUrl(), username, password, "drop database if exists \"" + dbInfo.getDbName() + "\"");
+      execute(context, conn, sql);
+    } catch (SQLException sqlException) {
+      if (!OBJECT_IN_USE.equals(sqlException.getSQLState())) {
+        throw sqlException;
+      }
+      terminateIdleSessions(conn, dbName);
+      execute(context, conn, sql);
+    }
+  }
+
+  @Override
+  public void renameDb(DbContext context, URI uri, String username, String password, String newName)
+      throws MojoExecutionException {
+    PostgresDbInfo dbInfo = parse(uri);
+    try (ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password)) {
+      executeEvictingIdleSessions(context, lease.getConnection(), "alter database \"" + dbInfo.getDbName()
+                                  + "\" rename to \"" + newName + "\"", dbInfo.getDbName());
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot rename the db to " + newName, sqlException);
+    }
+  }
+
+  /**
+   * The snapshot is a copy of the database, made with the database as the template.
+   */
+  @Override
+  public void snapshotDb(DbContext context, URI uri, String username, String password, String snapshot)
+      throws MojoExecutionException {
+    PostgresDbInfo dbInfo = parse(uri);
+    try (ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password)) {
+      execute(context, lease.getConnection(), "drop database if exists \"" + snapshot + "\"");
+      copyDb(context, lease.getConnection(), dbInfo.getDbName(), snapshot);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot snapshot the db", sqlException);
+    }
+  }
+
+  /**
+   * The database is dropped (after terminating its idle sessions) and re-created with the snapshot as the template.
+   */
+  @Override
+  public void resetDb(DbContext context, URI uri, String username, String password, String snapshot)
+      throws MojoExecutionException {
+    PostgresDbInfo dbInfo = parse(uri);
+    try (ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password)) {
+      executeEvictingIdleSessions(context, lease.getConnection(),
+                                  "drop database if exists \"" + dbInfo.getDbName() + "\"", dbInfo.getDbName());
+      copyDb(context, lease.getConnection(), snapshot, dbInfo.getDbName());
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot reset the db to snapshot " + snapshot, sqlException);
+    }
+  }
+
+  /**
+   * Terminate idle sessions connected to a database.
+   * @param conn connection to run the termination query on
+   * @param dbName name of the database
+   * @throws SQLException if the sessions cannot be terminated
+   */
+  private void terminateIdleSessions(Connection conn, String dbName) throws SQLException {
+    try (PreparedStatement statement = conn.prepareStatement("select pg_terminate_backend(pid)"
+                                                             + " from pg_stat_activity where datname = ?"
+                                                             + " and pid <> pg_backend_pid() and state = 'idle'")) {
+      statement.setString(1, dbName);
+      statement.execute();
+    }
+  }
+
+  @Override
+  public void dropDb(DbContext context, URI uri, String username, String password) throws MojoExecutionException {
+    PostgresDbInfo dbInfo = parse(uri);
+    try {
+      execute(context, dbInfo.getConnectUrl(), username, password,
+              "drop database if exists \"" + dbInfo.getDbName() + "\"");
     } catch (SQLException sqlException) {
       throw new MojoExecutionException("cannot drop the db", sqlException);
     }
   }
 
+  /**
+   * The database defaults to synchronous_commit = off, so commits don't wait for the WAL to be flushed; a crash can
+   * lose the latest commits, but can't corrupt the database. Unlogged tables (PostgreSQL 9.5 and later) don't write
+   * WAL at all and are emptied after a crash.
+   */
+  @Override
+  public void relaxDurability(DbContext context, URI uri, String username, String password, boolean unlogged)
+      throws MojoExecutionException {
+    PostgresDbInfo dbInfo = parse(uri);
+    try {
+      execute(context, dbInfo.getConnectUrl(), username, password,
+              "alter database \"" + dbInfo.getDbName() + "\" set synchronous_commit = off");
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot relax the durability of the db", sqlException);
+    }
+
+    if (unlogged) {
+      try (Connection conn = context.open(JDBC + uri, username, password)) {
+        List<String> tables = Lists.newArrayList();
+        try (Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(LOGGED_TABLES)) {
+          while (rs.next()) {
+            tables.add(rs.getString(1));
+          }
+        }
+        // logged tables can't reference unlogged ones, so a table can only be altered once the tables referencing
+        // it are; rather than sorting the tables by their foreign keys, the ones that fail are retried until all
+        // succeed or none does
+        while (!tables.isEmpty()) {
+          List<String> failed = Lists.newArrayList();
+          SQLException failure = null;
+          for (String table : tables) {
+            try {
+              execute(context, conn, "alter table " + table + " set unlogged");
+            } catch (SQLException sqlException) {
+              failed.add(table);
+              failure = sqlException;
+            }
+          }
+          if (failed.size() == tables.size()) {
+            throw failure;
+          }
+          tables = failed;
+        }
+      } catch (SQLException sqlException) {
+        throw new MojoExecutionException("cannot make the tables of the db unlogged", sqlException);
+      }
+    }
+  }
+
   @Override
-  public void dumpDb(URI uri, String username, String password, File out) throws MojoExecutionException {
+  public Map<String, Date> listDbs(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
     PostgresDbInfo dbInfo = parse(uri);
+    try (ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password)) {
+      try {
+        return listDbs(lease.getConnection(), LIST_DBS_WITH_TIMES);
+      } catch (SQLException sqlException) {
+        if (!INSUFFICIENT_PRIVILEGE.equals(sqlException.getSQLState())) {
+          throw sqlException;
+        }
+        context.getLog().debug("cannot read the creation times of the databases: " + sqlException.getMessage());
+        return listDbs(lease.getConnection(), LIST_DBS);
+      }
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot list the dbs", sqlException);
+    }
+  }
 
+  /**
+   * @param conn admin connection
+   * @param sql query returning database names and creation times
+   * @return names of the databases mapped to their creation times
+   * @throws SQLException if the databases cannot be listed
+   */
+  private Map<String, Date> listDbs(Connection conn, String sql) throws SQLException {
+    Map<String, Date> dbs = Maps.newLinkedHashMap();
+    try (Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+      while (rs.next()) {
+        dbs.put(rs.getString(1), rs.getTimestamp(2));
+      }
+    }
+    return dbs;
+  }
+
+  @Override
+  public int terminateSessions(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
+    PostgresDbInfo dbInfo = parse(uri);
+    try (ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password);
+         PreparedStatement statement = lease.getConnection().prepareStatement(
+             "select sum(case when pg_terminate_backend(pid) then 1 else 0 end) from pg_stat_activity"
+             + " where datname = ? and pid <> pg_backend_pid()")) {
+      statement.setString(1, dbInfo.getDbName());
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot terminate the sessions of the db", sqlException);
+    }
+  }
+
+  /**
+   * A snapshot can only be imported into the database it was exported from, so one snapshot is exported per
+   * database, in quick succession. The snapshots are consistent with each other if no transaction committed anywhere
+   * on the server in between, which is checked by comparing their transaction states (txid_current_snapshot());
+   * otherwise the snapshots are exported again, up to {@value #SNAPSHOT_ATTEMPTS} times, after which a warning is
+   * logged and the last snapshots are used anyway.
+   */
+  @Override
+  public ExportedSnapshots exportSnapshots(DbContext context, List<URI> uris, String username, String password)
+      throws MojoExecutionException {
+    List<Connection> sessions = Lists.newArrayList();
+    try {
+      for (URI uri : uris) {
+        Connection session = context.open(JDBC + uri, username, password);
+        sessions.add(session);
+        session.setAutoCommit(false);
+        session.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        session.setReadOnly(true);
+      }
+
+      for (int attempt = 1; ; attempt++) {
+        Map<URI, String> snapshots = Maps.newHashMap();
+        Set<String> states = Sets.newHashSet();
+        for (int i = 0; i < uris.size(); i++) {
+          try (Statement statement = sessions.get(i).createStatement();
+               ResultSet rs = statement.executeQuery("select pg_export_snapshot(), txid_current_snapshot()::text")) {
+            rs.next();
+            snapshots.put(uris.get(i), rs.getString(1));
+            states.add(rs.getString(2));
+          }
+        }
+
+        if (states.size() == 1 || attempt == SNAPSHOT_ATTEMPTS) {
+          if (states.size() > 1) {
+            context.getLog().warn("transactions kept committing while the snapshots were exported, the dumps may "
+                                  + "not be consistent with each other");
+          }
+          return new ExportedSnapshots(snapshots, sessions);
+        }
+        for (Connection session : sessions) {
+          session.rollback();
+        }
+      }
+    } catch (SQLException sqlException) {
+      new ExportedSnapshots(Maps.<URI, String>newHashMap(), sessions).close();
+      throw new MojoExecutionException("cannot export the snapshots of the dbs", sqlException);
+    }
+  }
+
+  @Override
+  public void dumpDb(DbContext context, URI uri, String username, String password, File out,
+                     DumpOptions options)
+      throws MojoExecutionException {
+    Throttle throttle = new Throttle(context.getLog(), options.getMaxBytesPerSecond(),
+                                     replicaLagProbe(context, uri, username, password), options.getMaxReplicaLag());
+    if (options.getEngine() == DumpEngine.JDBC) {
+      new PostgresTableExporter().export(context, JDBC + uri, username, password, out, options, throttle);
+      return;
+    }
+    PostgresDbInfo dbInfo = parse(uri);
+    TableSubset subset = options.getSubset();
+    boolean streamed = options.isStreamed() || !subset.getRowFilters().isEmpty();
+
+    List<String> args = connectionArgs(uri, username);
+    args.add("-F");
+    args.add(FORMATS.get(options.getFormat()));
+    if (options.getJobs() > 1) {
+      args.add("-j");
+      args.add(String.valueOf(options.getJobs()));
+    }
+    if (!streamed) {
+      args.add("-f");
+      args.add(out.getPath());
+    }
+    if (options.getSnapshot() != null) {
+      args.add("--snapshot=" + options.getSnapshot());
+    }
+    if (options.getCompressor() == Compressor.NONE) {
+      if (options.getCompression() != null) {
+        args.add("-Z");
+        args.add(String.valueOf(options.getCompression()));
+      }
+    } else if (options.getFormat() == DumpFormat.CUSTOM) {
+      // the plugin compresses the stream, so don't compress it twice
+      args.add("-Z");
+      args.add("0");
+    }
+    for (String pattern : subset.getIncludePatterns()) {
+      args.add("-t");
+      args.add(pattern);
+    }
+    for (String pattern : subset.getExcludePatterns()) {
+      args.add("-T");
+      args.add(pattern);
+    }
+    for (String pattern : subset.getSchemaOnlyPatterns()) {
+      args.add("--exclude-table-data=" + pattern);
+    }
+
+    if (!subset.getRowFilters().isEmpty()) {
+      dumpFilteredDb(context, uri, username, password, out, options, throttle, args);
+      return;
+    }
+    Commandline cmdLine = dumpCommand(args, dbInfo.getDbName(), password, options);
+    if (streamed) {
+      CommandRunner.dump(context, cmdLine, DUMP_COMMAND, out, options, throttle);
+    } else {
+      CommandRunner.run(context, cmdLine, DUMP_COMMAND, null);
+    }
+  }
+
+  /**
+   * @param args pg_dump arguments
+   * @param dbName name of the database to dump
+   * @param password password
+   * @param options dump options
+   * @return pg_dump command line
+   */
+  private Commandline dumpCommand(List<String> args, String dbName, String password, DumpOptions options) {
     Commandline cmdLine = new Commandline();
-    cmdLine.setExecutable(DUMP_COMMAND);
+    CommandRunner.setDumpExecutable(cmdLine, DUMP_COMMAND, options);
+    cmdLine.addArguments(args.toArray(new String[0]));
+    cmdLine.addArguments(new String[] {dbName});
+    cmdLine.addEnvironment(PASSWORD_ENV, password);
+    return cmdLine;
+  }
 
-    List<String> args = Lists.newArrayList("-h", uri.getHost(), "-U", username, "-f", out.getPath());
-    if (uri.getPort() != -1) {
-      args.add("-p");
-      args.add(String.valueOf(uri.getPort()));
+  /**
+   * pg_dump can't filter rows, so the tables with row filters are dumped without their data, and the rows that pass
+   * the filters are appended to the data section of the (plain) dump as COPY statements. The schema, the data and
+   * the indexes and constraints are dumped by separate pg_dump runs, all reading the same snapshot as the filtered
+   * rows.
+   * @param context execution context
+   * @param uri database URI
+   * @param username username
+   * @param password password
+   * @param out output file
+   * @param options dump options
+   * @param throttle throttle to write the dump through
+   * @param args pg_dump arguments, except for the database name
+   * @throws MojoExecutionException if the dump fails
+   */
+  private void dumpFilteredDb(DbContext context, URI uri, String username, String password, File out,
+                              DumpOptions options, Throttle throttle, List<String> args)
+      throws MojoExecutionException {
+    String dbName = parse(uri).getDbName();
+    ExportedSnapshots exported = null;
+    String snapshot = options.getSnapshot();
+    args = Lists.newArrayList(args);
+    if (snapshot == null) {
+      exported = exportSnapshots(context, Collections.singletonList(uri), username, password);
+      snapshot = exported.getSnapshot(uri);
+      args.add("--snapshot=" + snapshot);
+    }
+    try {
+      for (String table : options.getSubset().getRowFilters().keySet()) {
+        args.add("--exclude-table-data=" + table);
+      }
+      List<CommandRunner.DumpPart> parts = Lists.newArrayList();
+      for (String section : ImmutableList.of("pre-data", "data", "post-data")) {
+        List<String> sectionArgs = Lists.newArrayList(args);
+        sectionArgs.add("--section=" + section);
+        parts.add(CommandRunner.toolOutput(context, dumpCommand(sectionArgs, dbName, password, options),
+                                           DUMP_COMMAND));
+        if ("data".equals(section)) {
+          parts.add(filteredRows(context, uri, username, password, snapshot, options.getSubset()));
+        }
+      }
+      CommandRunner.dump(out, parts, options, throttle);
+    } finally {
+      if (exported != null) {
+        exported.close();
+      }
+    }
+  }
+
+  /**
+   * @param context execution context
+   * @param uri database URI
+   * @param username username
+   * @param password password
+   * @param snapshot snapshot to read the rows from
+   * @param subset the tables and rows to dump
+   * @return dump part with COPY statements loading the rows that pass the row filters, for the dumped tables
+   */
+  private CommandRunner.DumpPart filteredRows(final DbContext context, final URI uri, final String username,
+                                              final String password, final String snapshot,
+                                              final TableSubset subset) {
+    return new CommandRunner.DumpPart() {
+      @Override
+      public void write(OutputStream out) throws MojoExecutionException, IOException {
+        try (Connection conn = context.open(JDBC + uri, username, password)) {
+          conn.setAutoCommit(false);
+          conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+          conn.setReadOnly(true);
+          try (Statement statement = conn.createStatement()) {
+            statement.execute("set transaction snapshot '" + snapshot + "'");
+          }
+          // the driver always reads text in UTF-8
+          out.write("SET client_encoding = 'UTF8';\n\n".getBytes(Charsets.UTF_8));
+          for (Map.Entry<String, RowFilter> entry : subset.getRowFilters().entrySet()) {
+            Table table = resolveTable(conn, entry.getKey());
+            if (!subset.includes(table) || subset.isSchemaOnly(table)) {
+              continue;
+            }
+            String name = PostgresTableExporter.quote(table.getSchema()) + "."
+                          + PostgresTableExporter.quote(table.getName());
+            out.write(("COPY " + name + " FROM stdin;\n").getBytes(Charsets.UTF_8));
+            conn.unwrap(PGConnection.class).getCopyAPI()
+                .copyOut("copy (" + PostgresTableExporter.select(name, entry.getValue()) + ") to stdout", out);
+            out.write("\\.\n\n".getBytes(Charsets.UTF_8));
+          }
+        } catch (SQLException sqlException) {
+          throw new MojoExecutionException("cannot dump the filtered rows", sqlException);
+        }
+      }
+    };
+  }
+
+  /**
+   * @param conn connection to the database
+   * @param name table name, optionally qualified, as it would be written in SQL
+   * @return the table, looked up through the search path if the name isn't qualified
+   * @throws SQLException if there is no such table
+   */
+  private Table resolveTable(Connection conn, String name) throws SQLException {
+    try (PreparedStatement statement = conn.prepareStatement("select n.nspname, c.relname from pg_class c"
+                                                             + " join pg_namespace n on n.oid = c.relnamespace"
+                                                             + " where c.oid = cast(cast(? as text) as regclass)")) {
+      statement.setString(1, name);
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        return new Table(rs.getString(1), rs.getString(2));
+      }
     }
+  }
+
+  /**
+   * @param context execution context
+   * @param uri database URI
+   * @param username jdbc username
+   * @param password jdbc password
+   * @return probe returning the number of seconds the server lags behind its primary, or null if it isn't a
+   *         standby; a standby that has replayed everything it received isn't lagging, even if the primary is idle
+   * @throws MojoExecutionException if the URI cannot be parsed
+   */
+  private Callable<Double> replicaLagProbe(final DbContext context, URI uri, final String username,
+                                           final String password) throws MojoExecutionException {
+    final PostgresDbInfo dbInfo = parse(uri);
+    return new Callable<Double>() {
+      @Override
+      public Double call() throws SQLException {
+        try (ConnectionLease lease = context.connect(dbInfo.getConnectUrl(), username, password);
+             Statement statement = lease.getConnection().createStatement()) {
+          // the xlog functions were renamed in PostgreSQL 10
+          boolean wal = lease.getConnection().getMetaData().getDatabaseMajorVersion() >= 10;
+          String received = wal ? "pg_last_wal_receive_lsn()" : "pg_last_xlog_receive_location()";
+          String replayed = wal ? "pg_last_wal_replay_lsn()" : "pg_last_xlog_replay_location()";
+          ResultSet rs = statement.executeQuery("select case when not pg_is_in_recovery() then null when " + received
+                                                + " = " + replayed + " then 0 else extract(epoch from now()"
+                                                + " - pg_last_xact_replay_timestamp()) end");
+          rs.next();
+          double lag = rs.getDouble(1);
+          return rs.wasNull() ? null : lag;
+        }
+      }
+    };
+  }
+
+  /**
+   * Archives (custom, directory and tar formats) are restored with pg_restore, plain SQL dumps are fed to psql.
+   * Compressed dumps are decompressed by the plugin and streamed into the tool. Exports of the jdbc engine are
+   * loaded over JDBC.
+   */
+  @Override
+  public void restoreDb(DbContext context, URI uri, String username, String password, File in,
+                        RestoreOptions options)
+      throws MojoExecutionException, MojoFailureException {
+    if (TableImporter.isExport(in)) {
+      if (options.getJobs() > 1) {
+        throw new MojoFailureException("jdbc exports are restored in a single transaction and cannot be restored "
+                                       + "in parallel");
+      }
+      new PostgresTableImporter().restore(context, JDBC + uri, username, password, in);
+      return;
+    }
+    PostgresDbInfo dbInfo = parse(uri);
+    DumpFormat format = detectFormat(in);
+    boolean compressed;
+    try {
+      compressed = !in.isDirectory() && DumpInput.isCompressed(in);
+    } catch (IOException ioException) {
+      throw new MojoExecutionException("cannot read " + in, ioException);
+    }
+
+    if (options.getJobs() > 1) {
+      if (format != DumpFormat.CUSTOM && format != DumpFormat.DIRECTORY) {
+        throw new MojoFailureException("only custom and directory archives can be restored in parallel, "
+                                       + in + " is in the " + format + " format");
+      }
+      if (compressed) {
+        throw new MojoFailureException("compressed dumps are streamed into " + RESTORE_COMMAND
+                                       + " and cannot be restored in parallel");
+      }
+    }
+
+    Commandline cmdLine = new Commandline();
+    List<String> args = connectionArgs(uri, username);
+    args.add("-d");
     args.add(dbInfo.getDbName());
+
+    String command;
+    if (format == DumpFormat.PLAIN) {
+      command = SQL_COMMAND;
+      args.add("-q");
+      args.add("-v");
+      args.add("ON_ERROR_STOP=1");
+      if (!compressed) {
+        args.add("-f");
+      }
+    } else {
+      command = RESTORE_COMMAND;
+      if (options.getJobs() > 1) {
+        args.add("-j");
+        args.add(String.valueOf(options.getJobs()));
+      }
+    }
+    if (!compressed) {
+      args.add(in.getPath());
+    }
+
+    cmdLine.setExecutable(command);
     cmdLine.addArguments(args.toArray(new String[0]));
     cmdLine.addEnvironment(PASSWORD_ENV, password);
 
-    StringStreamConsumer stdout = new StringStreamConsumer();
-    StringStreamConsumer stderr = new StringStreamConsumer();
+    if (compressed) {
+      try (InputStream stdin = DumpInput.open(in)) {
+        CommandRunner.run(context, cmdLine, command, stdin);
+      } catch (IOException ioException) {
+        throw new MojoExecutionException("cannot read " + in, ioException);
+      }
+    } else {
+      CommandRunner.run(context, cmdLine, command, null);
+    }
+  }
 
-    int result;
-    try {
-      result = CommandLineUtils.executeCommandLine(cmdLine, stdout, stderr);
-    } catch (CommandLineException commandLineException) {
-      throw new MojoExecutionException("couldn't execute " + DUMP_COMMAND, commandLineException);
+  /**
+   * Modification counters can lag behind the writes (see {@link #getWriteWatermark(Connection)}); whenever they might,
+   * the server's write watermark is part of the fingerprint as well.
+   */
+  @Override
+  public String fingerprint(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
+    try (Timing timing = context.getMetrics().start("fingerprint");
+         Connection conn = context.open(JDBC + uri, username, password)) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      for (String query : FINGERPRINT_QUERIES) {
+        Fingerprints.update(hasher, conn, query);
+      }
+      List<String> sequences = Lists.newArrayList();
+      try (Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(LIST_SEQUENCES)) {
+        while (rs.next()) {
+          sequences.add(rs.getString(1));
+        }
+      }
+      for (String sequence : sequences) {
+        Fingerprints.update(hasher, conn, "select last_value, is_called from " + sequence);
+      }
+      String watermark = getWriteWatermark(conn);
+      if (watermark != null) {
+        hasher.putString(watermark, Charsets.UTF_8);
+      }
+      return hasher.hash().toString();
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot fingerprint the db", sqlException);
     }
+  }
+
+  /**
+   * The statistics counters only reflect the writes whose sessions have flushed them: before PostgreSQL 15 the
+   * statistics collector publishes them with a delay and may drop them under load, and sessions that are still
+   * connected may hold on to theirs. When the counters can't be trusted, changes are detected by the server's write
+   * watermark instead: the id of the next transaction to write, which moves whenever anything on the server (in any of
+   * its databases) is written.
+   * @param conn connection to the database
+   * @return the write watermark, or null if the statistics counters reflect every write
+   * @throws SQLException if the queries fail
+   */
+  static String getWriteWatermark(Connection conn) throws SQLException {
+    try (Statement statement = conn.createStatement()) {
+      if (conn.getMetaData().getDatabaseMajorVersion() >= SHARED_STATISTICS_VERSION) {
+        // sessions flush their counters when they disconnect
+        try (ResultSet rs = statement.executeQuery("select count(*) from pg_stat_activity where datname ="
+                                                   + " current_database() and pid <> pg_backend_pid()")) {
+          rs.next();
+          if (rs.getInt(1) == 0) {
+            return null;
+          }
+        }
+      }
+      try (ResultSet rs = statement.executeQuery("select txid_snapshot_xmax(txid_current_snapshot())")) {
+        rs.next();
+        return rs.getString(1);
+      }
+    }
+  }
 
-    if (result != 0) {
-      throw new MojoExecutionException(DUMP_COMMAND + " returned " + result
-                                       + "\n<stdout>:\n" + stdout.getOutput()
-                                       + "\n<stderr>:\n" + stderr.getOutput());
+  @Override
+  public String schemaFingerprint(DbContext context, URI uri, String username, String password)
+      throws MojoExecutionException {
+    try (Timing timing = context.getMetrics().start("fingerprint");
+         Connection conn = context.open(JDBC + uri, username, password)) {
+      return Fingerprints.unordered(conn, SCHEMA_FINGERPRINT_QUERIES);
+    } catch (SQLException sqlException) {
+      throw new MojoExecutionException("cannot fingerprint the schema of the db", sqlException);
+    }
+  }
+
+  /**
+   * Figure out the format of a dump by looking at its (uncompressed) header.
+   * @param in dump file or directory
+   * @return format of the dump
+   * @throws MojoExecutionException if the dump cannot be read
+   */
+  protected DumpFormat detectFormat(File in) throws MojoExecutionException {
+    if (in.isDirectory()) {
+      return DumpFormat.DIRECTORY;
+    }
+    byte[] header = new byte[TAR_MAGIC_OFFSET + TAR_MAGIC.length];
+    int read;
+    try (InputStream stream = DumpInput.open(in)) {
+      read = ByteStreams.read(stream, header, 0, header.length);
+    } catch (IOException ioException) {
+      throw new MojoExecutionException("cannot read " + in, ioException);
+    }
+    if (read >= ARCHIVE_MAGIC.length && startsWith(header, 0, ARCHIVE_MAGIC)) {
+      return DumpFormat.CUSTOM;
+    } else if (read == header.length && startsWith(header, TAR_MAGIC_OFFSET, TAR_MAGIC)) {
+      return DumpFormat.TAR;
+    } else {
+      return DumpFormat.PLAIN;
     }
   }
+
+  /**
+   * @param bytes bytes to look at
+   * @param offset where to start looking
+   * @param prefix expected bytes
+   * @return whether the bytes contain the prefix at the given offset
+   */
+  private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Build the host/port/user arguments shared by the PostgreSQL command line tools.
+   * @param uri database URI
+   * @param username database user
+   * @return a mutable list of arguments
+   */
+  private List<String> connectionArgs(URI uri, String username) {
+    List<String> args = Lists.newArrayList("-h", uri.getHost(), "-U", username);
+    if (uri.getPort() != -1) {
+      args.add("-p");
+      args.add(String.valueOf(uri.getPort()));
+    }
+    return args;
+  }
+
 }
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.pg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.postgresql.PGConnection;
+
+import com.vecna.maven.db.DumpOptions;
+import com.vecna.maven.db.jdbc.Fingerprints;
+import com.vecna.maven.db.jdbc.RowFilter;
+import com.vecna.maven.db.jdbc.Table;
+import com.vecna.maven.db.jdbc.TableExporter;
+
+/**
+ * Exports PostgreSQL tables with COPY ... TO STDOUT (text format). All connections share a single exported snapshot,
+ * so the tables are consistent with each other even though they are read concurrently.
+ *
+ * @author ogolberg@vecna.com
+ */
+class PostgresTableExporter extends TableExporter {
+  /**
+   * Columns, storage file (which TRUNCATE replaces) and row modification counters of every user table.
+   */
+  private static final String TABLE_FINGERPRINTS = "select s.schemaname, s.relname, c.relfilenode, s.n_tup_ins,"
+      + " s.n_tup_upd, s.n_tup_del, (select string_agg(a.attname || ' ' || format_type(a.atttypid, a.atttypmod), ', '"
+      + " order by a.attnum) from pg_attribute a where a.attrelid = c.oid and a.attnum > 0 and not a.attisdropped)"
+      + " from pg_stat_user_tables s join pg_class c on c.oid = s.relid";
+
+  /**
+   * Row modification counters can lag behind the writes (see {@link PostgresStrategy#getWriteWatermark(Connection)});
+   * whenever they might, every fingerprint includes the server's write watermark as well, so all tables are exported
+   * again once anything has been written.
+   */
+  @Override
+  protected Map<Table, String> fingerprintTables(Connection conn) throws SQLException {
+    Map<Table, String> fingerprints = Fingerprints.perTable(conn, TABLE_FINGERPRINTS);
+    String watermark = PostgresStrategy.getWriteWatermark(conn);
+    if (watermark != null) {
+      for (Map.Entry<Table, String> entry : fingerprints.entrySet()) {
+        entry.setValue(entry.getValue() + "@" + watermark);
+      }
+    }
+    return fingerprints;
+  }
+
+  /**
+   * All connections import the snapshot of the dump options, if there is one; otherwise the leader exports one.
+   */
+  @Override
+  protected void prepare(Connection leader, List<Connection> workers, DumpOptions options) throws SQLException {
+    beginSnapshotTransaction(leader);
+    String snapshot = options.getSnapshot();
+    if (snapshot == null) {
+      ResultSet rs = leader.createStatement().executeQuery("select pg_export_snapshot()");
+      rs.next();
+      snapshot = rs.getString(1);
+      rs.close();
+    } else {
+      leader.createStatement().execute("set transaction snapshot '" + snapshot + "'");
+    }
+
+    for (Connection worker : workers) {
+      beginSnapshotTransaction(worker);
+      worker.createStatement().execute("set transaction snapshot '" + snapshot + "'");
+    }
+  }
+
+  /**
+   * Make the next statement start a read-only repeatable read transaction.
+   * @param conn connection
+   * @throws SQLException if the transaction settings cannot be changed
+   */
+  private void beginSnapshotTransaction(Connection conn) throws SQLException {
+    conn.setAutoCommit(false);
+    conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+    conn.setReadOnly(true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void exportTable(Connection conn, Table table, RowFilter filter, OutputStream out)
+      throws SQLException, IOException {
+    String name = quote(table.getSchema()) + "." + quote(table.getName());
+    conn.unwrap(PGConnection.class).getCopyAPI()
+        .copyOut("copy " + (filter == null ? name : "(" + select(name, filter) + ")") + " to stdout", out);
+  }
+
+  /**
+   * Samples are drawn with TABLESAMPLE BERNOULLI, which requires PostgreSQL 9.5.
+   * @param table table name, quoted as necessary
+   * @param filter filter of the rows to select
+   * @return query selecting the rows of the table
+   */
+  static String select(String table, RowFilter filter) {
+    StringBuilder select = new StringBuilder("select * from ").append(table);
+    if (filter.getSamplePercent() != null) {
+      select.append(" tablesample bernoulli (").append(filter.getSamplePercent()).append(")");
+    }
+    if (filter.getCondition() != null) {
+      select.append(" where ").append(filter.getCondition());
+    }
+    if (filter.getLimit() != null) {
+      select.append(" limit ").append(filter.getLimit());
+    }
+    return select.toString();
+  }
+
+  /**
+   * @param identifier identifier
+   * @return quoted identifier
+   */
+  static String quote(String identifier) {
+    return "\"" + identifier.replace("\"", "\"\"") + "\"";
+  }
+}
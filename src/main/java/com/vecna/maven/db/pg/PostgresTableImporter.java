@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.pg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.postgresql.PGConnection;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.vecna.maven.db.jdbc.Table;
+import com.vecna.maven.db.jdbc.TableImporter;
+
+/**
+ * Loads PostgreSQL tables exported by {@link PostgresTableExporter} with COPY ... FROM STDIN.
+ *
+ * @author ogolberg@vecna.com
+ */
+class PostgresTableImporter extends TableImporter {
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void importTable(Connection conn, Table table, InputStream in) throws SQLException, IOException {
+    conn.unwrap(PGConnection.class).getCopyAPI().copyIn("copy " + qualify(table) + " from stdin", in);
+  }
+
+  /**
+   * The tables are truncated with a single statement, so that they may reference each other.
+   */
+  @Override
+  protected void truncate(Connection conn, List<Table> tables) throws SQLException {
+    if (tables.isEmpty()) {
+      return;
+    }
+    List<String> names = Lists.newArrayList();
+    for (Table table : tables) {
+      names.add(qualify(table));
+    }
+    try (Statement statement = conn.createStatement()) {
+      statement.execute("truncate table " + Joiner.on(", ").join(names));
+    }
+  }
+
+  /**
+   * @param table table
+   * @return quoted, schema-qualified name of the table
+   */
+  private static String qualify(Table table) {
+    return PostgresTableExporter.quote(table.getSchema()) + "." + PostgresTableExporter.quote(table.getName());
+  }
+}
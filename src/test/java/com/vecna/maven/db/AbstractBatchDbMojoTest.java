@@ -0,0 +1,106 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link AbstractBatchDbMojo}
+ * @author ogolberg@vecna.com
+ */
+public class AbstractBatchDbMojoTest extends TestCase {
+  /**
+   * Runs a batch operation that fails for one database and hangs for the others.
+   */
+  private static class BatchMojo extends AbstractBatchDbMojo {
+    private final boolean failFast;
+    private final CountDownLatch interrupted;
+
+    BatchMojo(boolean failFast, int databases) {
+      this.failFast = failFast;
+      this.interrupted = new CountDownLatch(databases - 1);
+    }
+
+    @Override
+    protected boolean isFailFast() {
+      return failFast;
+    }
+
+    @Override
+    protected void executeIfEnabled() throws MojoExecutionException, MojoFailureException {
+      forEachDatabase("test", new DbOperation() {
+        @Override
+        public void run(DbStrategy strategy, DbContext context, URI uri) throws MojoExecutionException {
+          if (uri.getPath().endsWith("broken")) {
+            throw new MojoExecutionException("broken");
+          }
+          try {
+            Thread.sleep(failFast ? TimeUnit.MINUTES.toMillis(1) : 100);
+          } catch (InterruptedException interruptedException) {
+            interrupted.countDown();
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * A fail-fast batch stops at the first failure and interrupts the operations that are still running.
+   */
+  public void testFailFast() throws Exception {
+    BatchMojo mojo = new BatchMojo(true, 3);
+    mojo.url = "jdbc:postgresql://localhost/postgres";
+    mojo.databases = Arrays.asList("broken", "app_1", "app_2");
+    mojo.parallelism = 3;
+    long start = System.currentTimeMillis();
+    try {
+      mojo.execute();
+      fail("expected the batch to fail");
+    } catch (MojoExecutionException mojoExecutionException) {
+      assertTrue(mojoExecutionException.getMessage(), mojoExecutionException.getMessage().contains("cancelled"));
+    }
+    assertTrue(mojo.interrupted.await(0, TimeUnit.SECONDS));
+    assertTrue(System.currentTimeMillis() - start < TimeUnit.MINUTES.toMillis(1));
+  }
+
+  /**
+   * Other batches attempt every database and report the failures together.
+   */
+  public void testAttemptAll() throws Exception {
+    BatchMojo mojo = new BatchMojo(false, 3);
+    mojo.url = "jdbc:postgresql://localhost/postgres";
+    mojo.databases = Arrays.asList("broken", "app_1", "app_2");
+    mojo.parallelism = 1;
+    try {
+      mojo.execute();
+      fail("expected the batch to fail");
+    } catch (MojoExecutionException mojoExecutionException) {
+      assertTrue(mojoExecutionException.getMessage(), mojoExecutionException.getMessage().startsWith(
+          "failed to test 1 of 3 databases"));
+    }
+    assertEquals(2, mojo.interrupted.getCount());
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.net.URI;
+import java.util.Arrays;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link AbstractPoolDbMojo}
+ * @author ogolberg@vecna.com
+ */
+public class AbstractPoolDbMojoTest extends TestCase {
+  /**
+   * The databases of a pool are named after the database identified by url, or the pool name, and numbered from 1.
+   */
+  public void testDatabaseNames() throws Exception {
+    ReleasePoolMojo mojo = new ReleasePoolMojo();
+    mojo.url = "jdbc:postgresql://localhost:5432/app_test?ssl=false";
+    mojo.poolSize = 2;
+    assertEquals(Arrays.asList(URI.create("postgresql://localhost:5432/app_test_1?ssl=false"),
+                               URI.create("postgresql://localhost:5432/app_test_2?ssl=false")),
+                 mojo.getURIs());
+    assertEquals(2, mojo.getDefaultParallelism());
+
+    mojo.poolName = "it";
+    assertEquals("it_2", mojo.getDatabaseName(2));
+  }
+
+  /**
+   * Pools must not be empty.
+   */
+  public void testEmptyPool() throws Exception {
+    ReleasePoolMojo mojo = new ReleasePoolMojo();
+    mojo.url = "jdbc:mysql://localhost/app_test";
+    try {
+      mojo.getURIs();
+      fail("expected an empty pool to be rejected");
+    } catch (MojoFailureException mojoFailureException) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Tests for {@link DropMatchingDbMojo}
+ * @author ogolberg@vecna.com
+ */
+public class DropMatchingDbMojoTest extends TestCase {
+  /**
+   * Durations are a number followed by a unit.
+   */
+  public void testParseDuration() throws Exception {
+    assertEquals(30000, DropMatchingDbMojo.parseDuration("30s"));
+    assertEquals(12 * 3600000, DropMatchingDbMojo.parseDuration(" 12 h"));
+    assertEquals(7 * 86400000L, DropMatchingDbMojo.parseDuration("7d"));
+    try {
+      DropMatchingDbMojo.parseDuration("1w");
+      fail("expected an invalid unit to be rejected");
+    } catch (MojoFailureException mojoFailureException) {
+      // expected
+    }
+  }
+
+  /**
+   * Databases are selected by name and age; databases of unknown age are never selected by age.
+   */
+  public void testSelect() {
+    Map<String, Date> dbs = Maps.newLinkedHashMap();
+    dbs.put("app", new Date(0));
+    dbs.put("ci_1", new Date(1000));
+    dbs.put("ci_2", new Date(5000));
+    dbs.put("ci_3", null);
+
+    assertEquals(Arrays.asList("ci_1", "ci_2", "ci_3"), DropMatchingDbMojo.select(dbs, Pattern.compile("ci_.*"), null));
+    assertEquals(Arrays.asList("app", "ci_1"), DropMatchingDbMojo.select(dbs, null, new Date(2000)));
+    assertEquals(Arrays.asList("ci_1"), DropMatchingDbMojo.select(dbs, Pattern.compile("ci_.*"), new Date(2000)));
+    assertEquals(Arrays.asList(), DropMatchingDbMojo.select(dbs, Pattern.compile("ci"), null));
+  }
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.util.Collections;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import junit.framework.TestCase;
+
+import com.vecna.maven.db.jdbc.TableSubset;
+
+/**
+ * Tests for {@link DumpOptions}
+ * @author ogolberg@vecna.com
+ */
+public class DumpOptionsTest extends TestCase {
+  /**
+   * Tests for {@link DumpOptions#validate()} with consistent options.
+   */
+  public void testValidOptions() throws Exception {
+    DumpOptions options = new DumpOptions();
+    options.validate();
+
+    options.setFormat(DumpFormat.DIRECTORY);
+    options.setJobs(8);
+    options.setCompression(5);
+    options.validate();
+  }
+
+  /**
+   * Parallel dumps are only possible in the directory format.
+   */
+  public void testJobsRequireDirectoryFormat() throws Exception {
+    DumpOptions options = new DumpOptions();
+    options.setFormat(DumpFormat.CUSTOM);
+    options.setJobs(4);
+    assertInvalid(options);
+  }
+
+  /**
+   * Compression must be a valid level and can't be used with the tar format.
+   */
+  public void testCompression() throws Exception {
+    DumpOptions options = new DumpOptions();
+    options.setCompression(10);
+    assertInvalid(options);
+
+    options.setCompression(3);
+    options.setFormat(DumpFormat.TAR);
+    assertInvalid(options);
+  }
+
+  /**
+   * Streamed dumps can't use the directory format and the lz4 compressor has no levels.
+   */
+  public void testCompressor() throws Exception {
+    DumpOptions options = new DumpOptions();
+    options.setFormat(DumpFormat.DIRECTORY);
+    options.setChecksum(true);
+    assertInvalid(options);
+
+    options.setFormat(DumpFormat.TAR);
+    options.setCompressor(Compressor.GZIP);
+    options.setCompression(9);
+    options.validate();
+
+    options.setCompressor(Compressor.LZ4);
+    assertInvalid(options);
+  }
+
+  /**
+   * The jdbc engine can dump in parallel, but doesn't support formats or tool compression.
+   */
+  public void testJdbcEngine() throws Exception {
+    DumpOptions options = new DumpOptions();
+    options.setEngine(DumpEngine.JDBC);
+    options.setJobs(8);
+    options.validate();
+
+    options.setCompression(3);
+    assertInvalid(options);
+
+    options.setCompressor(Compressor.ZSTD);
+    options.validate();
+
+    options.setFormat(DumpFormat.DIRECTORY);
+    assertInvalid(options);
+  }
+
+  /**
+   * Only the jdbc engine can dump incrementally.
+   */
+  public void testIncremental() throws Exception {
+    DumpOptions options = new DumpOptions();
+    options.setIncremental(true);
+    assertInvalid(options);
+
+    options.setEngine(DumpEngine.JDBC);
+    options.validate();
+  }
+
+  /**
+   * Throttled dumps are streamed, so rate limits and lag guards don't work with the directory format, and the
+   * priority options only apply to the dump tools.
+   */
+  public void testThrottling() throws Exception {
+    DumpOptions options = new DumpOptions();
+    options.setMaxBytesPerSecond(1024L * 1024);
+    options.setNice(10);
+    options.setIonice("idle");
+    options.validate();
+    assertTrue(options.isStreamed());
+    assertTrue(options.isThrottled());
+    assertEquals(new DumpOptions().toString(), options.toString());
+
+    options.setIonice("8");
+    assertInvalid(options);
+
+    options.setIonice("7");
+    options.setNice(20);
+    assertInvalid(options);
+
+    options.setNice(null);
+    options.setFormat(DumpFormat.DIRECTORY);
+    assertInvalid(options);
+
+    options.setFormat(DumpFormat.PLAIN);
+    options.setIonice(null);
+    options.setEngine(DumpEngine.JDBC);
+    options.setMaxReplicaLag(30);
+    options.validate();
+
+    options.setNice(5);
+    assertInvalid(options);
+  }
+
+  /**
+   * Databases of a batch are dumped to files named after them, with the extensions of the format and the compressor.
+   */
+  public void testFileName() {
+    DumpOptions options = new DumpOptions();
+    assertEquals("app.sql", options.getFileName("app"));
+
+    options.setFormat(DumpFormat.CUSTOM);
+    options.setCompressor(Compressor.ZSTD);
+    assertEquals("app.dump.zst", options.getFileName("app"));
+
+    options.setFormat(DumpFormat.DIRECTORY);
+    options.setCompressor(Compressor.NONE);
+    assertEquals("app", options.getFileName("app"));
+
+    options.setFormat(DumpFormat.PLAIN);
+    options.setEngine(DumpEngine.JDBC);
+    assertEquals("app", options.getFileName("app"));
+  }
+
+  /**
+   * Row filters are appended to plain dumps, which can only be compressed by a compressor, and the subset is part of
+   * the description of the output.
+   */
+  public void testSubset() throws Exception {
+    DumpOptions options = new DumpOptions();
+    String full = options.toString();
+    options.setSubset(TableSubset.of(null, null, Collections.singletonList("audit_*"), null));
+    options.setFormat(DumpFormat.DIRECTORY);
+    options.validate();
+    assertFalse(full.equals(options.toString()));
+
+    options.setSubset(TableSubset.of(null, null, null, Collections.singletonMap("orders", "10%")));
+    assertInvalid(options);
+
+    options.setFormat(DumpFormat.PLAIN);
+    options.validate();
+
+    options.setCompression(6);
+    assertInvalid(options);
+
+    options.setCompressor(Compressor.GZIP);
+    options.validate();
+  }
+
+  private void assertInvalid(DumpOptions options) {
+    try {
+      options.validate();
+      fail("expected the options to be rejected");
+    } catch (MojoFailureException mojoFailureException) {
+      // expected
+    }
+  }
+}
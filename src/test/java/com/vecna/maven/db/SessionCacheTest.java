@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link SessionCache}
+ * @author ogolberg@vecna.com
+ */
+public class SessionCacheTest extends TestCase {
+  private static FutureTask<Void> operation() {
+    return new FutureTask<Void>(new Callable<Void>() {
+      @Override
+      public Void call() {
+        return null;
+      }
+    });
+  }
+
+  private static void add(Object build, String project, String group, Future<Void> operation) {
+    SessionCache.addPendingOperation(build, new SessionCache.PendingOperation(project, group, "create",
+                                                                              new SystemStreamLog(), operation));
+  }
+
+  /**
+   * Background operations are taken by project and group, or all at once. When a new build starts, the ones that are
+   * still running are waited for and forgotten.
+   */
+  public void testPendingOperations() {
+    Object build = new Object();
+    Future<Void> create = operation();
+    Future<Void> drop = operation();
+    Future<Void> other = operation();
+    add(build, "a", "default", create);
+    add(build, "a", "cleanup", drop);
+    add(build, "a", "default", other);
+
+    assertEquals(Arrays.asList(create, other), SessionCache.takePendingOperations(build, "a", "default"));
+    assertEquals(Collections.emptyList(), SessionCache.takePendingOperations(build, "a", "default"));
+    assertEquals(Arrays.asList(drop), SessionCache.takePendingOperations(build, "a", null));
+
+    FutureTask<Void> running = operation();
+    add(build, "a", "default", running);
+    new Thread(running).start();
+    assertEquals(Collections.emptyList(), SessionCache.takePendingOperations(new Object(), null, null));
+    assertTrue(running.isDone());
+  }
+
+  /**
+   * The operations of one project are not taken by another project, unless all the projects are asked for.
+   */
+  public void testProjects() {
+    Object build = new Object();
+    Future<Void> moduleA = operation();
+    Future<Void> moduleB = operation();
+    add(build, "a", "default", moduleA);
+    add(build, "b", "default", moduleB);
+
+    assertEquals(Arrays.asList(moduleA), SessionCache.takePendingOperations(build, "a", null));
+    assertEquals(Collections.emptyList(), SessionCache.takePendingOperations(build, "a", null));
+    assertEquals(Arrays.asList(moduleB), SessionCache.takePendingOperations(build, null, "default"));
+  }
+
+  /**
+   * Executions with equal build keys (e.g. the cloned sessions of a parallel build) share the cached resources.
+   */
+  public void testSameBuild() {
+    Future<Void> create = operation();
+    add(new Date(1000), "a", "default", create);
+    assertSame(SessionCache.getConnections(new Date(1000)), SessionCache.getConnections(new Date(1000)));
+    assertEquals(Arrays.asList(create), SessionCache.takePendingOperations(new Date(1000), null, null));
+  }
+}
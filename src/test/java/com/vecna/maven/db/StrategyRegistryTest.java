@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import junit.framework.TestCase;
+
+import com.vecna.maven.db.metrics.Metrics;
+import com.vecna.maven.db.pg.PostgresStrategy;
+
+/**
+ * Tests for {@link StrategyRegistry}
+ * @author ogolberg@vecna.com
+ */
+public class StrategyRegistryTest extends TestCase {
+  /**
+   * Provides a strategy whose JDBC driver doesn't exist.
+   */
+  public static class MissingDriverProvider implements DbStrategyProvider {
+    @Override
+    public String getProtocol() {
+      return "missing";
+    }
+
+    @Override
+    public String getDriverClass() {
+      return "com.example.MissingDriver";
+    }
+
+    @Override
+    public DbStrategy createStrategy() {
+      throw new AssertionError("the strategy must not be created without its driver");
+    }
+  }
+
+  /**
+   * The built-in strategies are found through their providers and created once.
+   */
+  public void testLookup() throws Exception {
+    DbStrategy strategy = StrategyRegistry.lookup("postgresql", new Metrics());
+    assertTrue(strategy instanceof PostgresStrategy);
+    assertSame(strategy, StrategyRegistry.lookup("postgresql", new Metrics()));
+  }
+
+  /**
+   * Unknown protocols and missing drivers are reported as build failures.
+   */
+  public void testFailures() throws Exception {
+    try {
+      StrategyRegistry.lookup("oracle", new Metrics());
+      fail("expected an unknown protocol to be rejected");
+    } catch (MojoFailureException mojoFailureException) {
+      assertTrue(mojoFailureException.getMessage(), mojoFailureException.getMessage().contains("[missing, mysql"));
+    }
+
+    try {
+      StrategyRegistry.lookup("missing", new Metrics());
+      fail("expected a missing driver to be reported");
+    } catch (MojoFailureException mojoFailureException) {
+      assertTrue(mojoFailureException.getMessage(),
+                 mojoFailureException.getMessage().contains("com.example.MissingDriver"));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.vecna.maven.db.jdbc.RetryPolicy;
+import com.vecna.maven.db.jdbc.Timeouts;
+
+/**
+ * Tests for {@link WarmPool}
+ * @author ogolberg@vecna.com
+ */
+public class WarmPoolTest extends TestCase {
+  private final List<String> calls = Lists.newArrayList();
+
+  private DbStrategy strategy() {
+    return (DbStrategy) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DbStrategy.class},
+                                               new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        synchronized (calls) {
+          calls.add(method.getName() + " " + ((URI) args[1]).getPath());
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * The pool is kept full and the unclaimed databases are dropped when the pool is closed.
+   */
+  public void testClaim() throws Exception {
+    WarmPool pool = new WarmPool(new SystemStreamLog(), strategy(), URI.create("postgresql://localhost/postgres"),
+                                 "sa", null, "golden", 2, RetryPolicy.NONE, Timeouts.NONE);
+    pool.start();
+
+    URI claimed = null;
+    for (int i = 0; claimed == null && i < 500; i++) {
+      claimed = pool.claim();
+      Thread.sleep(10);
+    }
+    assertNotNull(claimed);
+    assertTrue(claimed.getPath().startsWith("/warm_"));
+    pool.close();
+
+    int clones = 0;
+    int drops = 0;
+    for (String call : calls) {
+      if (call.startsWith("cloneDb")) {
+        clones++;
+      } else if (call.startsWith("dropDb")) {
+        drops++;
+      }
+    }
+    // one database was claimed and the others were dropped
+    assertEquals(calls.toString(), clones - 1, drops);
+    assertTrue(calls.toString(), drops <= 2);
+    assertFalse(calls.contains("dropDb " + claimed.getPath()));
+  }
+
+  /**
+   * Pools are keyed by server, user and template, not by database.
+   */
+  public void testKey() {
+    assertEquals(WarmPool.key(URI.create("mysql://db:3306/a"), "sa", null),
+                 WarmPool.key(URI.create("mysql://db:3306/b"), "sa", null));
+    assertFalse(WarmPool.key(URI.create("mysql://db:3306/a"), "sa", null)
+                .equals(WarmPool.key(URI.create("mysql://db:3306/a"), "sa", "golden")));
+  }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db.cli;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.cli.Commandline;
+
+import junit.framework.TestCase;
+
+import com.vecna.maven.db.DbContext;
+import com.vecna.maven.db.jdbc.ConnectionPool;
+import com.vecna.maven.db.jdbc.RetryPolicy;
+import com.vecna.maven.db.jdbc.Timeouts;
+import com.vecna.maven.db.metrics.Metrics;
+
+/**
+ * Tests for {@link CommandRunner}
+ * @author ogolberg@vecna.com
+ */
+public class CommandRunnerTest extends TestCase {
+  /**
+   * A tool that runs longer than the tool timeout is killed.
+   */
+  public void testToolTimeout() {
+    DbContext context = new DbContext(new SystemStreamLog(), new ConnectionPool(1), true, new Metrics(),
+                                      RetryPolicy.NONE, new Timeouts(0, 0, 0, 0, 200));
+    Commandline cmdLine = new Commandline("sleep 30");
+    long start = System.currentTimeMillis();
+    try {
+      CommandRunner.pipe(context, cmdLine, "sleep", new ByteArrayOutputStream());
+      fail("the tool must be killed");
+    } catch (MojoExecutionException mojoExecutionException) {
+      assertTrue(mojoExecutionException.getMessage().contains("was killed"));
+      assertTrue(System.currentTimeMillis() - start < 10000);
+    } finally {
+      context.close();
+    }
+  }
+
+  /**
+   * A tool that finishes in time is not affected by the tool timeout.
+   * @throws Exception if the tool fails
+   */
+  public void testToolWithinTimeout() throws Exception {
+    DbContext context = new DbContext(new SystemStreamLog(), new ConnectionPool(1), true, new Metrics(),
+                                      RetryPolicy.NONE, new Timeouts(0, 0, 0, 0, 10000));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      CommandRunner.pipe(context, new Commandline("echo done"), "echo", out);
+    } finally {
+      context.close();
+    }
+    assertEquals("done", out.toString().trim());
+  }
+}
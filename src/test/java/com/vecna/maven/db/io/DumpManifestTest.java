@@ -0,0 +1,83 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.io;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.vecna.maven.db.Compressor;
+import com.vecna.maven.db.DumpOptions;
+
+/**
+ * Tests for {@link DumpManifest}
+ * @author ogolberg@vecna.com
+ */
+public class DumpManifestTest extends TestCase {
+  private File dir;
+  private File dump;
+  private DumpOptions options;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = Files.createTempDir();
+    dump = new File(dir, "dump.sql");
+    Files.write("create table foo (id int);\n", dump, Charsets.UTF_8);
+    options = new DumpOptions();
+    new DumpManifest("abc", options.toString(), dump.length()).write(dump);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  /**
+   * The manifest matches an untouched dump of an unchanged database taken with the same options.
+   */
+  public void testMatches() throws Exception {
+    assertTrue(DumpManifest.read(dump).matches(dump, "abc", options));
+    assertFalse(DumpManifest.read(dump).matches(dump, "abd", options));
+
+    DumpOptions compressed = new DumpOptions();
+    compressed.setCompressor(Compressor.GZIP);
+    assertFalse(DumpManifest.read(dump).matches(dump, "abc", compressed));
+  }
+
+  /**
+   * Modified or deleted dumps don't match.
+   */
+  public void testModifiedDump() throws Exception {
+    Files.append("drop table foo;\n", dump, Charsets.UTF_8);
+    assertFalse(DumpManifest.read(dump).matches(dump, "abc", options));
+
+    dump.delete();
+    assertFalse(DumpManifest.read(dump).matches(dump, "abc", options));
+  }
+
+  /**
+   * Dumps without a manifest have nothing to match.
+   */
+  public void testMissing() throws Exception {
+    assertNull(DumpManifest.read(new File(dir, "other.sql")));
+  }
+}
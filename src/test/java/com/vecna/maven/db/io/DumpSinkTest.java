@@ -0,0 +1,126 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.io;
+
+import java.io.File;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.vecna.maven.db.Compressor;
+
+/**
+ * Tests for {@link DumpSink} and {@link DumpInput}
+ * @author ogolberg@vecna.com
+ */
+public class DumpSinkTest extends TestCase {
+  private static final String DUMP = "create table foo (id int);\ninsert into foo values (1);\n";
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Compressed dumps can be read back and their checksum covers the file on disk.
+   */
+  public void testCompressedRoundTrip() throws Exception {
+    for (Compressor compressor : new Compressor[] {Compressor.GZIP, Compressor.LZ4}) {
+      File out = new File(dir, "dump.sql." + compressor);
+      try (DumpSink sink = new DumpSink(out, compressor, null, true)) {
+        sink.getStream().write(DUMP.getBytes(Charsets.UTF_8));
+        sink.finish();
+      }
+
+      assertTrue(DumpInput.isCompressed(out));
+      try (InputStream in = DumpInput.open(out)) {
+        assertEquals(DUMP, new String(ByteStreams.toByteArray(in), Charsets.UTF_8));
+      }
+
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(Files.toByteArray(out));
+      String sidecar = Files.toString(new File(out.getPath() + ".sha256"), Charsets.US_ASCII);
+      assertEquals(String.format("%064x", new BigInteger(1, digest)) + "  " + out.getName() + "\n",
+                   sidecar);
+    }
+  }
+
+  /**
+   * LZ4 dumps larger than a frame block (4MB) round-trip.
+   */
+  public void testLargeLz4() throws Exception {
+    Random random = new Random(42);
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < 5 * 1024 * 1024) {
+      sb.append("insert into foo values (").append(random.nextInt()).append(");\n");
+    }
+    byte[] dump = sb.toString().getBytes(Charsets.UTF_8);
+
+    File out = new File(dir, "dump.sql.lz4");
+    try (DumpSink sink = new DumpSink(out, Compressor.LZ4, null, false)) {
+      sink.getStream().write(dump);
+      sink.finish();
+    }
+    try (InputStream in = DumpInput.open(out)) {
+      assertTrue(Arrays.equals(dump, ByteStreams.toByteArray(in)));
+    }
+  }
+
+  /**
+   * Uncompressed dumps are read as is.
+   */
+  public void testUncompressed() throws Exception {
+    File out = new File(dir, "dump.sql");
+    try (DumpSink sink = new DumpSink(out, Compressor.NONE, null, false)) {
+      sink.getStream().write(DUMP.getBytes(Charsets.UTF_8));
+      sink.finish();
+    }
+
+    assertFalse(DumpInput.isCompressed(out));
+    assertEquals(DUMP, Files.toString(out, Charsets.UTF_8));
+    assertFalse(new File(out.getPath() + ".sha256").exists());
+  }
+
+  /**
+   * Unfinished dumps are removed.
+   */
+  public void testUnfinished() throws Exception {
+    File out = new File(dir, "dump.sql.gz");
+    try (DumpSink sink = new DumpSink(out, Compressor.GZIP, 9, true)) {
+      sink.getStream().write(DUMP.getBytes(Charsets.UTF_8));
+    }
+    assertFalse(out.exists());
+    assertFalse(new File(out.getPath() + ".sha256").exists());
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Throttle}
+ * @author ogolberg@vecna.com
+ */
+public class ThrottleTest extends TestCase {
+  /**
+   * Writes are slowed down to the configured rate.
+   */
+  public void testRate() throws Exception {
+    ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    OutputStream out = new Throttle(new SystemStreamLog(), 100000L, null, null).wrap(sink);
+    long start = System.nanoTime();
+    for (int i = 0; i < 3; i++) {
+      out.write(new byte[50000]);
+    }
+    // the first write goes through immediately, the others wait for the rate to catch up
+    assertTrue((System.nanoTime() - start) / 1000000 >= 900);
+    assertEquals(150000, sink.size());
+  }
+
+  /**
+   * Servers that aren't replicas don't pause the dump, failures to check the lag fail it, and unthrottled streams
+   * aren't wrapped at all.
+   */
+  public void testReplicaLag() throws Exception {
+    Throttle notReplica = new Throttle(new SystemStreamLog(), null, new Callable<Double>() {
+      @Override
+      public Double call() {
+        return null;
+      }
+    }, 10);
+    notReplica.acquire(1);
+
+    Throttle broken = new Throttle(new SystemStreamLog(), null, new Callable<Double>() {
+      @Override
+      public Double call() throws SQLException {
+        throw new SQLException("permission denied");
+      }
+    }, 10);
+    try {
+      broken.acquire(1);
+      fail("expected the failed lag check to fail the write");
+    } catch (IOException ioException) {
+      assertTrue(ioException.getCause() instanceof SQLException);
+    }
+
+    ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    assertSame(sink, new Throttle(new SystemStreamLog(), null, null, 10).wrap(sink));
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db.jdbc;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Fingerprints}
+ * @author ogolberg@vecna.com
+ */
+public class FingerprintsTest extends TestCase {
+  /**
+   * The order of the rows doesn't matter.
+   */
+  public void testUnordered() {
+    String orders = Fingerprints.hashRow(0, Arrays.asList("public", "orders", "r"));
+    String items = Fingerprints.hashRow(0, Arrays.asList("public", "items", "r"));
+    assertEquals(Fingerprints.combine(Arrays.asList(orders, items)),
+                 Fingerprints.combine(Arrays.asList(items, orders)));
+    assertFalse(Fingerprints.combine(Arrays.asList(orders)).equals(Fingerprints.combine(Arrays.asList(orders, items))));
+  }
+
+  /**
+   * The values, their boundaries, nulls and the query the row came from all matter.
+   */
+  public void testRowHash() {
+    String row = Fingerprints.hashRow(0, Arrays.asList("public", "orders"));
+    assertEquals(row, Fingerprints.hashRow(0, Arrays.asList("public", "orders")));
+    assertFalse(row.equals(Fingerprints.hashRow(1, Arrays.asList("public", "orders"))));
+    assertFalse(row.equals(Fingerprints.hashRow(0, Arrays.asList("publico", "rders"))));
+    String withNull = Fingerprints.hashRow(0, Arrays.asList("a", null));
+    assertFalse(withNull.equals(Fingerprints.hashRow(0, Arrays.asList("a", ""))));
+  }
+}
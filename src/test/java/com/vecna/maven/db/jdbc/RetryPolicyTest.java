@@ -0,0 +1,160 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db.jdbc;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+
+import junit.framework.TestCase;
+
+import com.vecna.maven.db.jdbc.RetryPolicy.Action;
+import com.vecna.maven.db.jdbc.RetryPolicy.ErrorClass;
+
+/**
+ * Tests for {@link RetryPolicy}
+ * @author ogolberg@vecna.com
+ */
+public class RetryPolicyTest extends TestCase {
+  private static final Log LOG = new SystemStreamLog();
+
+  /**
+   * Failures are classified by SQL state, MySQL error code and exception type.
+   */
+  public void testClassify() {
+    assertEquals(ErrorClass.CONNECTION, RetryPolicy.classify(new SQLException("refused", "08001")));
+    assertEquals(ErrorClass.CONNECTION, RetryPolicy.classify(new SQLException("starting up", "57P03")));
+    assertEquals(ErrorClass.CONNECTION, RetryPolicy.classify(new SQLException("too many", "53300")));
+    assertEquals(ErrorClass.CONNECTION, RetryPolicy.classify(new SQLException("too many", "HY000", 1040)));
+    assertEquals(ErrorClass.CONFLICT, RetryPolicy.classify(new SQLException("deadlock", "40P01")));
+    assertEquals(ErrorClass.CONFLICT, RetryPolicy.classify(new SQLException("lock", "55P03")));
+    assertEquals(ErrorClass.CONFLICT, RetryPolicy.classify(new SQLException("in use", "55006")));
+    assertEquals(ErrorClass.CONFLICT, RetryPolicy.classify(new SQLException("lock wait", "HY000", 1205)));
+    assertEquals(ErrorClass.CONFLICT, RetryPolicy.classify(new SQLTransactionRollbackException("rolled back")));
+    assertEquals(ErrorClass.PERMANENT, RetryPolicy.classify(new SQLException("bad password", "28P01")));
+    assertEquals(ErrorClass.PERMANENT, RetryPolicy.classify(new SQLException("no state")));
+  }
+
+  /**
+   * Failures of the retried class are retried until the operation succeeds.
+   * @throws Exception if the operation fails
+   */
+  public void testRetryUntilSuccess() throws Exception {
+    RetryPolicy policy = new RetryPolicy(1, 5, 1, 2, 0);
+    assertEquals("done", policy.call(LOG, "test", ErrorClass.CONFLICT, failing(3, "40001")));
+  }
+
+  /**
+   * Failures of other classes are thrown on the first attempt.
+   */
+  public void testPermanentFailure() {
+    RetryPolicy policy = new RetryPolicy(5, 5, 1, 2, 0);
+    AtomicInteger attempts = new AtomicInteger();
+    try {
+      policy.call(LOG, "test", ErrorClass.CONFLICT, failing(3, "42P01", attempts));
+      fail("permanent failures must not be retried");
+    } catch (SQLException sqlException) {
+      assertEquals(1, attempts.get());
+    }
+    attempts.set(0);
+    try {
+      policy.call(LOG, "test", ErrorClass.CONNECTION, failing(3, "40001", attempts));
+      fail("conflicts must not be retried when connecting");
+    } catch (SQLException sqlException) {
+      assertEquals(1, attempts.get());
+    }
+  }
+
+  /**
+   * The last failure is thrown once the attempts are exhausted.
+   */
+  public void testAttemptLimit() {
+    RetryPolicy policy = new RetryPolicy(3, 1, 1, 2, 0);
+    AtomicInteger attempts = new AtomicInteger();
+    try {
+      policy.call(LOG, "test", ErrorClass.CONNECTION, failing(10, "08006", attempts));
+      fail("the attempts are limited");
+    } catch (SQLException sqlException) {
+      assertEquals(3, attempts.get());
+    }
+  }
+
+  /**
+   * No retry is started after the timeout.
+   */
+  public void testTimeout() {
+    RetryPolicy policy = new RetryPolicy(100, 100, 50, 50, 120);
+    AtomicInteger attempts = new AtomicInteger();
+    try {
+      policy.call(LOG, "test", ErrorClass.CONFLICT, failing(100, "40001", attempts));
+      fail("the retries are limited by the timeout");
+    } catch (SQLException sqlException) {
+      assertTrue(attempts.get() > 1);
+      assertTrue(attempts.get() < 10);
+    }
+  }
+
+  /**
+   * Delays grow exponentially up to the maximum, with jitter of up to half the delay.
+   */
+  public void testDelay() {
+    RetryPolicy policy = new RetryPolicy(1, 1, 100, 1000, 0);
+    for (int i = 0; i < 20; i++) {
+      long first = policy.getDelay(1, 100, 1000);
+      assertTrue(first >= 50 && first <= 100);
+      long fourth = policy.getDelay(4, 100, 1000);
+      assertTrue(fourth >= 400 && fourth <= 800);
+      long last = policy.getDelay(30, 100, 1000);
+      assertTrue(last >= 500 && last <= 1000);
+    }
+  }
+
+  /**
+   * Waiting for a server that never accepts connections gives up after the wait time.
+   */
+  public void testAwaitConnectionTimeout() {
+    long start = System.currentTimeMillis();
+    try {
+      RetryPolicy.NONE.awaitConnection(LOG, "jdbc:nothing:", new Properties(), 300);
+      fail("no server accepts connections");
+    } catch (SQLException sqlException) {
+      long elapsed = System.currentTimeMillis() - start;
+      assertEquals(ErrorClass.CONNECTION, RetryPolicy.classify(sqlException));
+      assertTrue(elapsed < 5000);
+    }
+  }
+
+  private static Action<String> failing(int failures, String state) {
+    return failing(failures, state, new AtomicInteger());
+  }
+
+  private static Action<String> failing(final int failures, final String state, final AtomicInteger attempts) {
+    return new Action<String>() {
+      @Override
+      public String run() throws SQLException {
+        if (attempts.incrementAndGet() <= failures) {
+          throw new SQLException("failure " + attempts.get(), state);
+        }
+        return "done";
+      }
+    };
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SetMultimap;
+
+/**
+ * Tests for {@link TableImporter}
+ * @author ogolberg@vecna.com
+ */
+public class TableImporterTest extends TestCase {
+  private static final Table A = new Table("s", "a");
+  private static final Table B = new Table("s", "b");
+  private static final Table C = new Table("s", "c");
+  private static final Table D = new Table("s", "d");
+
+  /**
+   * Referenced tables are loaded first; self references, cycles and references to tables outside of the export
+   * don't prevent loading.
+   */
+  public void testOrder() {
+    SetMultimap<Table, Table> references = HashMultimap.create();
+    references.put(A, B);
+    references.put(B, C);
+    references.put(B, B);
+    references.put(C, new Table("s", "other"));
+    assertEquals(ImmutableList.of(C, D, B, A), TableImporter.order(ImmutableList.of(A, B, C, D), references));
+
+    references.put(C, A);
+    List<Table> ordered = TableImporter.order(ImmutableList.of(A, B, C, D), references);
+    assertEquals(ImmutableList.of(D, A, B, C), ordered);
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link TableManifest}
+ * @author ogolberg@vecna.com
+ */
+public class TableManifestTest extends TestCase {
+  /**
+   * Manifests can be read back.
+   */
+  public void testRoundTrip() throws Exception {
+    File dir = Files.createTempDir();
+    try {
+      assertNull(TableManifest.read(dir));
+
+      TableManifest manifest = new TableManifest("GZIP:null:true");
+      manifest.add(new TableManifest.Entry(new Table("public", "b=c d"), "public.b=c d.tsv.gz", "abc"));
+      manifest.add(new TableManifest.Entry(new Table("public", "a"), "public.a.tsv.gz", ""));
+      manifest.write(dir);
+
+      manifest = TableManifest.read(dir);
+      assertEquals("GZIP:null:true", manifest.getOutput());
+      List<TableManifest.Entry> entries = manifest.getEntries();
+      assertEquals(2, entries.size());
+      assertEquals(new Table("public", "a"), entries.get(0).getTable());
+      assertEquals("", entries.get(0).getFingerprint());
+      assertEquals(new Table("public", "b=c d"), manifest.get("public.b=c d.tsv.gz").getTable());
+      assertEquals("abc", manifest.get("public.b=c d.tsv.gz").getFingerprint());
+      assertTrue(TableImporter.isExport(dir));
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+}
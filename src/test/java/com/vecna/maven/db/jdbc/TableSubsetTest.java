@@ -0,0 +1,92 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.jdbc;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.maven.plugin.MojoFailureException;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Tests for {@link TableSubset}
+ * @author ogolberg@vecna.com
+ */
+public class TableSubsetTest extends TestCase {
+  private static final Table ORDERS = new Table("public", "orders");
+  private static final Table ORDER_ITEMS = new Table("public", "order_items");
+  private static final Table AUDIT_LOG = new Table("audit", "log");
+
+  /**
+   * Patterns match the table's name, or its qualified name if they contain a dot.
+   */
+  public void testMatches() {
+    assertTrue(TableSubset.matches("orders", ORDERS));
+    assertTrue(TableSubset.matches("order*", ORDER_ITEMS));
+    assertTrue(TableSubset.matches("public.order?", ORDERS));
+    assertFalse(TableSubset.matches("public.order?", ORDER_ITEMS));
+    assertFalse(TableSubset.matches("audit.*", ORDERS));
+    assertTrue(TableSubset.matches("audit.*", AUDIT_LOG));
+    assertFalse(TableSubset.matches("o.ders", ORDERS));
+  }
+
+  /**
+   * Excludes win over includes, and all tables are included if there are no includes.
+   */
+  public void testIncludes() throws Exception {
+    TableSubset subset = TableSubset.of(null, Arrays.asList("audit.*"), Arrays.asList("order_items"), null);
+    assertTrue(subset.includes(ORDERS));
+    assertFalse(subset.includes(AUDIT_LOG));
+    assertTrue(subset.isSchemaOnly(ORDER_ITEMS));
+    assertFalse(subset.isSchemaOnly(ORDERS));
+
+    subset = TableSubset.of(Arrays.asList("order*"), Arrays.asList("order_items"), null, null);
+    assertTrue(subset.includes(ORDERS));
+    assertFalse(subset.includes(ORDER_ITEMS));
+    assertFalse(subset.includes(AUDIT_LOG));
+
+    assertTrue(new TableSubset().isEmpty());
+    assertTrue(TableSubset.of(null, null, null, null).isEmpty());
+    assertFalse(subset.isEmpty());
+  }
+
+  /**
+   * Row filters are looked up by qualified name first, and parsed into limits, samples and conditions.
+   */
+  public void testRowFilters() throws Exception {
+    TableSubset subset = TableSubset.of(null, null, null, ImmutableMap.of("orders", "limit 1000",
+                                                                          "audit.log", "2.5 %",
+                                                                          "public.orders", "id < 10"));
+    assertEquals("id < 10", subset.getRowFilter(ORDERS).getCondition());
+    assertEquals(Double.valueOf(2.5), subset.getRowFilter(AUDIT_LOG).getSamplePercent());
+    assertNull(subset.getRowFilter(ORDER_ITEMS));
+    assertEquals(Long.valueOf(1000), subset.getRowFilter(new Table("other", "orders")).getLimit());
+
+    for (String rule : Arrays.asList(" ", "0%", "150%")) {
+      try {
+        TableSubset.of(null, null, null, Collections.singletonMap("orders", rule));
+        fail("expected " + rule + " to be rejected");
+      } catch (MojoFailureException mojoFailureException) {
+        // expected
+      }
+    }
+  }
+}
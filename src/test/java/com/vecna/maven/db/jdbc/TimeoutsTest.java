@@ -0,0 +1,64 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+package com.vecna.maven.db.jdbc;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link Timeouts}
+ * @author ogolberg@vecna.com
+ */
+public class TimeoutsTest extends TestCase {
+  /**
+   * The PostgreSQL driver takes its timeouts in seconds, the others in milliseconds.
+   */
+  public void testConnectionProperties() {
+    Timeouts timeouts = new Timeouts(1500, 60000, 0, 0, 0);
+    Properties pg = timeouts.getConnectionProperties("jdbc:postgresql://localhost/db", "user", "secret");
+    assertEquals("user", pg.getProperty("user"));
+    assertEquals("secret", pg.getProperty("password"));
+    assertEquals("2", pg.getProperty("connectTimeout"));
+    assertEquals("60", pg.getProperty("socketTimeout"));
+
+    Properties mysql = timeouts.getConnectionProperties("jdbc:mysql://localhost/db", "user", null);
+    assertEquals("1500", mysql.getProperty("connectTimeout"));
+    assertEquals("60000", mysql.getProperty("socketTimeout"));
+    assertNull(mysql.getProperty("password"));
+  }
+
+  /**
+   * Timeouts of 0 are not passed to the driver.
+   */
+  public void testNoLimits() {
+    Properties properties = Timeouts.NONE.getConnectionProperties("jdbc:postgresql://localhost/db", "user", "pw");
+    assertNull(properties.getProperty("connectTimeout"));
+    assertNull(properties.getProperty("socketTimeout"));
+  }
+
+  /**
+   * Conversions round up, so that short timeouts don't turn into no limit.
+   */
+  public void testToUnit() {
+    assertEquals(1, Timeouts.toUnit(1, TimeUnit.SECONDS));
+    assertEquals(1, Timeouts.toUnit(1000, TimeUnit.SECONDS));
+    assertEquals(2, Timeouts.toUnit(1001, TimeUnit.SECONDS));
+    assertEquals(1001, Timeouts.toUnit(1001, TimeUnit.MILLISECONDS));
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.metrics;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.codehaus.plexus.util.FileUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Tests for {@link Metrics} and {@link MetricsReport}
+ * @author ogolberg@vecna.com
+ */
+public class MetricsReportTest extends TestCase {
+  private File dir;
+
+  @Override
+  protected void setUp() throws Exception {
+    dir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  private Metrics metrics() {
+    Metrics metrics = new Metrics();
+    metrics.record("connect", 2000000);
+    metrics.record("connect", 5000000);
+    metrics.add("bytes-written", 100);
+    return metrics;
+  }
+
+  /**
+   * Runs of a phase are accumulated.
+   */
+  public void testAccumulate() {
+    Metrics.Phase phase = metrics().getPhases().get(0);
+    assertEquals("connect", phase.getName());
+    assertEquals(2, phase.getCount());
+    assertEquals(7000000, phase.getTotalNanos());
+    assertEquals(5000000, phase.getMaxNanos());
+    assertEquals("connect 7 ms (2x), bytes-written 100", MetricsReport.summarize(metrics()));
+  }
+
+  /**
+   * JSON reports hold one object per execution.
+   */
+  public void testJson() throws Exception {
+    File file = new File(dir, "target/metrics.json");
+    MetricsReport.append(file, "CreateDbMojo:\"default\"", metrics());
+    MetricsReport.append(file, "DropDbMojo", new Metrics());
+
+    List<String> lines = Files.readLines(file, Charsets.UTF_8);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0).contains("\"execution\":\"CreateDbMojo:\\\"default\\\"\""));
+    assertTrue(lines.get(0).endsWith(",\"phases\":{\"connect\":{\"count\":2,\"totalMs\":7,\"maxMs\":5}}"
+                                     + ",\"counters\":{\"bytes-written\":100}}"));
+    assertTrue(lines.get(1).endsWith(",\"phases\":{},\"counters\":{}}"));
+  }
+
+  /**
+   * CSV reports hold one row per phase/counter, with a header at the top.
+   */
+  public void testCsv() throws Exception {
+    File file = new File(dir, "metrics.csv");
+    MetricsReport.append(file, "a,b", metrics());
+    MetricsReport.append(file, "c", metrics());
+
+    List<String> lines = Files.readLines(file, Charsets.UTF_8);
+    assertEquals(5, lines.size());
+    assertTrue(lines.get(0).startsWith("timestamp,"));
+    assertTrue(lines.get(1).endsWith(",\"a,b\",phase,connect,2,7,5,"));
+    assertTrue(lines.get(2).endsWith(",\"a,b\",counter,bytes-written,,,,100"));
+    assertTrue(lines.get(3).endsWith(",c,phase,connect,2,7,5,"));
+  }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2017 Vecna Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+*/
+
+
+package com.vecna.maven.db.mysql;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Charsets;
+import com.vecna.maven.db.jdbc.RowFilter;
+
+/**
+ * Tests for {@link MysqlTableExporter}
+ * @author ogolberg@vecna.com
+ */
+public class MysqlTableExporterTest extends TestCase {
+  /**
+   * Tests for {@link MysqlTableExporter#writeValue(byte[], java.io.OutputStream)}.
+   */
+  public void testWriteValue() throws Exception {
+    assertEquals("\\N", write(null));
+    assertEquals("plain", write("plain"));
+    assertEquals("a\\tb\\nc\\rd\\\\e\\0", write("a\tb\nc\rd\\e\0"));
+  }
+
+  /**
+   * Tests for {@link MysqlTableExporter#quote(String)}.
+   */
+  public void testQuote() {
+    assertEquals("`weird``name`", MysqlTableExporter.quote("weird`name"));
+  }
+
+  /**
+   * Tests for {@link MysqlTableExporter#where(RowFilter)}.
+   */
+  public void testWhere() throws Exception {
+    assertEquals("1 LIMIT 100", MysqlTableExporter.where(RowFilter.parse("limit 100")));
+    assertEquals("RAND() < 0.1", MysqlTableExporter.where(RowFilter.parse("10%")));
+    assertEquals("id > 5", MysqlTableExporter.where(RowFilter.parse(" id > 5 ")));
+  }
+
+  private String write(String value) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    MysqlTableExporter.writeValue(value == null ? null : value.getBytes(Charsets.UTF_8), out);
+    return new String(out.toByteArray(), Charsets.UTF_8);
+  }
+}
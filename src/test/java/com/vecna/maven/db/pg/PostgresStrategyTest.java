@@ -16,10 +16,15 @@
 
 package com.vecna.maven.db.pg;
 
+import java.io.File;
 import java.net.URI;
 
 import junit.framework.TestCase;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.vecna.maven.db.DumpFormat;
+
 /**
  * Tests for {@link PostgresStrategy}
  * @author ogolberg@vecna.com
@@ -39,4 +44,34 @@ public class PostgresStrategyTest extends TestCase {
     assertEquals("db2", info.getDbName());
     assertEquals("jdbc:postgresql://localhost/postgres", info.getConnectUrl());
   }
+
+  /**
+   * Tests for {@link PostgresStrategy#detectFormat(File)}.
+   */
+  public void testDetectFormat() throws Exception {
+    PostgresStrategy pgs = new PostgresStrategy();
+    File dir = Files.createTempDir();
+    try {
+      assertEquals(DumpFormat.DIRECTORY, pgs.detectFormat(dir));
+
+      File plain = new File(dir, "plain.sql");
+      Files.write("create table foo (id int);\n", plain, Charsets.US_ASCII);
+      assertEquals(DumpFormat.PLAIN, pgs.detectFormat(plain));
+
+      File custom = new File(dir, "custom.dump");
+      Files.write("PGDMP\u0001\u000c", custom, Charsets.US_ASCII);
+      assertEquals(DumpFormat.CUSTOM, pgs.detectFormat(custom));
+
+      byte[] tarHeader = new byte[512];
+      System.arraycopy("ustar".getBytes(Charsets.US_ASCII), 0, tarHeader, 257, 5);
+      File tar = new File(dir, "dump.tar");
+      Files.write(tarHeader, tar);
+      assertEquals(DumpFormat.TAR, pgs.detectFormat(tar));
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
 }